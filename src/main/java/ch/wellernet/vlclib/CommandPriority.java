@@ -0,0 +1,25 @@
+package ch.wellernet.vlclib;
+
+/**
+ * Priority classes of commands sent to VLC. When several commands are waiting for the session, commands of a higher priority class are dispatched
+ * first.
+ *
+ * @since 1.0.0
+ */
+public enum CommandPriority {
+
+    /**
+     * Commands that change what is playing (play, stop, seek, loop), typically triggered by an operator.
+     */
+    CONTROL,
+
+    /**
+     * Commands that read state without changing it.
+     */
+    QUERY,
+
+    /**
+     * Commands that set up media, outputs, options and play lists, typically sent in bursts.
+     */
+    BULK_SETUP;
+}
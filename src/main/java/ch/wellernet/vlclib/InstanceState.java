@@ -0,0 +1,32 @@
+package ch.wellernet.vlclib;
+
+public enum InstanceState {
+
+    INIT("init"), OPENING("opening"), PLAYING("playing"), PAUSED("paused"), END("end"), ERROR("error");
+
+    /**
+     * Looks up the state for a value shown by VLC.
+     *
+     * @param value
+     *            value as shown by VLC
+     * @return matching state or <code>null</code> if value is unknown
+     */
+    public static InstanceState fromValue(String value) {
+        for (InstanceState state : values()) {
+            if (state.value.equals(value)) {
+                return state;
+            }
+        }
+        return null;
+    }
+
+    private String value;
+
+    private InstanceState(String value) {
+        this.value = value;
+    }
+
+    public String value() {
+        return value;
+    }
+}
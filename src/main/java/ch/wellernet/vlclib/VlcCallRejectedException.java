@@ -0,0 +1,17 @@
+package ch.wellernet.vlclib;
+
+/**
+ * Exception that is thrown when a command has been rejected before it has been sent to VLC media player, for example because VLC is known to be
+ * unhealthy or because too many commands are already pending. In contrast to other {@link VlcConnectionException}s, VLC media player is guaranteed
+ * to be unaffected by the rejected command and the instance of {@link VlcManager} may still be used.
+ *
+ * @since 1.0.0
+ */
+public class VlcCallRejectedException extends VlcConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public VlcCallRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,180 @@
+package ch.wellernet.vlclib;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableCollection;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry for large catalogs of media. Equal modules, properties, options and outputs are interned, so that media sharing (parts of) their output
+ * chain reference the same instances instead of holding copies. Since an interned {@link VlcOutput} caches its serialized form, the sout string of a
+ * chain shared by many media is built only once.
+ *
+ * @since 1.0.0
+ */
+public class VlcCatalog {
+
+    private final ConcurrentMap<String, VlcMedia> media;
+    private final ConcurrentMap<String, String> strings;
+    private final ConcurrentMap<VlcProperty, VlcProperty> properties;
+    private final ConcurrentMap<VlcOption, VlcOption> options;
+    private final ConcurrentMap<VlcModule, VlcModule> modules;
+    private final ConcurrentMap<VlcOutput, VlcOutput> outputs;
+
+    public VlcCatalog() {
+        media = new ConcurrentHashMap<String, VlcMedia>();
+        strings = new ConcurrentHashMap<String, String>();
+        properties = new ConcurrentHashMap<VlcProperty, VlcProperty>();
+        options = new ConcurrentHashMap<VlcOption, VlcOption>();
+        modules = new ConcurrentHashMap<VlcModule, VlcModule>();
+        outputs = new ConcurrentHashMap<VlcOutput, VlcOutput>();
+    }
+
+    /**
+     * Retrieves a media by its name.
+     *
+     * @param name
+     *            name of media
+     * @return registered media or <code>null</code> if there is no media with this name
+     */
+    public VlcMedia get(String name) {
+        return media.get(name);
+    }
+
+    /**
+     * @return all registered media
+     */
+    public Collection<VlcMedia> getMedia() {
+        return unmodifiableCollection(media.values());
+    }
+
+    /**
+     * @return number of distinct modules referenced by registered media
+     */
+    public int getModuleCount() {
+        return modules.size();
+    }
+
+    /**
+     * @return number of distinct outputs referenced by registered media
+     */
+    public int getOutputCount() {
+        return outputs.size();
+    }
+
+    /**
+     * Returns the canonical instance of a module, whose properties are interned as well.
+     *
+     * @param module
+     *            module to intern
+     * @return an equal module, which is shared by all callers
+     */
+    public VlcModule intern(VlcModule module) {
+        VlcModule interned = modules.get(module);
+        if (interned != null) {
+            return interned;
+        }
+        List<VlcProperty> moduleProperties = module.getProperties();
+        VlcProperty[] internedProperties = new VlcProperty[moduleProperties.size()];
+        for (int i = 0; i < internedProperties.length; i++) {
+            internedProperties[i] = intern(moduleProperties.get(i));
+        }
+        return putIfAbsent(modules, new VlcModule(intern(module.getName()), internedProperties));
+    }
+
+    /**
+     * Returns the canonical instance of an option.
+     *
+     * @param option
+     *            option to intern
+     * @return an equal option, which is shared by all callers
+     */
+    public VlcOption intern(VlcOption option) {
+        VlcOption interned = options.get(option);
+        return interned != null ? interned : putIfAbsent(options, new VlcOption(intern(option.getName()), intern(option.getValue())));
+    }
+
+    /**
+     * Returns the canonical instance of an output, whose modules are interned as well.
+     *
+     * @param output
+     *            output to intern
+     * @return an equal output, which is shared by all callers
+     */
+    public VlcOutput intern(VlcOutput output) {
+        if (output == null) {
+            return null;
+        }
+        VlcOutput interned = outputs.get(output);
+        if (interned != null) {
+            return interned;
+        }
+        List<VlcModule> outputModules = output.getModules();
+        VlcModule[] internedModules = new VlcModule[outputModules.size()];
+        for (int i = 0; i < internedModules.length; i++) {
+            internedModules[i] = intern(outputModules.get(i));
+        }
+        return putIfAbsent(outputs, new VlcOutput(internedModules));
+    }
+
+    /**
+     * Returns the canonical instance of a property.
+     *
+     * @param property
+     *            property to intern
+     * @return an equal property, which is shared by all callers
+     */
+    public VlcProperty intern(VlcProperty property) {
+        VlcProperty interned = properties.get(property);
+        return interned != null ? interned : putIfAbsent(properties, new VlcProperty(intern(property.getName()), intern(property.getValue())));
+    }
+
+    /**
+     * Registers a media with interned output and options. A media previously registered with the same name will be replaced.
+     *
+     * @param newMedia
+     *            media to register
+     * @return the registered media, which shares its parts with other registered media
+     */
+    public VlcMedia register(VlcMedia newMedia) {
+        List<VlcOption> mediaOptions = newMedia.getOptions();
+        VlcOption[] internedOptions = new VlcOption[mediaOptions.size()];
+        for (int i = 0; i < internedOptions.length; i++) {
+            internedOptions[i] = intern(mediaOptions.get(i));
+        }
+        VlcMedia registered = new VlcMedia(newMedia.getName(), newMedia.getType(), newMedia.isEnabed(), newMedia.isLoop(), newMedia.getInputs(),
+                intern(newMedia.getOutput()), asList(internedOptions), newMedia.getInstances());
+        media.put(registered.getName(), registered);
+        return registered;
+    }
+
+    /**
+     * @return number of registered media
+     */
+    public int size() {
+        return media.size();
+    }
+
+    /**
+     * Removes a media from the catalog. Interned parts are kept, since they are likely to be reused by media registered later.
+     *
+     * @param name
+     *            name of media to remove
+     * @return the removed media or <code>null</code> if there was no media with this name
+     */
+    public VlcMedia unregister(String name) {
+        return media.remove(name);
+    }
+
+    private String intern(String string) {
+        return string == null ? null : putIfAbsent(strings, string);
+    }
+
+    private <T> T putIfAbsent(ConcurrentMap<T, T> map, T value) {
+        T previous = map.putIfAbsent(value, value);
+        return previous == null ? value : previous;
+    }
+}
@@ -0,0 +1,289 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+/**
+ * Circuit breaker and bulkhead for calls to a single VLC endpoint. The breaker opens when the rate of failed or slow calls within a sliding window
+ * of the most recent calls exceeds a threshold. While open, calls are rejected immediately. After a wait period, the breaker lets a single caller
+ * through in half-open state, which probes VLC with a cheap command before its own command is sent, and closes again if both succeed. Independently
+ * of its state, the breaker limits the number of concurrent calls, so that threads can't pile up on a degraded endpoint.
+ *
+ * @since 1.0.0
+ */
+public class VlcCircuitBreaker {
+
+    public static class Builder implements org.apache.commons.lang3.builder.Builder<VlcCircuitBreaker> {
+
+        private float failureRateThreshold = .5f;
+        private float slowCallRateThreshold = .5f;
+        private Duration slowCallDurationThreshold = Duration.standardSeconds(5);
+        private int slidingWindowSize = 20;
+        private int minimumNumberOfCalls = 10;
+        private Duration waitDurationInOpenState = Duration.standardSeconds(10);
+        private int maxConcurrentCalls = Integer.MAX_VALUE;
+
+        @Override
+        public VlcCircuitBreaker build() {
+            return new VlcCircuitBreaker(this);
+        }
+
+        public Builder failureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            return this;
+        }
+
+        public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        public Builder slidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+            return this;
+        }
+
+        public Builder slowCallDurationThreshold(Duration slowCallDurationThreshold) {
+            this.slowCallDurationThreshold = slowCallDurationThreshold;
+            return this;
+        }
+
+        public Builder slowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        public Builder waitDurationInOpenState(Duration waitDurationInOpenState) {
+            this.waitDurationInOpenState = waitDurationInOpenState;
+            return this;
+        }
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Permission to execute a call, see {@link VlcCircuitBreaker#acquirePermission()}.
+     */
+    static final class Permission {
+        private final long generation;
+        private final boolean probe;
+
+        private Permission(long generation, boolean probe) {
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        /**
+         * @return <code>true</code> if the caller has to probe VLC with a cheap command before executing its call (half-open state)
+         */
+        boolean isProbe() {
+            return probe;
+        }
+    }
+
+    /**
+     * State of the breaker together with the generation counting its transitions and the time it has been entered, so that they change atomically.
+     */
+    private static final class Phase {
+        private final State state;
+        private final long generation;
+        private final long enteredAt;
+
+        private Phase(State state, long generation, long enteredAt) {
+            this.state = state;
+            this.generation = generation;
+            this.enteredAt = enteredAt;
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcCircuitBreaker.class);
+
+    private static final byte OUTCOME_FAILED = 1;
+    private static final byte OUTCOME_SLOW = 2;
+
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationThresholdNanos;
+    private final int minimumNumberOfCalls;
+    private final long waitDurationInOpenStateNanos;
+    private final int maxConcurrentCalls;
+    private final Semaphore bulkhead;
+
+    private final AtomicReference<Phase> phase;
+
+    // sliding window of outcomes, guarded by this
+    private final byte[] outcomes;
+    private int nextOutcome;
+    private int numberOfCalls;
+    private int numberOfFailedCalls;
+    private int numberOfSlowCalls;
+
+    private VlcCircuitBreaker(Builder builder) {
+        failureRateThreshold = builder.failureRateThreshold;
+        slowCallRateThreshold = builder.slowCallRateThreshold;
+        slowCallDurationThresholdNanos = MILLISECONDS.toNanos(builder.slowCallDurationThreshold.getMillis());
+        minimumNumberOfCalls = Math.min(builder.minimumNumberOfCalls, builder.slidingWindowSize);
+        waitDurationInOpenStateNanos = MILLISECONDS.toNanos(builder.waitDurationInOpenState.getMillis());
+        maxConcurrentCalls = builder.maxConcurrentCalls;
+        bulkhead = new Semaphore(builder.maxConcurrentCalls);
+        phase = new AtomicReference<Phase>(new Phase(State.CLOSED, 0, nanoTime()));
+        outcomes = new byte[builder.slidingWindowSize];
+    }
+
+    public int getAvailableConcurrentCalls() {
+        return bulkhead.availablePermits();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /**
+     * Acquires the permission to execute a call. Every successful acquisition must be followed by a call of {@link #onResult(Permission, long,
+     * boolean)} or {@link #releasePermission(Permission)}.
+     *
+     * @return permission to pass to {@link #onResult(Permission, long, boolean)}, which tells whether the caller has to probe VLC
+     * @throws VlcCallRejectedException
+     *             when breaker is open or maximum number of concurrent calls has been reached
+     */
+    Permission acquirePermission() throws VlcCallRejectedException {
+        Phase current = phase.get();
+        boolean probe = false;
+        switch (current.state) {
+        case OPEN:
+            Phase halfOpen = nanoTime() - current.enteredAt < waitDurationInOpenStateNanos ? null : transition(current, State.HALF_OPEN, nanoTime());
+            if (halfOpen == null) {
+                throw new VlcCallRejectedException("circuit breaker is open");
+            }
+            current = halfOpen;
+            probe = true;
+            break;
+        case HALF_OPEN:
+            throw new VlcCallRejectedException("circuit breaker is half open and already probing");
+        default:
+            break;
+        }
+        if (!bulkhead.tryAcquire()) {
+            if (probe) {
+                transitionToOpen(current);
+            }
+            throw new VlcCallRejectedException(format("maximum of %s concurrent calls reached", maxConcurrentCalls));
+        }
+        return new Permission(current.generation, probe);
+    }
+
+    /**
+     * Records the outcome of a call and releases its permission. Outcomes of calls admitted before the last transition of the breaker are ignored,
+     * so that calls still in flight when the breaker opened can neither extend the open period nor close the breaker while it is probing.
+     *
+     * @param permission
+     *            permission returned by {@link #acquirePermission()}
+     * @param durationNanos
+     *            duration of the call in nanoseconds
+     * @param success
+     *            weather call completed successfully
+     */
+    void onResult(Permission permission, long durationNanos, boolean success) {
+        bulkhead.release();
+        Phase current = phase.get();
+        if (current.generation != permission.generation) {
+            return;
+        }
+        boolean slow = durationNanos > slowCallDurationThresholdNanos;
+        if (current.state == State.HALF_OPEN) {
+            if (success && !slow) {
+                if (transition(current, State.CLOSED, nanoTime()) != null) {
+                    LOG.debug("closed circuit breaker after successful probe");
+                }
+            } else {
+                transitionToOpen(current);
+            }
+            return;
+        }
+        if (record((byte) ((success ? 0 : OUTCOME_FAILED) | (slow ? OUTCOME_SLOW : 0)))) {
+            transitionToOpen(current);
+        }
+    }
+
+    /**
+     * Releases a permission without recording an outcome, because the call has not been executed at all.
+     *
+     * @param permission
+     *            permission returned by {@link #acquirePermission()}
+     */
+    void releasePermission(Permission permission) {
+        bulkhead.release();
+        Phase current = phase.get();
+        if (permission.probe && current.generation == permission.generation) {
+            // probing is left to the next caller
+            transition(current, State.OPEN, nanoTime() - waitDurationInOpenStateNanos);
+        }
+    }
+
+    /**
+     * Records an outcome in the sliding window.
+     *
+     * @return <code>true</code> if thresholds have been exceeded
+     */
+    private synchronized boolean record(byte outcome) {
+        if (numberOfCalls == outcomes.length) {
+            byte evicted = outcomes[nextOutcome];
+            numberOfFailedCalls -= evicted & OUTCOME_FAILED;
+            numberOfSlowCalls -= (evicted & OUTCOME_SLOW) >> 1;
+        } else {
+            numberOfCalls++;
+        }
+        outcomes[nextOutcome] = outcome;
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+        numberOfFailedCalls += outcome & OUTCOME_FAILED;
+        numberOfSlowCalls += (outcome & OUTCOME_SLOW) >> 1;
+        return numberOfCalls >= minimumNumberOfCalls && ((float) numberOfFailedCalls / numberOfCalls >= failureRateThreshold
+                || (float) numberOfSlowCalls / numberOfCalls >= slowCallRateThreshold);
+    }
+
+    private synchronized void reset() {
+        nextOutcome = 0;
+        numberOfCalls = 0;
+        numberOfFailedCalls = 0;
+        numberOfSlowCalls = 0;
+    }
+
+    /**
+     * Enters a new state unless the breaker has left the expected phase meanwhile.
+     *
+     * @return phase that has been entered or <code>null</code> if the breaker has left the expected phase
+     */
+    private Phase transition(Phase expected, State state, long enteredAt) {
+        Phase next = new Phase(state, expected.generation + 1, enteredAt);
+        if (!phase.compareAndSet(expected, next)) {
+            return null;
+        }
+        reset();
+        return next;
+    }
+
+    private void transitionToOpen(Phase expected) {
+        if (transition(expected, State.OPEN, nanoTime()) != null) {
+            LOG.warn(format("opened circuit breaker (was %s)", expected.state));
+        }
+    }
+}
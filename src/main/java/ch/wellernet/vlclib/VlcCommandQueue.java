@@ -0,0 +1,333 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.joda.time.Duration;
+
+/**
+ * Bounded queue of commands waiting for their turn on a VLC session. VLC executes commands of a session one after the other, so only one command
+ * at a time is dispatched, optionally paced by a {@link VlcRateLimiter}. Whenever the session becomes free, the oldest command of the highest
+ * {@link CommandPriority} is dispatched next, unless a command of a lower priority has been waiting longer than the starvation threshold. When the
+ * queue is full, new submissions are handled according to the {@link SubmissionPolicy}, so that load bursts degrade gracefully instead of piling up
+ * unbounded latency.
+ *
+ * @since 1.0.0
+ */
+public class VlcCommandQueue {
+
+    public static class Builder implements org.apache.commons.lang3.builder.Builder<VlcCommandQueue> {
+
+        private int capacity = Integer.MAX_VALUE;
+        private SubmissionPolicy submissionPolicy = SubmissionPolicy.BLOCK;
+        private Duration timeout = Duration.standardSeconds(30);
+        private VlcRateLimiter rateLimiter;
+        private Duration starvationThreshold = Duration.standardSeconds(1);
+
+        @Override
+        public VlcCommandQueue build() {
+            return new VlcCommandQueue(this);
+        }
+
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder rateLimiter(VlcRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        public Builder starvationThreshold(Duration starvationThreshold) {
+            this.starvationThreshold = starvationThreshold;
+            return this;
+        }
+
+        public Builder submissionPolicy(SubmissionPolicy submissionPolicy) {
+            this.submissionPolicy = submissionPolicy;
+            return this;
+        }
+
+        public Builder timeout(Duration timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+    }
+
+    public enum SubmissionPolicy {
+        /**
+         * Waits until there is room in the queue and until the command's turn has come.
+         */
+        BLOCK,
+        /**
+         * Like {@link #BLOCK}, but rejects the command if it couldn't be dispatched within the configured timeout.
+         */
+        TIMED,
+        /**
+         * Rejects the command immediately if the queue is full.
+         */
+        REJECT
+    }
+
+    private static class Waiter {
+        private final Condition turn;
+        private final CommandPriority priority;
+        private final long submittedAt;
+        private boolean granted;
+
+        private Waiter(Condition turn, CommandPriority priority, long submittedAt) {
+            this.turn = turn;
+            this.priority = priority;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    private final int capacity;
+    private final SubmissionPolicy submissionPolicy;
+    private final long timeoutNanos;
+    private final VlcRateLimiter rateLimiter;
+    private final long starvationThresholdNanos;
+
+    private final ReentrantLock lock;
+    private final Condition notFull;
+    private final List<Deque<Waiter>> lanes;
+    private int waiterCount;
+    private boolean busy;
+    private CommandPriority currentPriority;
+    private long currentSubmittedAt;
+
+    private volatile int queueDepth;
+    private volatile int maxQueueDepth;
+    private final AtomicLong submittedCount;
+    private final AtomicLong rejectedCount;
+    private final VlcLatencyHistogram[] queueingLatencies;
+    private final VlcLatencyHistogram[] latencies;
+
+    private VlcCommandQueue(Builder builder) {
+        capacity = builder.capacity;
+        submissionPolicy = builder.submissionPolicy;
+        timeoutNanos = MILLISECONDS.toNanos(builder.timeout.getMillis());
+        rateLimiter = builder.rateLimiter;
+        starvationThresholdNanos = MILLISECONDS.toNanos(builder.starvationThreshold.getMillis());
+        lock = new ReentrantLock();
+        notFull = lock.newCondition();
+        int laneCount = CommandPriority.values().length;
+        lanes = new ArrayList<Deque<Waiter>>(laneCount);
+        queueingLatencies = new VlcLatencyHistogram[laneCount];
+        latencies = new VlcLatencyHistogram[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            lanes.add(new ArrayDeque<Waiter>());
+            queueingLatencies[lane] = new VlcLatencyHistogram();
+            latencies[lane] = new VlcLatencyHistogram();
+        }
+        submittedCount = new AtomicLong();
+        rejectedCount = new AtomicLong();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @param priority
+     *            priority class
+     * @return latencies of commands of given priority class from submission until session has been passed on
+     */
+    public VlcLatencyHistogram getLatency(CommandPriority priority) {
+        return latencies[priority.ordinal()];
+    }
+
+    /**
+     * @return largest number of commands that have been waiting at the same time
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * @return number of commands currently waiting for their turn (not including the one being executed)
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @param priority
+     *            priority class
+     * @return latencies of commands of given priority class from submission until dispatch
+     */
+    public VlcLatencyHistogram getQueueingLatency(CommandPriority priority) {
+        return queueingLatencies[priority.ordinal()];
+    }
+
+    public VlcRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public SubmissionPolicy getSubmissionPolicy() {
+        return submissionPolicy;
+    }
+
+    /**
+     * Waits until the calling thread may use the session. Each successful call must be followed by a call of {@link #leave()}.
+     *
+     * @param priority
+     *            priority class of the command
+     * @throws VlcCallRejectedException
+     *             when the command has been rejected by the submission policy or the thread has been interrupted
+     */
+    void enter(CommandPriority priority) throws VlcCallRejectedException {
+        submittedCount.incrementAndGet();
+        long submittedAt = System.nanoTime();
+        long deadline = submittedAt + timeoutNanos;
+        lock.lock();
+        try {
+            if (!busy && waiterCount == 0) {
+                busy = true;
+            } else {
+                awaitRoom(deadline);
+                awaitTurn(new Waiter(lock.newCondition(), priority, submittedAt), deadline);
+            }
+            currentPriority = priority;
+            currentSubmittedAt = submittedAt;
+        } finally {
+            lock.unlock();
+        }
+        queueingLatencies[priority.ordinal()].record(System.nanoTime() - submittedAt);
+        if (rateLimiter != null) {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException exception) {
+                leave();
+                throw interrupted();
+            }
+        }
+    }
+
+    /**
+     * Passes the session on to the next waiting command.
+     */
+    void leave() {
+        lock.lock();
+        try {
+            if (currentPriority != null) {
+                latencies[currentPriority.ordinal()].record(System.nanoTime() - currentSubmittedAt);
+                currentPriority = null;
+            }
+            Waiter next = pollNext();
+            if (next == null) {
+                busy = false;
+            } else {
+                next.granted = true;
+                next.turn.signal();
+                notFull.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void abandon(Waiter waiter) {
+        lanes.get(waiter.priority.ordinal()).remove(waiter);
+        queueDepth = --waiterCount;
+        notFull.signal();
+    }
+
+    private void awaitRoom(long deadline) throws VlcCallRejectedException {
+        try {
+            while (waiterCount >= capacity) {
+                if (submissionPolicy == SubmissionPolicy.REJECT) {
+                    throw rejected(format("queue is full (%s commands waiting)", waiterCount));
+                } else if (submissionPolicy == SubmissionPolicy.TIMED) {
+                    if (notFull.awaitNanos(deadline - System.nanoTime()) <= 0 && waiterCount >= capacity) {
+                        throw rejected("timed out while waiting for room in queue");
+                    }
+                } else {
+                    notFull.await();
+                }
+            }
+        } catch (InterruptedException exception) {
+            throw interrupted();
+        }
+    }
+
+    private void awaitTurn(Waiter waiter, long deadline) throws VlcCallRejectedException {
+        lanes.get(waiter.priority.ordinal()).addLast(waiter);
+        queueDepth = ++waiterCount;
+        maxQueueDepth = Math.max(maxQueueDepth, queueDepth);
+        try {
+            while (!waiter.granted) {
+                if (submissionPolicy == SubmissionPolicy.TIMED) {
+                    if (waiter.turn.awaitNanos(deadline - System.nanoTime()) <= 0 && !waiter.granted) {
+                        abandon(waiter);
+                        throw rejected("timed out while waiting for turn in queue");
+                    }
+                } else {
+                    waiter.turn.await();
+                }
+            }
+        } catch (InterruptedException exception) {
+            if (waiter.granted) {
+                // turn has already been passed to us, so it has to be passed on
+                leave();
+            } else {
+                abandon(waiter);
+            }
+            throw interrupted();
+        }
+    }
+
+    private VlcCallRejectedException interrupted() {
+        Thread.currentThread().interrupt();
+        return rejected("interrupted while waiting in queue");
+    }
+
+    /**
+     * Removes the waiter that has to be dispatched next: the oldest waiter that exceeded the starvation threshold if there is one, otherwise the
+     * oldest waiter of the highest priority.
+     */
+    private Waiter pollNext() {
+        if (waiterCount == 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Deque<Waiter> next = null;
+        Deque<Waiter> starving = null;
+        for (Deque<Waiter> lane : lanes) {
+            Waiter head = lane.peekFirst();
+            if (head == null) {
+                continue;
+            }
+            if (next == null) {
+                next = lane;
+            }
+            if (now - head.submittedAt > starvationThresholdNanos && (starving == null || head.submittedAt < starving.peekFirst().submittedAt)) {
+                starving = lane;
+            }
+        }
+        queueDepth = --waiterCount;
+        return starving == null ? next.pollFirst() : starving.pollFirst();
+    }
+
+    private VlcCallRejectedException rejected(String message) {
+        rejectedCount.incrementAndGet();
+        return new VlcCallRejectedException(message);
+    }
+}
@@ -0,0 +1,132 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.util.Collections.unmodifiableMap;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Establishes connections of many {@link VlcManager}s at once. TCP connect and login of all endpoints run concurrently with a bounded number of
+ * threads, so that the time to connect a whole fleet no longer grows linearly with its size.
+ *
+ * @since 1.0.0
+ */
+public class VlcConnector {
+
+    private static final Log LOG = LogFactory.getLog(VlcConnector.class);
+
+    private final int parallelism;
+
+    /**
+     * @param parallelism
+     *            maximum number of connections that are established at the same time
+     */
+    public VlcConnector(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException(format("parallelism must be positive but was %s", parallelism));
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Connects and logs in all given managers concurrently. All passwords will be wiped when this method returns, even for connections that
+     * couldn't be established in time. Connections that are still pending when the timeout elapses will be aborted.
+     *
+     * @param passwords
+     *            managers to connect with password to use for each of them
+     * @param timeout
+     *            maximum time to wait for all connections together
+     * @param unit
+     *            unit of timeout
+     * @return managers that couldn't be connected with the reason of failure (empty if all managers have been connected successfully)
+     * @throws InterruptedException
+     *             when the current thread has been interrupted while waiting
+     */
+    public Map<VlcManager, VlcConnectionException> connectAll(Map<VlcManager, char[]> passwords, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        Map<VlcManager, VlcConnectionException> failures = new LinkedHashMap<VlcManager, VlcConnectionException>();
+        if (passwords.isEmpty()) {
+            return failures;
+        }
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (final Entry<VlcManager, char[]> entry : passwords.entrySet()) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws VlcConnectionException {
+                    entry.getKey().connect(entry.getValue());
+                    return null;
+                }
+            });
+        }
+        ExecutorService executor = newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try {
+            List<Future<Void>> futures = executor.invokeAll(tasks, timeout, unit);
+            int index = 0;
+            for (VlcManager manager : passwords.keySet()) {
+                VlcConnectionException failure = failureOf(manager, futures.get(index++));
+                if (failure != null) {
+                    failures.put(manager, failure);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            for (char[] password : passwords.values()) {
+                Arrays.fill(password, '\0');
+            }
+        }
+        LOG.debug(format("connected %s of %s managers", passwords.size() - failures.size(), passwords.size()));
+        return unmodifiableMap(failures);
+    }
+
+    /**
+     * Prepares all given managers to connect on first use (see {@link VlcManager#connectLazily(char[])}).
+     *
+     * @param passwords
+     *            managers to connect with password to use for each of them
+     */
+    public void connectAllLazily(Map<VlcManager, char[]> passwords) {
+        for (Entry<VlcManager, char[]> entry : passwords.entrySet()) {
+            entry.getKey().connectLazily(entry.getValue());
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    private VlcConnectionException failureOf(VlcManager manager, Future<Void> future) throws InterruptedException {
+        try {
+            future.get();
+            return null;
+        } catch (CancellationException exception) {
+            // a thread blocked on the socket doesn't react on interruption, so connection is closed to release it
+            try {
+                manager.disconnect();
+            } catch (VlcConnectionException disconnectException) {
+                LOG.debug(format("caught exception while aborting connection to %s:%s", manager.getHostname(), manager.getPort()),
+                        disconnectException);
+            }
+            return new VlcConnectionException(format("timed out while connecting to %s:%s", manager.getHostname(), manager.getPort()));
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof VlcConnectionException) {
+                return (VlcConnectionException) exception.getCause();
+            }
+            return new VlcConnectionException(exception.getCause());
+        }
+    }
+}
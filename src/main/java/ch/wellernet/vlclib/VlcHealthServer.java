@@ -0,0 +1,267 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.commons.lang3.StringEscapeUtils.escapeJson;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP endpoint exposing health and metrics of a set of {@link VlcManager}s, based on the HTTP server built into the JDK:
+ * <ul>
+ * <li><code>/health/live</code> responds with 200 as long as the server is running,</li>
+ * <li><code>/health/ready</code> responds with 200 if all managers are connected (or connect on first use) and none of their circuit breakers is
+ * open, with 503 otherwise,</li>
+ * <li><code>/metrics</code> responds with connection state, time of last successful round trip, command counts, round trip percentiles, queue depth
+ * and known media of each manager in Prometheus text format,</li>
+ * <li><code>/metrics.json</code> responds with the same values as JSON.</li>
+ * </ul>
+ * All values are read from lock-free counters (see {@link VlcMetrics}), so that scraping never contends with commands.
+ *
+ * @since 1.0.0
+ */
+public class VlcHealthServer {
+
+    private static final Log LOG = LogFactory.getLog(VlcHealthServer.class);
+
+    private static final double[] QUANTILES = { .5, .99, .999 };
+    private static final double NANOS_PER_SECOND = SECONDS.toNanos(1);
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<VlcManager> managers;
+
+    /**
+     * Starts a server on a given address.
+     *
+     * @param address
+     *            address to listen on (port 0 to pick a free port)
+     * @throws IOException
+     *             when the server can't be bound to the address
+     */
+    public VlcHealthServer(InetSocketAddress address) throws IOException {
+        managers = new CopyOnWriteArrayList<VlcManager>();
+        server = HttpServer.create(address, 0);
+        server.createContext("/health/live", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, HttpURLConnection.HTTP_OK, "text/plain; charset=utf-8", "live\n");
+            }
+        });
+        server.createContext("/health/ready", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                boolean ready = isReady();
+                respond(exchange, ready ? HttpURLConnection.HTTP_OK : HttpURLConnection.HTTP_UNAVAILABLE, "text/plain; charset=utf-8",
+                        ready ? "ready\n" : "not ready\n");
+            }
+        });
+        server.createContext("/metrics", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (exchange.getRequestURI().getPath().endsWith(".json")) {
+                    respond(exchange, HttpURLConnection.HTTP_OK, JSON_CONTENT_TYPE, renderJson());
+                } else {
+                    respond(exchange, HttpURLConnection.HTTP_OK, PROMETHEUS_CONTENT_TYPE, renderPrometheus());
+                }
+            }
+        });
+        executor = Executors.newSingleThreadExecutor();
+        server.setExecutor(executor);
+        server.start();
+        LOG.debug(format("started health server on %s", server.getAddress()));
+    }
+
+    /**
+     * Adds a manager to be exposed by this server.
+     *
+     * @param manager
+     *            manager to expose
+     */
+    public void add(VlcManager manager) {
+        managers.add(manager);
+    }
+
+    /**
+     * @return address the server is listening on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * @return <code>true</code> if all managers are connected or will connect on first use (see {@link VlcManager#connectLazily(char[])}) and none
+     *         of their circuit breakers is open
+     */
+    public boolean isReady() {
+        for (VlcManager manager : managers) {
+            VlcCircuitBreaker breaker = manager.getCircuitBreaker();
+            boolean connected = manager.getMetrics().isConnected() || manager.isConnectingLazily();
+            if (!connected || breaker != null && breaker.getState() == VlcCircuitBreaker.State.OPEN) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a manager from this server.
+     *
+     * @param manager
+     *            manager not to expose anymore
+     */
+    public void remove(VlcManager manager) {
+        managers.remove(manager);
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+        LOG.debug(format("stopped health server on %s", server.getAddress()));
+    }
+
+    /**
+     * Renders metrics of all managers as JSON.
+     *
+     * @return metrics
+     */
+    String renderJson() {
+        StringBuilder out = new StringBuilder();
+        out.append("{\"ready\":").append(isReady()).append(",\"managers\":[");
+        for (Iterator<VlcManager> managerIterator = managers.iterator(); managerIterator.hasNext();) {
+            VlcManager manager = managerIterator.next();
+            VlcMetrics metrics = manager.getMetrics();
+            out.append(format("{\"host\":\"%s\",\"port\":%s,\"connected\":%s,\"lastSuccessAt\":%s,\"queueDepth\":%s,\"rejected\":%s,\"commands\":{",
+                    escapeJson(manager.getHostname()), manager.getPort(), metrics.isConnected(), metrics.getLastSuccessAt(),
+                    manager.getCommandQueue().getQueueDepth(), manager.getCommandQueue().getRejectedCount()));
+            for (CommandPriority priority : CommandPriority.values()) {
+                VlcLatencyHistogram latency = metrics.getRoundTripLatency(priority);
+                out.append(format(Locale.ROOT, "\"%s\":{\"count\":%s,\"failures\":%s,\"p50\":%.6f,\"p99\":%.6f,\"p999\":%.6f,\"max\":%.6f}",
+                        priority.name().toLowerCase(Locale.ROOT), metrics.getCommandCount(priority), metrics.getFailureCount(priority),
+                        latency.getValueAtPercentile(50) / NANOS_PER_SECOND, latency.getValueAtPercentile(99) / NANOS_PER_SECOND,
+                        latency.getValueAtPercentile(99.9) / NANOS_PER_SECOND, latency.getMax() / NANOS_PER_SECOND));
+                out.append(priority.ordinal() < CommandPriority.values().length - 1 ? "," : "");
+            }
+            out.append("},\"knownMedia\":[");
+            Set<String> mediaNames = manager.getKnownMediaNames();
+            for (Iterator<String> mediaIterator = mediaNames.iterator(); mediaIterator.hasNext();) {
+                out.append('"').append(escapeJson(mediaIterator.next())).append('"').append(mediaIterator.hasNext() ? "," : "");
+            }
+            out.append("]}").append(managerIterator.hasNext() ? "," : "");
+        }
+        return out.append("]}\n").toString();
+    }
+
+    /**
+     * Renders metrics of all managers in Prometheus text format.
+     *
+     * @return metrics
+     */
+    String renderPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# TYPE vlc_connected gauge\n");
+        for (VlcManager manager : managers) {
+            sample(out, "vlc_connected", labels(manager), manager.getMetrics().isConnected() ? 1 : 0);
+        }
+        out.append("# TYPE vlc_last_success_timestamp_seconds gauge\n");
+        for (VlcManager manager : managers) {
+            sample(out, "vlc_last_success_timestamp_seconds", labels(manager), manager.getMetrics().getLastSuccessAt() / 1000d);
+        }
+        out.append("# TYPE vlc_commands_total counter\n");
+        for (VlcManager manager : managers) {
+            for (CommandPriority priority : CommandPriority.values()) {
+                sample(out, "vlc_commands_total", labels(manager, priority), manager.getMetrics().getCommandCount(priority));
+            }
+        }
+        out.append("# TYPE vlc_command_failures_total counter\n");
+        for (VlcManager manager : managers) {
+            for (CommandPriority priority : CommandPriority.values()) {
+                sample(out, "vlc_command_failures_total", labels(manager, priority), manager.getMetrics().getFailureCount(priority));
+            }
+        }
+        out.append("# TYPE vlc_round_trip_seconds summary\n");
+        for (VlcManager manager : managers) {
+            for (CommandPriority priority : CommandPriority.values()) {
+                VlcLatencyHistogram latency = manager.getMetrics().getRoundTripLatency(priority);
+                String labels = labels(manager, priority);
+                for (double quantile : QUANTILES) {
+                    sample(out, "vlc_round_trip_seconds", format(Locale.ROOT, "%s,quantile=\"%s\"", labels, quantile),
+                            latency.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+                }
+                long count = latency.getCount();
+                sample(out, "vlc_round_trip_seconds_sum", labels, latency.getMean() * count / NANOS_PER_SECOND);
+                sample(out, "vlc_round_trip_seconds_count", labels, count);
+            }
+        }
+        out.append("# TYPE vlc_queue_depth gauge\n");
+        for (VlcManager manager : managers) {
+            sample(out, "vlc_queue_depth", labels(manager), manager.getCommandQueue().getQueueDepth());
+        }
+        out.append("# TYPE vlc_queue_rejected_total counter\n");
+        for (VlcManager manager : managers) {
+            sample(out, "vlc_queue_rejected_total", labels(manager), manager.getCommandQueue().getRejectedCount());
+        }
+        out.append("# TYPE vlc_known_media gauge\n");
+        for (VlcManager manager : managers) {
+            sample(out, "vlc_known_media", labels(manager), manager.getKnownMediaNames().size());
+        }
+        return out.toString();
+    }
+
+    private String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private String labels(VlcManager manager) {
+        return format("host=\"%s\",port=\"%s\"", escapeLabel(manager.getHostname()), manager.getPort());
+    }
+
+    private String labels(VlcManager manager, CommandPriority priority) {
+        return format("%s,priority=\"%s\"", labels(manager), priority.name().toLowerCase(Locale.ROOT));
+    }
+
+    private void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream responseBody = exchange.getResponseBody();
+        try {
+            responseBody.write(bytes);
+        } finally {
+            responseBody.close();
+        }
+    }
+
+    private void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append('{').append(labels).append("} ");
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            out.append((long) value);
+        } else {
+            out.append(format(Locale.ROOT, "%s", value));
+        }
+        out.append('\n');
+    }
+}
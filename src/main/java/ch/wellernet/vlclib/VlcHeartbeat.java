@@ -0,0 +1,243 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+/**
+ * Detects sessions to VLC that have silently gone away, for example after the VM running VLC has been paused or a NAT entry has timed out. Such a
+ * session looks healthy until the next command hangs waiting for its response. The heartbeat sends a cheap command (see {@link VlcManager#ping()})
+ * on each session that has been idle for the configured interval. If the response doesn't arrive within the deadline, the session is considered
+ * dead: the manager is disconnected, which aborts the pending ping and any command waiting behind it, and the listener is notified so that it can
+ * reconnect before a user-facing request runs into the dead session. A ping that has been rejected without being sent (see
+ * {@link VlcCallRejectedException}) tells nothing about the session, so the heartbeat is just skipped.
+ *
+ * <p>
+ * Pings run on threads of their own and their deadlines are checked by separate tasks, so that hung sessions don't delay the checks of other
+ * sessions. No new ping is sent to a session while its previous ping is still pending.
+ *
+ * @since 1.0.0
+ */
+public class VlcHeartbeat {
+
+    public static class Builder implements org.apache.commons.lang3.builder.Builder<VlcHeartbeat> {
+
+        private Duration interval = Duration.standardSeconds(15);
+        private Duration deadline = Duration.standardSeconds(5);
+        private int threads = 1;
+
+        @Override
+        public VlcHeartbeat build() {
+            return new VlcHeartbeat(this);
+        }
+
+        public Builder deadline(Duration deadline) {
+            this.deadline = deadline;
+            return this;
+        }
+
+        public Builder interval(Duration interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+    }
+
+    /**
+     * Receives notifications about dead sessions.
+     */
+    public interface Listener {
+
+        /**
+         * Called when a session has missed the deadline of a heartbeat or the heartbeat failed. The manager has already been disconnected and is no
+         * longer monitored.
+         *
+         * @param manager
+         *            manager which session is dead
+         * @param exception
+         *            cause of failure
+         */
+        void sessionDead(VlcManager manager, VlcConnectionException exception);
+    }
+
+    private class Monitor implements Runnable {
+        private final VlcManager manager;
+        private final Listener listener;
+        private volatile Duration roundTrip;
+        private ScheduledFuture<?> future;
+        // at most one ping per session is in flight, so that a hung session can't tie up more and more threads
+        private Future<?> pendingPing;
+
+        private Monitor(VlcManager manager, Listener listener) {
+            this.manager = manager;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (nanoTime() - manager.getLastResponseAt() < intervalNanos) {
+                return;
+            }
+            final Future<?> ping;
+            synchronized (this) {
+                if (pendingPing != null && !pendingPing.isDone()) {
+                    // deadline of pending ping is checked on its own
+                    return;
+                }
+                ping = pingExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        ping();
+                    }
+                });
+                pendingPing = ping;
+            }
+            // deadline is checked separately instead of waiting for the ping, so that a hung session doesn't delay checks of other sessions
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    checkDeadline(ping);
+                }
+            }, deadlineMillis, MILLISECONDS);
+        }
+
+        private synchronized void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private void checkDeadline(Future<?> ping) {
+            if (!ping.isDone()) {
+                ping.cancel(true);
+                declareDead(new VlcConnectionException(format("heartbeat to %s:%s missed deadline of %s ms", manager.getHostname(), manager.getPort(),
+                        deadlineMillis)));
+            }
+        }
+
+        private void declareDead(VlcConnectionException exception) {
+            if (!monitors.remove(manager, this)) {
+                return;
+            }
+            cancel();
+            LOG.warn(format("session to %s:%s is dead", manager.getHostname(), manager.getPort()), exception);
+            try {
+                manager.disconnect();
+            } catch (VlcConnectionException disconnectException) {
+                LOG.debug(format("caught exception while disconnecting dead session to %s:%s", manager.getHostname(), manager.getPort()),
+                        disconnectException);
+            }
+            listener.sessionDead(manager, exception);
+        }
+
+        private void ping() {
+            try {
+                roundTrip = manager.ping();
+            } catch (VlcCallRejectedException exception) {
+                // ping has not been sent (for example because the circuit breaker is open), so it tells nothing about the session
+                LOG.debug(format("skipped heartbeat to %s:%s: %s", manager.getHostname(), manager.getPort(), exception.getMessage()));
+            } catch (VlcConnectionException exception) {
+                declareDead(exception);
+            } catch (RuntimeException exception) {
+                declareDead(new VlcConnectionException(exception));
+            }
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcHeartbeat.class);
+
+    private final long intervalNanos;
+    private final long deadlineMillis;
+    private final ScheduledExecutorService executor;
+    private final ExecutorService pingExecutor;
+    private final ConcurrentMap<VlcManager, Monitor> monitors;
+
+    private VlcHeartbeat(Builder builder) {
+        intervalNanos = MILLISECONDS.toNanos(builder.interval.getMillis());
+        deadlineMillis = builder.deadline.getMillis();
+        executor = Executors.newScheduledThreadPool(builder.threads);
+        pingExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "vlc-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        monitors = new ConcurrentHashMap<VlcManager, Monitor>();
+    }
+
+    /**
+     * @param manager
+     *            monitored manager
+     * @return round trip time of the last successful heartbeat or <code>null</code> if there was none yet or the manager is not monitored
+     */
+    public Duration getRoundTrip(VlcManager manager) {
+        Monitor monitor = monitors.get(manager);
+        return monitor == null ? null : monitor.roundTrip;
+    }
+
+    /**
+     * Starts monitoring the session of a connected manager. If the manager is already monitored, it will be monitored from now on for the given
+     * listener only.
+     *
+     * @param manager
+     *            manager to monitor
+     * @param listener
+     *            listener to notify when the session is dead
+     */
+    public void monitor(VlcManager manager, Listener listener) {
+        Monitor monitor = new Monitor(manager, listener);
+        long periodNanos = Math.max(1, intervalNanos / 2);
+        Monitor previous = monitors.put(manager, monitor);
+        if (previous != null) {
+            previous.cancel();
+        }
+        synchronized (monitor) {
+            // sessions are checked twice per interval, so that none is left idle much longer than the interval
+            monitor.future = executor.scheduleWithFixedDelay(monitor, periodNanos, periodNanos, NANOSECONDS);
+        }
+        LOG.debug(format("started heartbeat of %s:%s", manager.getHostname(), manager.getPort()));
+    }
+
+    /**
+     * Stops monitoring all sessions and releases the threads of this heartbeat.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        pingExecutor.shutdownNow();
+        monitors.clear();
+    }
+
+    /**
+     * Stops monitoring the session of a manager.
+     *
+     * @param manager
+     *            manager to stop monitoring
+     */
+    public void unmonitor(VlcManager manager) {
+        Monitor monitor = monitors.remove(manager);
+        if (monitor != null) {
+            monitor.cancel();
+            LOG.debug(format("stopped heartbeat of %s:%s", manager.getHostname(), manager.getPort()));
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.regex.Pattern.compile;
+import static org.apache.commons.lang3.StringEscapeUtils.unescapeXml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.net.util.Base64;
+
+/**
+ * Transport for VLC's web interface (enabled with <code>--extraintf http</code>), which executes VLM commands with requests to
+ * <code>/requests/vlm_cmd.xml</code>. The transport emulates the telnet session expected by {@link VlcManager}: the first line written is taken as
+ * password for basic authentication and each further line is sent as a separate request on a pool of keep-alive connections as soon as it has been
+ * written. Queries (<code>show</code>) written back to back are executed concurrently, but a command changing state is only executed once all
+ * requests written before it have completed and before any request written after it, so that the side effects of a batch happen in order.
+ * Responses are always delivered in order. The structured XML responses are rendered in the indented form of the telnet interface, so that they can
+ * be parsed the same way.
+ *
+ * <p>
+ * Besides the emulated session, queries can be executed with {@link #query(String)}, which {@link VlcManager} uses to let reads of different
+ * callers run in parallel instead of waiting for the session. Such a query still waits for the last command changing state written before it.
+ *
+ * <p>
+ * The credentials are kept in a byte array that is wiped when the transport is disconnected. Since {@link HttpURLConnection} only accepts headers
+ * as strings, the value of the authorization header is built for each request and remains in memory as an immutable string until it is garbage
+ * collected.
+ *
+ * @since 1.0.0
+ */
+public class VlcHttpTransport implements VlcTransport {
+
+    /**
+     * Element of a response.
+     */
+    private static class Element {
+        private final String name;
+        private final StringBuilder text;
+        private final List<Element> children;
+
+        private Element(String name) {
+            this.name = name;
+            this.text = new StringBuilder();
+            this.children = new ArrayList<Element>();
+        }
+
+        private Element child(String childName) {
+            for (Element child : children) {
+                if (child.name.equals(childName)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Output stream that dispatches each line written to it.
+     */
+    private class CommandStream extends OutputStream {
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b != '\n') {
+                line.write(b);
+                return;
+            }
+            byte[] bytes = line.toByteArray();
+            line.reset();
+            int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+            if (credentials == null) {
+                credentials = concat(new byte[] { ':' }, Arrays.copyOf(bytes, length));
+                Arrays.fill(bytes, (byte) 0);
+                responses.enqueue(completed(WELCOME));
+            } else {
+                dispatch(new String(bytes, 0, length, UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Input stream that delivers responses in the order their requests have been dispatched.
+     */
+    private static class ResponseStream extends InputStream {
+        private final BlockingQueue<Future<byte[]>> responses = new LinkedBlockingQueue<Future<byte[]>>();
+        private byte[] current = new byte[0];
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (current != null && position == current.length) {
+                try {
+                    current = responses.take().get();
+                    position = 0;
+                } catch (InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted while waiting for response");
+                } catch (ExecutionException exception) {
+                    throw exception.getCause() instanceof IOException ? (IOException) exception.getCause() : new IOException(exception.getCause());
+                }
+            }
+            if (current == null) {
+                return -1;
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        private void enqueue(Future<byte[]> response) {
+            responses.add(response);
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcHttpTransport.class);
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
+
+    private static final String COMMAND_URL_TEMPLATE = "http://%s:%s/requests/vlm_cmd.xml?command=%s";
+    private static final int TIMEOUT_MILLIS = 30000;
+    private static final String GREETING = "VLC media player (web interface)\nPassword: ";
+    private static final String WELCOME = "Welcome, Master\n> ";
+    private static final String PROMPT = "\n> ";
+    private static final String INDENTATION = "    ";
+    private static final Pattern TAG = compile("<(/?)([^\\s/>?!]+)[^>]*?(/?)>");
+
+    private final int maxConcurrentRequests;
+    private final List<Future<byte[]>> pendingQueries = new ArrayList<Future<byte[]>>();
+
+    private String hostname;
+    private int port;
+    private ExecutorService executor;
+    private ResponseStream responses;
+    private CommandStream commands;
+    // user (always empty) and password separated by a colon as sent with basic authentication
+    private volatile byte[] credentials;
+    private Future<byte[]> lastMutation;
+
+    /**
+     * Prepares a transport that executes up to {@value #DEFAULT_MAX_CONCURRENT_REQUESTS} requests concurrently.
+     */
+    public VlcHttpTransport() {
+        this(DEFAULT_MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * @param maxConcurrentRequests
+     *            maximum number of requests executed concurrently (and thus of keep-alive connections)
+     */
+    public VlcHttpTransport(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * @return whether the session has been opened and the password has been written, so that {@link #query(String)} can be used
+     */
+    @Override
+    public boolean canQuery() {
+        return isConnected() && credentials != null;
+    }
+
+    @Override
+    public synchronized void connect(String hostname, int port) throws IOException {
+        this.hostname = hostname;
+        this.port = port;
+        wipeCredentials();
+        executor = Executors.newFixedThreadPool(maxConcurrentRequests, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "vlc-http-transport");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        lastMutation = null;
+        pendingQueries.clear();
+        responses = new ResponseStream();
+        commands = new CommandStream();
+        responses.enqueue(completed(GREETING));
+        LOG.debug(format("prepared HTTP transport for %s:%s", hostname, port));
+    }
+
+    @Override
+    public synchronized void disconnect() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+            responses.enqueue(completed(null));
+        }
+        wipeCredentials();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return responses;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return commands;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return executor != null;
+    }
+
+    /**
+     * Executes a query directly, independently of the emulated session and concurrently with other queries, but after the last command changing
+     * state that has been written to the session.
+     *
+     * @param command
+     *            query to execute (<code>show</code>)
+     * @return response rendered as it would have been sent by the telnet interface, including the prompt
+     * @throws IOException
+     *             when the request fails
+     */
+    @Override
+    public String query(String command) throws IOException {
+        if (VlcManager.priorityOf(command) != CommandPriority.QUERY) {
+            throw new IllegalArgumentException(format("only queries can be executed outside of the session but got: %s", command));
+        }
+        Future<byte[]> mutation;
+        synchronized (this) {
+            if (!canQuery()) {
+                throw new IOException("not logged in");
+            }
+            mutation = lastMutation;
+        }
+        if (mutation != null) {
+            awaitAll(Collections.singletonList(mutation));
+        }
+        return request(command);
+    }
+
+    /**
+     * Renders a response of the web interface in the form of the telnet interface.
+     *
+     * @param xml
+     *            response of the web interface
+     * @return response as it would have been sent by the telnet interface, including the prompt
+     */
+    static String render(String xml) {
+        Element root = parse(xml);
+        Element vlm = root.child("vlm") == null ? root : root.child("vlm");
+        Element error = vlm.child("error");
+        if (error != null && error.text.length() > 0) {
+            return error.text + PROMPT;
+        }
+        StringBuilder response = new StringBuilder();
+        for (Element child : vlm.children) {
+            if (child != error) {
+                render(child, 0, response);
+            }
+        }
+        if (response.length() > 0) {
+            // the last line is terminated by the prompt
+            response.setLength(response.length() - 1);
+        }
+        return response.append(PROMPT).toString();
+    }
+
+    /**
+     * @return value of the authorization header built from the credentials
+     * @throws IOException
+     *             when the credentials have been wiped meanwhile
+     */
+    private String authorization() throws IOException {
+        byte[] currentCredentials = credentials;
+        if (currentCredentials == null) {
+            throw new IOException("not logged in");
+        }
+        return "Basic " + Base64.encodeBase64StringUnChunked(currentCredentials);
+    }
+
+    private static void awaitAll(List<Future<byte[]>> futures) throws InterruptedIOException {
+        for (Future<byte[]> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException exception) {
+                // failure has been reported to the caller of the failed request, the order is kept all the same
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for preceding requests");
+            }
+        }
+    }
+
+    private byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        Arrays.fill(second, (byte) 0);
+        return result;
+    }
+
+    private Future<byte[]> completed(String response) {
+        final byte[] bytes = response == null ? null : response.getBytes(UTF_8);
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+                return bytes;
+            }
+        });
+        task.run();
+        return task;
+    }
+
+    private synchronized void dispatch(final String command) {
+        if (executor == null) {
+            return;
+        }
+        boolean query = VlcManager.priorityOf(command) == CommandPriority.QUERY;
+        final List<Future<byte[]>> predecessors = new ArrayList<Future<byte[]>>();
+        if (lastMutation != null) {
+            predecessors.add(lastMutation);
+        }
+        if (!query) {
+            predecessors.addAll(pendingQueries);
+            pendingQueries.clear();
+        }
+        Future<byte[]> response = executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                // predecessors have been submitted earlier to the same pool, so they are already running or done
+                awaitAll(predecessors);
+                return request(command).getBytes(UTF_8);
+            }
+        });
+        if (query) {
+            for (Iterator<Future<byte[]>> iterator = pendingQueries.iterator(); iterator.hasNext();) {
+                if (iterator.next().isDone()) {
+                    iterator.remove();
+                }
+            }
+            pendingQueries.add(response);
+        } else {
+            lastMutation = response;
+        }
+        responses.enqueue(response);
+    }
+
+    private static Element parse(String xml) {
+        Element root = new Element("");
+        Deque<Element> path = new ArrayDeque<Element>();
+        path.push(root);
+        Matcher tag = TAG.matcher(xml);
+        int textStart = 0;
+        while (tag.find()) {
+            String text = xml.substring(textStart, tag.start()).trim();
+            if (!text.isEmpty() && path.size() > 1) {
+                path.peek().text.append(unescapeXml(text));
+            }
+            textStart = tag.end();
+            if (!tag.group(1).isEmpty()) {
+                if (path.size() > 1) {
+                    path.pop();
+                }
+            } else {
+                Element element = new Element(tag.group(2));
+                path.peek().children.add(element);
+                if (tag.group(3).isEmpty()) {
+                    path.push(element);
+                }
+            }
+        }
+        return root;
+    }
+
+    private static void render(Element element, int depth, StringBuilder response) {
+        for (int i = 0; i < depth; i++) {
+            response.append(INDENTATION);
+        }
+        response.append(element.name);
+        if (element.text.length() > 0) {
+            response.append(" : ").append(element.text);
+        }
+        response.append('\n');
+        for (Element child : element.children) {
+            render(child, depth + 1, response);
+        }
+    }
+
+    private String request(String command) throws IOException {
+        String encodedCommand = URLEncoder.encode(command, UTF_8.name()).replace("+", "%20");
+        HttpURLConnection connection = (HttpURLConnection) new URL(format(COMMAND_URL_TEMPLATE, hostname, port, encodedCommand)).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setRequestProperty("Authorization", authorization());
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            InputStream errorStream = connection.getErrorStream();
+            if (errorStream != null) {
+                // error body has to be consumed for the connection to be kept alive
+                readFully(errorStream);
+            }
+            throw new IOException(format("VLC responded with HTTP status %s to command: %s", status, command));
+        }
+        String response = render(new String(readFully(connection.getInputStream()), UTF_8));
+        LOG.trace(format("executed command over HTTP: %s", command));
+        return response;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int length = inputStream.read(buffer); length >= 0; length = inputStream.read(buffer)) {
+                bytes.write(buffer, 0, length);
+            }
+            return bytes.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private synchronized void wipeCredentials() {
+        if (credentials != null) {
+            Arrays.fill(credentials, (byte) 0);
+            credentials = null;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+/**
+ * Persistent index of metadata of inputs, currently their duration, so that rundowns can be planned without playing each input in VLC. Entries are
+ * keyed by the path of an input and are only valid as long as size and modification time of the file are unchanged; a replaced file is treated as
+ * unknown. The index is an open addressing hash table in a memory-mapped file, so that a lookup is a few memory reads and entries survive restarts
+ * of the controller process without being loaded first. Durations are filled in from lengths observed in responses to <code>show</code> (see
+ * {@link VlcManager#setInputIndex(VlcInputIndex)} and {@link #observe(VlcMedia)}) and by probing unknown inputs on a dummy output (see
+ * {@link #probe(VlcManager, Collection, Duration)}).
+ *
+ * <p>
+ * Size and modification time of inputs are read from the file system of the controller process by the methods taking a {@link VlcInput}. This
+ * only detects replaced files if VLC runs on the same host or sees the same file system under the same paths. For inputs of a remote VLC, use the
+ * methods taking size and modification time explicitly, or the entries are effectively keyed by path alone (size and modification time of a path
+ * that doesn't exist locally are always 0).
+ *
+ * <p>
+ * The index is a cache: if its file is found to be incompatible, it's silently reset. When the index grows, the new table is written behind the
+ * current one and only takes over once it's complete, so that the file is never truncated while it is mapped (which fails on some platforms) and
+ * a crash while growing keeps the current entries. The space of previous tables isn't reused, so the file takes up to about twice the size of the
+ * current table.
+ *
+ * @since 1.0.0
+ */
+public class VlcInputIndex implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(VlcInputIndex.class);
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // header layout: magic, version, number of slots and offset of table (written at once, so that it always describes a complete table), count
+    private static final int MAGIC = 0x56494458;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int TABLE_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+
+    // slot layout: two hashes of path (first is 0 for empty slots), size, modification time, duration in milliseconds, time of observation
+    private static final int SLOT_SIZE = 48;
+    private static final int HASH2_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int MODIFIED_OFFSET = 24;
+    private static final int DURATION_OFFSET = 32;
+    private static final int OBSERVED_OFFSET = 40;
+
+    private static final String PROBE_MEDIA_NAME_TEMPLATE = "probe%s";
+    private static final long PROBE_POLL_MILLIS = 100;
+
+    private final File file;
+    private final RandomAccessFile indexFile;
+    private MappedByteBuffer buffer;
+    private int table;
+    private int capacity;
+    private int count;
+
+    /**
+     * Opens (or creates) an index with default capacity.
+     *
+     * @param file
+     *            file where the index is stored
+     * @throws IOException
+     *             when the index can't be read or created
+     */
+    public VlcInputIndex(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Opens (or creates) an index.
+     *
+     * @param file
+     *            file where the index is stored
+     * @param initialCapacity
+     *            number of entries to reserve space for if the index is created (the index grows when needed)
+     * @throws IOException
+     *             when the index can't be read or created
+     */
+    public VlcInputIndex(File file, int initialCapacity) throws IOException {
+        this.file = file;
+        this.indexFile = new RandomAccessFile(file, "rw");
+        if (indexFile.length() >= HEADER_SIZE && readHeader()) {
+            LOG.debug(format("opened input index %s with %s entries", file, count));
+        } else {
+            // slots are kept at most 3/4 full
+            create(Integer.highestOneBit(Math.max(initialCapacity * 4 / 3, 2) - 1) << 1);
+            LOG.debug(format("created input index %s", file));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        indexFile.close();
+        LOG.debug(format("closed input index %s", file));
+    }
+
+    /**
+     * Looks up the duration of an input. If the input is a local file, its size and modification time have to match those seen when the duration has
+     * been recorded (see class comment for inputs of a remote VLC).
+     *
+     * @param input
+     *            input to look up
+     * @return duration of input or <code>null</code> if unknown
+     */
+    public Duration getDuration(VlcInput input) {
+        File inputFile = input.getFile();
+        return getDuration(input.getPath(), inputFile.length(), inputFile.lastModified());
+    }
+
+    /**
+     * Looks up the duration of an input with given size and modification time.
+     *
+     * @param path
+     *            path of input
+     * @param size
+     *            size of input in bytes
+     * @param lastModified
+     *            modification time of input
+     * @return duration of input or <code>null</code> if unknown
+     */
+    public synchronized Duration getDuration(String path, long size, long lastModified) {
+        int slot = find(path);
+        if (slot < 0 || buffer.getLong(slot + SIZE_OFFSET) != size || buffer.getLong(slot + MODIFIED_OFFSET) != lastModified) {
+            return null;
+        }
+        return new Duration(buffer.getLong(slot + DURATION_OFFSET));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Records the lengths of the items currently played by a media.
+     *
+     * @param media
+     *            state of media as read from VLC
+     * @return number of durations recorded
+     * @throws IOException
+     *             when the index can't be grown
+     */
+    public int observe(VlcMedia media) throws IOException {
+        int recorded = 0;
+        List<VlcInput> inputs = media.getInputs();
+        for (VlcInstance instance : media.getInstances()) {
+            int index = instance.getPlayListIndex() - 1;
+            if (index >= 0 && index < inputs.size() && instance.getLength() != null && instance.getLength().getMillis() > 0) {
+                putDuration(inputs.get(index), instance.getLength());
+                recorded++;
+            }
+        }
+        return recorded;
+    }
+
+    /**
+     * Learns the duration of inputs that are not in the index yet by playing each of them on a temporary media with dummy output until VLC reports
+     * its length. This takes about one round trip per input plus the time VLC needs to open it, so it's meant to be run on a background thread.
+     *
+     * @param manager
+     *            manager used to probe inputs
+     * @param inputs
+     *            inputs to probe (inputs with known duration are skipped)
+     * @param timeout
+     *            maximum time to wait for the length of a single input
+     * @return number of durations recorded
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     * @throws IOException
+     *             when the index can't be grown
+     * @throws InterruptedException
+     *             when interrupted while waiting for VLC to open an input
+     */
+    public int probe(VlcManager manager, Collection<VlcInput> inputs, Duration timeout)
+            throws VlcConnectionException, IOException, InterruptedException {
+        String mediaName = format(PROBE_MEDIA_NAME_TEMPLATE, Long.toHexString(nanoTime()));
+        manager.createMedia(new VlcMedia(mediaName, MediaType.BROADCAST, true, new VlcOutput(new VlcModule("dummy"))));
+        int recorded = 0;
+        try {
+            for (VlcInput input : inputs) {
+                if (getDuration(input) != null) {
+                    continue;
+                }
+                manager.clearInput(mediaName);
+                manager.addInputItem(mediaName, input);
+                manager.play(mediaName);
+                long deadline = nanoTime() + MILLISECONDS.toNanos(timeout.getMillis());
+                Duration length = null;
+                while ((length == null || length.getMillis() <= 0) && nanoTime() < deadline) {
+                    MILLISECONDS.sleep(PROBE_POLL_MILLIS);
+                    length = manager.readCurrentLength(mediaName);
+                }
+                manager.stop(mediaName);
+                if (length != null && length.getMillis() > 0) {
+                    putDuration(input, length);
+                    recorded++;
+                } else {
+                    LOG.debug(format("length of input %s could not be probed", input));
+                }
+            }
+        } finally {
+            manager.deleteMedia(mediaName);
+        }
+        LOG.debug(format("probed %s inputs", recorded));
+        return recorded;
+    }
+
+    /**
+     * Records the duration of an input together with its current size and modification time as seen by the local file system (see class comment for
+     * inputs of a remote VLC).
+     *
+     * @param input
+     *            input to record duration of
+     * @param duration
+     *            duration of input
+     * @throws IOException
+     *             when the index can't be grown
+     */
+    public void putDuration(VlcInput input, Duration duration) throws IOException {
+        File inputFile = input.getFile();
+        putDuration(input.getPath(), inputFile.length(), inputFile.lastModified(), duration);
+    }
+
+    /**
+     * Records the duration of an input with given size and modification time.
+     *
+     * @param path
+     *            path of input
+     * @param size
+     *            size of input in bytes
+     * @param lastModified
+     *            modification time of input
+     * @param duration
+     *            duration of input
+     * @throws IOException
+     *             when the index can't be grown
+     */
+    public synchronized void putDuration(String path, long size, long lastModified, Duration duration) throws IOException {
+        long hash1 = hash1(path);
+        long hash2 = hash2(path);
+        int slot = find(hash1, hash2);
+        if (slot < 0) {
+            if ((count + 1) * 4L > capacity * 3L) {
+                grow();
+            }
+            slot = insert(table, capacity, hash1, hash2);
+            count++;
+            buffer.putInt(COUNT_OFFSET, count);
+        }
+        buffer.putLong(slot + SIZE_OFFSET, size);
+        buffer.putLong(slot + MODIFIED_OFFSET, lastModified);
+        buffer.putLong(slot + DURATION_OFFSET, duration.getMillis());
+        buffer.putLong(slot + OBSERVED_OFFSET, System.currentTimeMillis());
+    }
+
+    /**
+     * @return number of inputs in index
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Creates an empty index with given number of slots. Only called before anything has been mapped, since a mapped file can't be truncated on some
+     * platforms.
+     */
+    private void create(int newCapacity) throws IOException {
+        indexFile.setLength(0);
+        buffer = indexFile.getChannel().map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(COUNT_OFFSET, 0);
+        count = 0;
+        switchTable(HEADER_SIZE, newCapacity);
+    }
+
+    private int find(String path) {
+        return find(hash1(path), hash2(path));
+    }
+
+    /**
+     * @return offset of slot holding the given key or -1 if there is none
+     */
+    private int find(long hash1, long hash2) {
+        for (int index = (int) hash1 & capacity - 1;; index = index + 1 & capacity - 1) {
+            int slot = table + index * SLOT_SIZE;
+            long slotHash1 = buffer.getLong(slot);
+            if (slotHash1 == 0) {
+                return -1;
+            }
+            if (slotHash1 == hash1 && buffer.getLong(slot + HASH2_OFFSET) == hash2) {
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Doubles the number of slots by rehashing all entries into a new table behind the current one and switching to it once it's complete.
+     */
+    private void grow() throws IOException {
+        int oldCapacity = capacity;
+        int newCapacity = oldCapacity * 2;
+        long newTable = table + (long) oldCapacity * SLOT_SIZE;
+        long newLength = newTable + (long) newCapacity * SLOT_SIZE;
+        if (newLength > Integer.MAX_VALUE) {
+            throw new IOException(format("input index %s can't grow beyond %s slots", file, oldCapacity));
+        }
+        // mapping beyond the end of the file extends it, the previous mapping stays valid and is released by the garbage collector
+        buffer = indexFile.getChannel().map(MapMode.READ_WRITE, 0, newLength);
+        // the space behind the current table may hold garbage of a previous grow that has been interrupted
+        for (int offset = (int) newTable; offset < newLength; offset += 8) {
+            buffer.putLong(offset, 0);
+        }
+        for (int index = 0; index < oldCapacity; index++) {
+            int slot = table + index * SLOT_SIZE;
+            if (buffer.getLong(slot) != 0) {
+                int newSlot = insert((int) newTable, newCapacity, buffer.getLong(slot), buffer.getLong(slot + HASH2_OFFSET));
+                for (int offset = SIZE_OFFSET; offset < SLOT_SIZE; offset += 8) {
+                    buffer.putLong(newSlot + offset, buffer.getLong(slot + offset));
+                }
+            }
+        }
+        // new table has to be complete on disk before the header refers to it
+        buffer.force();
+        switchTable((int) newTable, newCapacity);
+        LOG.debug(format("grew input index %s from %s to %s slots", file, oldCapacity, capacity));
+    }
+
+    /**
+     * FNV-1a hash of path, never 0 since 0 marks empty slots.
+     */
+    private static long hash1(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Independent hash of path, so that two paths are only confused if both of their hashes collide.
+     */
+    private static long hash2(String path) {
+        long hash = 0;
+        for (byte b : path.getBytes(UTF_8)) {
+            hash = (hash + (b & 0xff)) * 0x9e3779b97f4a7c15L;
+            hash ^= hash >>> 29;
+        }
+        return hash;
+    }
+
+    /**
+     * Claims the first free slot of a table for a key that is not in the table yet.
+     *
+     * @return offset of claimed slot
+     */
+    private int insert(int tableOffset, int tableCapacity, long hash1, long hash2) {
+        for (int index = (int) hash1 & tableCapacity - 1;; index = index + 1 & tableCapacity - 1) {
+            int slot = tableOffset + index * SLOT_SIZE;
+            if (buffer.getLong(slot) == 0) {
+                // first hash is written last, since it marks the slot as used
+                buffer.putLong(slot + HASH2_OFFSET, hash2);
+                buffer.putLong(slot, hash1);
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Maps an existing index.
+     *
+     * @return <code>false</code> if the file doesn't contain a compatible index
+     */
+    private boolean readHeader() throws IOException {
+        indexFile.seek(0);
+        if (indexFile.readInt() != MAGIC || indexFile.readInt() != VERSION) {
+            return false;
+        }
+        int storedCapacity = indexFile.readInt();
+        int storedTable = indexFile.readInt();
+        long length = indexFile.length();
+        // file may be longer than the table if growing has been interrupted
+        if (Integer.bitCount(storedCapacity) != 1 || storedTable < HEADER_SIZE || storedTable + (long) storedCapacity * SLOT_SIZE > length
+                || length > Integer.MAX_VALUE) {
+            return false;
+        }
+        buffer = indexFile.getChannel().map(MapMode.READ_WRITE, 0, length);
+        table = storedTable;
+        capacity = storedCapacity;
+        count = buffer.getInt(COUNT_OFFSET);
+        return true;
+    }
+
+    /**
+     * Makes the header refer to a table with a single store, so that a crash leaves it referring either to the previous or to the new table.
+     */
+    private void switchTable(int newTable, int newCapacity) {
+        buffer.putLong(TABLE_OFFSET, (long) newCapacity << 32 | newTable);
+        table = newTable;
+        capacity = newCapacity;
+    }
+}
@@ -0,0 +1,61 @@
+package ch.wellernet.vlclib;
+
+import org.joda.time.Duration;
+
+/**
+ * State of a running instance of a media as shown by VLC.
+ *
+ * @since 1.0.0
+ */
+public class VlcInstance {
+    private final String name;
+    private final InstanceState state;
+    private final float position;
+    private final Duration time;
+    private final Duration length;
+    private final float rate;
+    private final int playListIndex;
+
+    public VlcInstance(String name, InstanceState state, float position, Duration time, Duration length, float rate, int playListIndex) {
+        this.name = name;
+        this.state = state;
+        this.position = position;
+        this.time = time;
+        this.length = length;
+        this.rate = rate;
+        this.playListIndex = playListIndex;
+    }
+
+    public Duration getLength() {
+        return length;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPlayListIndex() {
+        return playListIndex;
+    }
+
+    public float getPosition() {
+        return position;
+    }
+
+    public float getRate() {
+        return rate;
+    }
+
+    public InstanceState getState() {
+        return state;
+    }
+
+    public Duration getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "[name=" + name + ", state=" + state + ", position=" + position + ", playListIndex=" + playListIndex + "]";
+    }
+}
@@ -0,0 +1,323 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Append-only journal of mutating VLM commands sent by a {@link VlcManager}. Commands are appended to a memory-mapped file, so that an append is a
+ * plain memory copy and survives a crash of the controller process. Whenever the mapped region is full (or {@link #compact()} is called), the
+ * desired state is written to a snapshot and the journal is reset. On construction, snapshot and journal are replayed to rebuild the desired state
+ * of every media without contacting VLC.
+ *
+ * @since 1.0.0
+ */
+public class VlcJournal implements Closeable {
+
+    private static final Log LOG = LogFactory.getLog(VlcJournal.class);
+
+    public static final int DEFAULT_JOURNAL_SIZE = 4 * 1024 * 1024;
+
+    static final String JOURNAL_FILE_NAME = "vlm.journal";
+    static final String SNAPSHOT_FILE_NAME = "vlm.snapshot";
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    private final File directory;
+    private final RandomAccessFile journalFile;
+    private final MappedByteBuffer buffer;
+    private final Map<String, List<String>> desiredState;
+
+    private long generation;
+
+    /**
+     * Opens (or creates) a journal with default size in a given directory and rebuilds the desired state from its content.
+     *
+     * @param directory
+     *            directory where journal and snapshot files are stored
+     * @throws IOException
+     *             when journal or snapshot can't be read or created
+     */
+    public VlcJournal(File directory) throws IOException {
+        this(directory, DEFAULT_JOURNAL_SIZE);
+    }
+
+    /**
+     * Opens (or creates) a journal in a given directory and rebuilds the desired state from its content.
+     *
+     * @param directory
+     *            directory where journal and snapshot files are stored
+     * @param journalSize
+     *            size in bytes of the memory-mapped journal region
+     * @throws IOException
+     *             when journal or snapshot can't be read or created
+     */
+    public VlcJournal(File directory, int journalSize) throws IOException {
+        this.directory = directory;
+        this.desiredState = new LinkedHashMap<String, List<String>>();
+        Files.createDirectories(directory.toPath());
+        long snapshotGeneration = readSnapshot();
+        journalFile = new RandomAccessFile(new File(directory, JOURNAL_FILE_NAME), "rw");
+        buffer = journalFile.getChannel().map(MapMode.READ_WRITE, 0, Math.max(journalSize, HEADER_SIZE + RECORD_HEADER_SIZE));
+        generation = buffer.getLong(0);
+        if (generation > snapshotGeneration) {
+            replayJournal();
+        } else {
+            // either a new journal or one that has already been compacted into the snapshot
+            reset(snapshotGeneration + 1);
+        }
+        LOG.debug(format("opened journal in %s with %s media", directory, desiredState.size()));
+    }
+
+    /**
+     * Appends a command to the journal and applies it to the desired state. If the journal is full, it will be compacted first.
+     *
+     * @param command
+     *            mutating command as sent to VLC
+     * @throws IOException
+     *             when the command can't be written
+     */
+    public synchronized void append(String command) throws IOException {
+        byte[] bytes = command.getBytes(UTF_8);
+        if (buffer.position() + RECORD_HEADER_SIZE + bytes.length + RECORD_HEADER_SIZE > buffer.capacity()) {
+            compact();
+            if (buffer.position() + RECORD_HEADER_SIZE + bytes.length + RECORD_HEADER_SIZE > buffer.capacity()) {
+                throw new IOException(format("command of %s bytes exceeds journal size", bytes.length));
+            }
+        }
+        // terminator of the next record is written before length of current record becomes visible
+        buffer.putInt(buffer.position() + RECORD_HEADER_SIZE + bytes.length, 0);
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        buffer.put(bytes);
+        buffer.putInt(start, bytes.length);
+        apply(command);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        journalFile.close();
+        LOG.debug(format("closed journal in %s", directory));
+    }
+
+    /**
+     * Writes the current desired state to the snapshot and resets the journal.
+     *
+     * @throws IOException
+     *             when snapshot can't be written
+     */
+    public synchronized void compact() throws IOException {
+        File temporary = new File(directory, SNAPSHOT_FILE_NAME + ".tmp");
+        FileOutputStream fileOutputStream = new FileOutputStream(temporary);
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
+            output.writeLong(generation);
+            for (List<String> commands : desiredState.values()) {
+                for (String command : commands) {
+                    byte[] bytes = command.getBytes(UTF_8);
+                    output.writeInt(bytes.length);
+                    output.write(bytes);
+                }
+            }
+            output.writeInt(0);
+            output.flush();
+            fileOutputStream.getFD().sync();
+        } finally {
+            fileOutputStream.close();
+        }
+        Files.move(temporary.toPath(), new File(directory, SNAPSHOT_FILE_NAME).toPath(), ATOMIC_MOVE, REPLACE_EXISTING);
+        reset(generation + 1);
+        LOG.debug(format("compacted journal in %s into snapshot of generation %s", directory, generation - 1));
+    }
+
+    /**
+     * Forces all appended commands to be written to the storage device.
+     */
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    /**
+     * Retrieves the minimal sequence of commands that will bring a media in its desired state.
+     *
+     * @param mediaName
+     *            name of media
+     * @return commands in order in which they have to be sent or an empty list if media is not known
+     */
+    public synchronized List<String> getCommands(String mediaName) {
+        List<String> commands = desiredState.get(mediaName);
+        return commands == null ? unmodifiableList(new ArrayList<String>()) : unmodifiableList(new ArrayList<String>(commands));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return names of all media in desired state in order of their creation
+     */
+    public synchronized Set<String> getMediaNames() {
+        return unmodifiableSet(new LinkedHashSet<String>(desiredState.keySet()));
+    }
+
+    private void apply(String command) {
+        String[] tokens = command.split(" ", 4);
+        if (tokens.length < 2) {
+            return;
+        }
+        String verb = tokens[0];
+        String mediaName = tokens[1];
+        if ("new".equals(verb)) {
+            List<String> commands = new ArrayList<String>();
+            commands.add(command);
+            desiredState.put(mediaName, commands);
+            return;
+        }
+        if ("del".equals(verb)) {
+            desiredState.remove(mediaName);
+            return;
+        }
+        List<String> commands = desiredState.get(mediaName);
+        if (commands == null) {
+            return;
+        }
+        String setupPrefix = format("setup %s ", mediaName);
+        String inputPrefix = setupPrefix + "input ";
+        if ("setup".equals(verb) && tokens.length > 2 && "inputdel".equals(tokens[2])) {
+            removeAll(commands, inputPrefix);
+        } else if ("setup".equals(verb) && tokens.length > 3 && "inputdeln".equals(tokens[2])) {
+            removeInput(commands, inputPrefix, Integer.parseInt(tokens[3].trim()));
+        } else if ("setup".equals(verb) && tokens.length > 2 && "output".equals(tokens[2])) {
+            replace(commands, command, setupPrefix + "output ");
+        } else if ("setup".equals(verb) && tokens.length == 3 && ("enabled".equals(tokens[2]) || "disabled".equals(tokens[2]))) {
+            replace(commands, command, setupPrefix + "enabled", setupPrefix + "disabled");
+        } else if ("control".equals(verb)) {
+            // only whether media should be playing or not is part of desired state, positions are volatile
+            String controlPrefix = format("control %s play", mediaName);
+            if (command.startsWith(controlPrefix)) {
+                removeAll(commands, controlPrefix);
+                commands.add(command);
+            } else if (command.startsWith(format("control %s stop", mediaName))) {
+                removeAll(commands, controlPrefix);
+            }
+        } else if ("loop".equals(verb) || "unloop".equals(verb)) {
+            replace(commands, command, format("loop %s", mediaName), format("unloop %s", mediaName));
+        } else {
+            commands.add(command);
+        }
+    }
+
+    private long readSnapshot() throws IOException {
+        File snapshot = new File(directory, SNAPSHOT_FILE_NAME);
+        if (!snapshot.exists()) {
+            return 0;
+        }
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+        try {
+            long snapshotGeneration = input.readLong();
+            for (int length = input.readInt(); length > 0; length = input.readInt()) {
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                apply(new String(bytes, UTF_8));
+            }
+            return snapshotGeneration;
+        } catch (EOFException exception) {
+            throw new IOException(format("snapshot %s is truncated", snapshot), exception);
+        } finally {
+            input.close();
+        }
+    }
+
+    private void removeAll(List<String> commands, String prefix) {
+        for (Iterator<String> iterator = commands.iterator(); iterator.hasNext();) {
+            if (iterator.next().startsWith(prefix)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeInput(List<String> commands, String inputPrefix, int playListIndex) {
+        int index = 0;
+        for (Iterator<String> iterator = commands.iterator(); iterator.hasNext();) {
+            if (iterator.next().startsWith(inputPrefix) && ++index == playListIndex) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    private void replace(List<String> commands, String command, String... prefixes) {
+        int position = -1;
+        for (int i = commands.size() - 1; i >= 0; i--) {
+            for (String prefix : prefixes) {
+                if (commands.get(i).startsWith(prefix)) {
+                    commands.remove(i);
+                    position = i;
+                    break;
+                }
+            }
+        }
+        // keep position of first occurrence, so that order of commands remains valid when they are reapplied
+        if (position < 0) {
+            commands.add(command);
+        } else {
+            commands.add(position, command);
+        }
+    }
+
+    private void replayJournal() {
+        int position = HEADER_SIZE;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            buffer.position(position + RECORD_HEADER_SIZE);
+            buffer.get(bytes);
+            apply(new String(bytes, UTF_8));
+            position += RECORD_HEADER_SIZE + length;
+        }
+        buffer.position(position);
+    }
+
+    private void reset(long newGeneration) {
+        int used = Math.max(buffer.position(), HEADER_SIZE + RECORD_HEADER_SIZE);
+        for (int i = HEADER_SIZE; i < used && i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+        buffer.putLong(0, newGeneration);
+        buffer.position(HEADER_SIZE);
+        generation = newGeneration;
+    }
+}
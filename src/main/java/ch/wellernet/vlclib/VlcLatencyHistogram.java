@@ -0,0 +1,110 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.Long.numberOfLeadingZeros;
+import static java.lang.String.format;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds. Values are counted in buckets whose width grows with the magnitude of the value (16 buckets per
+ * power of two), so that percentiles are reported with a relative error below 7% using a few kilobytes of memory regardless of the number of
+ * recorded values.
+ *
+ * @since 1.0.0
+ */
+public class VlcLatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong totalCount;
+    private final AtomicLong totalSum;
+    private final AtomicLong max;
+
+    public VlcLatencyHistogram() {
+        counts = new AtomicLongArray(BUCKET_COUNT);
+        totalCount = new AtomicLong();
+        totalSum = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long count = totalCount.get();
+        return count == 0 ? 0 : (double) totalSum.get() / count;
+    }
+
+    /**
+     * Retrieves the value below which a given percentage of recorded values fall.
+     *
+     * @param percentile
+     *            percentile between 0 and 100
+     * @return upper bound of the bucket containing the percentile in nanoseconds or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts.get(index);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(index), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos
+     *            latency in nanoseconds (negative values are recorded as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.incrementAndGet();
+        totalSum.addAndGet(value);
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // retry until maximum is up to date
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format("[count=%s, mean=%.0f, p50=%s, p99=%s, p999=%s, max=%s]", getCount(), getMean(), getValueAtPercentile(50),
+                getValueAtPercentile(99), getValueAtPercentile(99.9), getMax());
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> exponent - SUB_BUCKET_BITS);
+        return (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + mantissa;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
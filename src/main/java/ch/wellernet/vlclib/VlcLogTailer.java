@@ -0,0 +1,378 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.regex.Pattern.compile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+/**
+ * Detects advances in the play list, end of stream and errors of media by following the log file VLC writes with its logger interface (enabled with
+ * <code>--extraintf logger --logfile &lt;file&gt; --logmode text --verbose 2</code>) instead of polling with <code>show</code>. The file is read
+ * incrementally, so that events are emitted within the poll interval of the file (a few milliseconds) without any round trip to VLC. Truncation
+ * and rotation of the file are detected and followed.
+ *
+ * <p>
+ * VLC doesn't log the name of the VLM media, so lines are correlated to media by the inputs of the watched media: an input that has been opened
+ * identifies the media and its play list index, an end of stream or error without an input is attributed to the media that has opened an input
+ * last. This is exact as long as a VLC instance plays one media at a time.
+ *
+ * @since 1.0.0
+ */
+public class VlcLogTailer {
+
+    public static class Builder implements org.apache.commons.lang3.builder.Builder<VlcLogTailer> {
+
+        private File logFile;
+        private Duration pollInterval = Duration.millis(10);
+        private boolean fromStart;
+
+        @Override
+        public VlcLogTailer build() {
+            return new VlcLogTailer(this);
+        }
+
+        /**
+         * @param fromStart
+         *            whether lines already in the file should be processed (by default, only lines appended after start are)
+         */
+        public Builder fromStart(boolean fromStart) {
+            this.fromStart = fromStart;
+            return this;
+        }
+
+        public Builder logFile(File logFile) {
+            this.logFile = logFile;
+            return this;
+        }
+
+        public Builder pollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+            return this;
+        }
+    }
+
+    /**
+     * Receives events of watched media.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the current item of a media has reached its end.
+         *
+         * @param mediaName
+         *            name of media
+         * @param playListIndex
+         *            index (starting with 1 like {@link VlcManager#readPlayListIndex(String)}) of item that has ended
+         */
+        void endReached(String mediaName, int playListIndex);
+
+        /**
+         * Called when VLC has logged an error for a media.
+         *
+         * @param mediaName
+         *            name of media
+         * @param playListIndex
+         *            index (starting with 1) of item that failed or 0 if unknown
+         * @param message
+         *            message logged by VLC
+         */
+        void errorOccurred(String mediaName, int playListIndex, String message);
+
+        /**
+         * Called when a media has opened an input, that is when it has started playing or advanced in its play list.
+         *
+         * @param mediaName
+         *            name of media
+         * @param playListIndex
+         *            index (starting with 1) of item that has been opened
+         * @param input
+         *            input that has been opened
+         */
+        void inputChanged(String mediaName, int playListIndex, VlcInput input);
+    }
+
+    private static class Watch {
+        private final String mediaName;
+        private final List<VlcInput> inputs;
+        private final List<String> paths;
+        private final Listener listener;
+        private int playListIndex;
+
+        private Watch(String mediaName, List<VlcInput> inputs, Listener listener) {
+            this.mediaName = mediaName;
+            this.inputs = new ArrayList<VlcInput>(inputs);
+            this.paths = new ArrayList<String>(inputs.size());
+            for (VlcInput input : inputs) {
+                paths.add(normalize(input.getPath()));
+            }
+            this.listener = listener;
+        }
+
+        private int indexOf(String path) {
+            // prefer the next item if the same input occurs several times in the play list
+            int next = paths.size() == 0 ? 0 : playListIndex % paths.size();
+            if (next < paths.size() && paths.get(next).equals(path)) {
+                return next + 1;
+            }
+            return paths.indexOf(path) + 1;
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcLogTailer.class);
+
+    private static final Pattern OPENED = compile("`([^']+)' successfully opened");
+    private static final Pattern END_REACHED = compile("\\bEOF reached\\b");
+    private static final Pattern ERROR = compile("\\berror: (.*)$");
+    private static final Pattern ERROR_INPUT = compile("`([^']+)'|cannot open file (.+?) \\(");
+
+    private final Path logFile;
+    private final ConcurrentMap<String, Watch> watches;
+    private final ScheduledExecutorService executor;
+    private final ByteBuffer buffer;
+    private final ByteArrayOutputStream line;
+    private FileChannel channel;
+    private Object fileKey;
+    private long position;
+    private Watch lastOpened;
+
+    private VlcLogTailer(Builder builder) {
+        logFile = builder.logFile.toPath();
+        position = builder.fromStart ? 0 : builder.logFile.length();
+        watches = new ConcurrentHashMap<String, Watch>();
+        buffer = ByteBuffer.allocate(8192);
+        line = new ByteArrayOutputStream(256);
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "vlc-log-tailer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                tail();
+            }
+        }, 0, builder.pollInterval.getMillis(), MILLISECONDS);
+        LOG.debug(format("started tailing %s", logFile));
+    }
+
+    /**
+     * Stops tailing the log file and releases the thread of this instance.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        close();
+        LOG.debug(format("stopped tailing %s", logFile));
+    }
+
+    /**
+     * Stops emitting events of a media.
+     *
+     * @param mediaName
+     *            name of media
+     */
+    public void unwatch(String mediaName) {
+        watches.remove(mediaName);
+    }
+
+    /**
+     * Starts emitting events of a media with given inputs. If the media is already watched, its inputs and listener will be replaced.
+     *
+     * @param mediaName
+     *            name of media
+     * @param inputs
+     *            play list of media used to correlate log lines to the media
+     * @param listener
+     *            listener to notify
+     */
+    public void watch(String mediaName, List<VlcInput> inputs, Listener listener) {
+        watches.put(mediaName, new Watch(mediaName, inputs, listener));
+    }
+
+    /**
+     * Starts emitting events of a media reading its inputs from VLC once. If the media is already watched, its inputs and listener will be replaced.
+     *
+     * @param manager
+     *            manager used to read the inputs of the media
+     * @param mediaName
+     *            name of media
+     * @param listener
+     *            listener to notify
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public void watch(VlcManager manager, String mediaName, Listener listener) throws VlcConnectionException {
+        VlcMedia media = manager.readMedia(mediaName);
+        watch(mediaName, media == null ? Collections.<VlcInput> emptyList() : media.getInputs(), listener);
+    }
+
+    /**
+     * Correlates a line of the log to a watched media and notifies its listener.
+     *
+     * @param text
+     *            line without line terminator
+     */
+    void process(String text) {
+        Matcher matcher = OPENED.matcher(text);
+        if (matcher.find()) {
+            String path = normalize(matcher.group(1));
+            for (Watch watch : watches.values()) {
+                int playListIndex = watch.indexOf(path);
+                if (playListIndex > 0) {
+                    watch.playListIndex = playListIndex;
+                    lastOpened = watch;
+                    watch.listener.inputChanged(watch.mediaName, playListIndex, watch.inputs.get(playListIndex - 1));
+                    return;
+                }
+            }
+            return;
+        }
+        Watch current = lastOpened != null && watches.get(lastOpened.mediaName) == lastOpened ? lastOpened : null;
+        if (END_REACHED.matcher(text).find()) {
+            if (current != null) {
+                current.listener.endReached(current.mediaName, current.playListIndex);
+            }
+            return;
+        }
+        matcher = ERROR.matcher(text);
+        if (matcher.find()) {
+            String message = matcher.group(1);
+            Matcher inputMatcher = ERROR_INPUT.matcher(message);
+            if (inputMatcher.find()) {
+                String path = normalize(inputMatcher.group(1) != null ? inputMatcher.group(1) : inputMatcher.group(2));
+                for (Watch watch : watches.values()) {
+                    int playListIndex = watch.indexOf(path);
+                    if (playListIndex > 0) {
+                        watch.listener.errorOccurred(watch.mediaName, playListIndex, message);
+                        return;
+                    }
+                }
+            }
+            if (current != null) {
+                current.listener.errorOccurred(current.mediaName, current.playListIndex, message);
+            }
+        }
+    }
+
+    private void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException exception) {
+                LOG.warn(format("caught exception while closing %s", logFile), exception);
+            }
+            channel = null;
+        }
+    }
+
+    private void drain() throws IOException {
+        while (true) {
+            buffer.clear();
+            int count = channel.read(buffer, position);
+            if (count <= 0) {
+                return;
+            }
+            position += count;
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    int length = line.size();
+                    byte[] bytes = line.toByteArray();
+                    line.reset();
+                    process(new String(bytes, 0, length > 0 && bytes[length - 1] == '\r' ? length - 1 : length, UTF_8));
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+    }
+
+    private static String normalize(String path) {
+        if (path.startsWith("file:")) {
+            try {
+                return new URI(path).getPath();
+            } catch (URISyntaxException exception) {
+                return path.substring("file://".length());
+            }
+        }
+        return path;
+    }
+
+    private void open(Object key) throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.READ);
+        fileKey = key;
+    }
+
+    private void tail() {
+        try {
+            Object key;
+            try {
+                key = Files.readAttributes(logFile, BasicFileAttributes.class).fileKey();
+            } catch (NoSuchFileException exception) {
+                // not created yet or rotated away, keep reading what has been opened
+                key = fileKey;
+            }
+            if (channel == null) {
+                if (!Files.exists(logFile)) {
+                    return;
+                }
+                open(key);
+            }
+            if (channel.size() < position) {
+                LOG.debug(format("%s has been truncated, reading from start", logFile));
+                position = 0;
+                line.reset();
+            }
+            drain();
+            if (key != null && !key.equals(fileKey)) {
+                LOG.debug(format("%s has been rotated, reading new file", logFile));
+                close();
+                position = 0;
+                line.reset();
+                open(key);
+                drain();
+            }
+        } catch (IOException exception) {
+            LOG.warn(format("caught exception while tailing %s", logFile), exception);
+            close();
+        } catch (RuntimeException exception) {
+            LOG.warn(format("caught exception while processing %s", logFile), exception);
+        }
+    }
+}
@@ -1,25 +1,50 @@
 package ch.wellernet.vlclib;
 
+import static ch.wellernet.vlclib.VlcResponseBuffer.NORMAL_PROMPT_SUFFIX;
+import static ch.wellernet.vlclib.VlcResponseBuffer.PASSWORD_PROMPT_SUFFIX;
 import static java.lang.Float.parseFloat;
 import static java.lang.Integer.parseInt;
 import static java.lang.Long.parseLong;
 import static java.lang.String.format;
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.regex.Pattern.DOTALL;
 import static java.util.regex.Pattern.MULTILINE;
 import static java.util.regex.Pattern.compile;
+import static org.apache.commons.lang3.StringUtils.join;
 
+import ch.wellernet.vlclib.VlcTraceRecorder.Stage;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.commons.net.telnet.TelnetClient;
 import org.joda.time.Duration;
 
 /**
@@ -30,6 +55,19 @@ import org.joda.time.Duration;
  */
 public class VlcManager {
 
+    /**
+     * State of a media attribute as last set or seen by this instance.
+     */
+    private static class KnownState {
+        private final boolean value;
+        private final long knownAt;
+
+        private KnownState(boolean value) {
+            this.value = value;
+            this.knownAt = nanoTime();
+        }
+    }
+
     private static final Log LOG = LogFactory.getLog(VlcManager.class);
 
     public static final String DEFAULT_HOSTANAME = "localhost";
@@ -51,6 +89,7 @@ public class VlcManager {
     private static final String COMMAND_SETUP_INPUTDELN = "setup %s inputdeln %d";
     private static final String COMMAND_SETUP_OUTPUT = "setup %s output %s";
     private static final String COMMAND_SETUP_OPTION = "setup %s option %s";
+    private static final String COMMAND_SETUP_ENABLED = "setup %s %s";
     private static final String COMMAND_DEL = "del %s";
     private static final String COMMAND_PLAY = "control %s play";
     private static final String COMMAND_PLAY_ITEM = COMMAND_PLAY + " %s";
@@ -58,8 +97,19 @@ public class VlcManager {
     private static final String COMMAND_SEEK_DURATION = "control %s seek %dms";
     private static final String COMMAND_STOP = "control %s stop";
     private static final String COMMAND_SHOW = "show %s";
+    private static final String COMMAND_SHOW_ALL = "show";
     private static final String COMMAND_LOOP = "loop %s";
     private static final String COMMAND_UNLOOP = "unloop %s";
+    static final String COMMAND_PING = "show schedule";
+
+    // number of commands synchronizing a play list sent with a single write, so that control commands can get the session in between
+    static final int SYNC_PLAYLIST_CHUNK_SIZE = 64;
+
+    private static final String KNOWN_LOOP = "loop";
+    private static final String KNOWN_PLAYING = "playing";
+    private static final String KNOWN_ENABLED = "enabled";
+    // a paused media is neither playing nor stopped, so whether it is stopped is known separately
+    private static final String KNOWN_STOPPED = "stopped";
 
     // @formatter:off
     private static final Pattern COMMAND_SHOW_INPUTS = compile(""
@@ -69,7 +119,7 @@ public class VlcManager {
             + "((            \\d+ : .*?\n)*)"
             + ".*?)|(.*?)", DOTALL);
     // @formatter:on
-    private static final Pattern COMMAND_SHOW_INPUTS_SINGLE_INPUT = compile("^ {12}\\d : (.*)$", MULTILINE);
+    private static final Pattern COMMAND_SHOW_INPUTS_SINGLE_INPUT = compile("^ {12}\\d+ : (.*)$", MULTILINE);
     private static final int COMMAND_SHOW_INPUTS_RESULT_START_GROUP = 2;
 
     // @formatter:off
@@ -107,8 +157,24 @@ public class VlcManager {
     private final String hostname;
     private final int port;
 
-    private TelnetClient telnetClient;
-    private String currentMessage;
+    private VlcTransport transport;
+    private final VlcResponseBuffer responseBuffer;
+    private VlcJournal journal;
+    private char[] lazyPassword;
+    private final ConcurrentMap<String, FutureTask<String>> pendingShows;
+    // media with a scrubbing seek in flight, mapped to the seek command that replaced all others requested meanwhile (null if there is none)
+    private final Map<String, String> pendingSeeks;
+    private VlcCircuitBreaker circuitBreaker;
+    private VlcCommandQueue commandQueue;
+    private VlcTraceRecorder traceRecorder;
+    private VlcInputIndex inputIndex;
+    private final VlcMetrics metrics;
+    // sequence of trace record of the command currently holding the session, only accessed by the thread holding it
+    private long traceSequence = -1;
+    private volatile long lastResponseAt;
+    // state of media attributes keyed by media name and attribute, so that absolute setters can skip commands that wouldn't change anything
+    private final ConcurrentMap<String, KnownState> knownStates;
+    private volatile long knownStateTtlNanos;
 
     /**
      * Prepares a new instance for default host name and port (localhost:4212) but does not immediately connect.
@@ -126,10 +192,31 @@ public class VlcManager {
      *            port on which VLC is listening for telnet connection
      */
     public VlcManager(String hostname, int port) {
+        this(hostname, port, new VlcTelnetTransport());
+    }
+
+    /**
+     * Prepares a new instance using a given transport but does not immediately connect.
+     *
+     * @param hostname
+     *            host name to where VLC is running
+     * @param port
+     *            port on which VLC is listening for connections of given transport
+     * @param transport
+     *            transport used to talk to VLC, for example {@link VlcTelnetTransport} or {@link VlcHttpTransport}
+     */
+    public VlcManager(String hostname, int port, VlcTransport transport) {
         this.hostname = hostname;
         this.port = port;
-        this.telnetClient = new TelnetClient();
-        this.currentMessage = "";
+        this.transport = transport;
+        this.responseBuffer = new VlcResponseBuffer();
+        this.commandQueue = new VlcCommandQueue.Builder().build();
+        this.pendingShows = new ConcurrentHashMap<String, FutureTask<String>>();
+        this.pendingSeeks = new HashMap<String, String>();
+        this.lastResponseAt = nanoTime();
+        this.knownStates = new ConcurrentHashMap<String, KnownState>();
+        this.metrics = new VlcMetrics();
+        this.knownStateTtlNanos = NANOSECONDS.convert(30, SECONDS);
         LOG.debug(format("created new instance for %s:%s", hostname, port));
     }
 
@@ -144,8 +231,7 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void addInputItem(String mediaName, VlcInput input) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SETUP_INPUT, mediaName, input));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_SETUP_INPUT, mediaName, input));
         LOG.debug(format("added input %s to media %s", input, mediaName));
     }
 
@@ -158,13 +244,12 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void clearInput(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SETUP_INPUTDEL, mediaName, "all"));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_SETUP_INPUTDEL, mediaName, "all"));
         LOG.debug(format("cleared input for media %s", mediaName));
     }
 
     /**
-     * Opens a telnet connection to VLC and logs in.
+     * Opens a connection to VLC using the transport of this instance (telnet by default) and logs in.
      *
      * @param password
      *            password for telnet connection (will be wiped after login for security reasons)
@@ -172,13 +257,13 @@ public class VlcManager {
      *             when connection can't be established (see cause for detailed reason)
      */
     public void connect(char[] password) throws VlcConnectionException {
-        currentMessage = "";
-        telnetClient.setReaderThread(true);
+        responseBuffer.clear();
         try {
-            telnetClient.connect(hostname, port);
+            transport.connect(hostname, port);
             waitForAndClear(PASSWORD_PROMPT);
             sendPassword(password);
             waitForAndClear(ANY_PROMPT);
+            metrics.onConnected(true);
             LOG.debug(format("connected successfully to %s:%s", hostname, port));
         } catch (IOException exception) {
             LOG.warn(format("caught exception while connecting to %s:%s", hostname, port), exception);
@@ -186,6 +271,21 @@ public class VlcManager {
         }
     }
 
+    /**
+     * Prepares this instance to open the telnet connection to VLC on first use instead of immediately. This allows to set up many instances without
+     * paying for TCP connect and login of each of them upfront.
+     *
+     * @param password
+     *            password for telnet connection (will be kept until login has succeeded on first use or until {@link #disconnect()} and wiped
+     *            then for security reasons)
+     */
+    public void connectLazily(char[] password) {
+        synchronized (this) {
+            lazyPassword = password;
+        }
+        LOG.debug(format("will connect to %s:%s on first use", hostname, port));
+    }
+
     /**
      * Creates a new media in VLC. If a media with this name already exists, it will be replaced by a new one.
      *
@@ -200,13 +300,15 @@ public class VlcManager {
      */
     public void createMedia(VlcMedia media) throws VlcConnectionException {
         deleteMedia(media.getName());
-        sendCommand(format(COMMANDE_NEW, media.getName(), media.getType().value(), media.isEnabed() ? ENABLED : DISABLED));
-        waitForAndClear(NORMAL_PROMPT);
-        sendCommand(format(COMMAND_SETUP_OUTPUT, media.getName(), media.getOutput()));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMANDE_NEW, media.getName(), media.getType().value(), media.isEnabed() ? ENABLED : DISABLED));
+        executeMutation(format(COMMAND_SETUP_OUTPUT, media.getName(), media.getOutput()));
         for (VlcOption option : media.getOptions()) {
             setupOption(media.getName(), option);
         }
+        remember(media.getName(), KNOWN_ENABLED, media.isEnabed());
+        remember(media.getName(), KNOWN_PLAYING, false);
+        remember(media.getName(), KNOWN_STOPPED, true);
+        remember(media.getName(), KNOWN_LOOP, false);
         LOG.debug(format("created new media %s", media));
     }
 
@@ -219,20 +321,27 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void deleteMedia(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_DEL, mediaName));
-        waitForAndClear(NORMAL_PROMPT);
+        forget(mediaName);
+        executeMutation(format(COMMAND_DEL, mediaName));
         LOG.debug(format("deleted media %s", mediaName));
     }
 
     /**
-     * Closes the telnet connection to VLC.
+     * Closes the connection to VLC.
      *
      * @throws VlcConnectionException
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void disconnect() throws VlcConnectionException {
+        metrics.onConnected(false);
+        synchronized (this) {
+            if (lazyPassword != null) {
+                Arrays.fill(lazyPassword, '\0');
+                lazyPassword = null;
+            }
+        }
         try {
-            telnetClient.disconnect();
+            transport.disconnect();
             LOG.debug(format("successfully disconnected from %s:%s", hostname, port));
         } catch (IOException exception) {
             LOG.warn(format("caught exception while disconnecting form %s:s)", hostname, port), exception);
@@ -240,14 +349,106 @@ public class VlcManager {
         }
     }
 
+    /**
+     * Brings a media in playing state unless it is known to be playing already, in which case no command is sent at all.
+     *
+     * @param mediaName
+     *            name of media which should be playing
+     * @return <code>true</code> if a command has been sent, <code>false</code> if the media was known to be playing
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public boolean ensurePlaying(String mediaName) throws VlcConnectionException {
+        boolean sent = setKnownState(mediaName, KNOWN_PLAYING, true, format(COMMAND_PLAY, mediaName));
+        if (sent) {
+            remember(mediaName, KNOWN_STOPPED, false);
+        }
+        return sent;
+    }
+
+    /**
+     * Brings a media in stopped state unless it is known to be stopped already, in which case no command is sent at all. A paused media is not
+     * considered to be stopped.
+     *
+     * @param mediaName
+     *            name of media which should be stopped
+     * @return <code>true</code> if a command has been sent, <code>false</code> if the media was known to be stopped
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public boolean ensureStopped(String mediaName) throws VlcConnectionException {
+        boolean sent = setKnownState(mediaName, KNOWN_STOPPED, true, format(COMMAND_STOP, mediaName));
+        if (sent) {
+            remember(mediaName, KNOWN_PLAYING, false);
+        }
+        return sent;
+    }
+
+    public VlcCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public VlcCommandQueue getCommandQueue() {
+        return commandQueue;
+    }
+
     public String getHostname() {
         return hostname;
     }
 
+    public VlcInputIndex getInputIndex() {
+        return inputIndex;
+    }
+
+    public VlcJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * @return how long the state of a media set or seen by this instance is trusted by the absolute setters
+     */
+    public Duration getKnownStateTtl() {
+        return new Duration(NANOSECONDS.toMillis(knownStateTtlNanos));
+    }
+
+    public VlcMetrics getMetrics() {
+        return metrics;
+    }
+
     public int getPort() {
         return port;
     }
 
+    public VlcTraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    public VlcTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return <code>true</code> if {@link #connectLazily(char[])} has been called and the connection will be opened on first use
+     */
+    public synchronized boolean isConnectingLazily() {
+        return lazyPassword != null;
+    }
+
+    /**
+     * Sends a cheap command to VLC and measures the time until the response has been received.
+     *
+     * @return round trip time
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public Duration ping() throws VlcConnectionException {
+        long start = nanoTime();
+        execute(COMMAND_PING, NORMAL_PROMPT);
+        Duration roundTrip = new Duration(NANOSECONDS.toMillis(nanoTime() - start));
+        LOG.debug(format("ping to %s:%s took %s ms", hostname, port, roundTrip.getMillis()));
+        return roundTrip;
+    }
+
     /**
      * Brings a media in playing state. If the media is already playing command will have no effect.
      *
@@ -257,8 +458,9 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void play(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_PLAY, mediaName));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_PLAY, mediaName));
+        remember(mediaName, KNOWN_PLAYING, true);
+        remember(mediaName, KNOWN_STOPPED, false);
         LOG.debug(format("media %s is now playing", mediaName));
     }
 
@@ -273,11 +475,81 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void play(String mediaName, int playListIndex) throws VlcConnectionException {
-        sendCommand(format(COMMAND_PLAY_ITEM, mediaName, playListIndex));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_PLAY_ITEM, mediaName, playListIndex));
+        remember(mediaName, KNOWN_PLAYING, true);
+        remember(mediaName, KNOWN_STOPPED, false);
         LOG.debug(format("media %s is now playing item %s", mediaName, playListIndex));
     }
 
+    /**
+     * Brings several media in playing state with minimal skew between them. All <code>control play</code> commands are written to VLC at once and
+     * only then their responses are collected, so that media don't start one round trip after the other but as fast as VLC processes the commands.
+     *
+     * @param mediaNames
+     *            names of media which should start playing
+     * @return skew between the start of the first and the last media, measured as the time between the arrival of their responses
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public Duration playAll(Collection<String> mediaNames) throws VlcConnectionException {
+        List<String> commands = new ArrayList<String>(mediaNames.size());
+        for (String mediaName : mediaNames) {
+            commands.add(format(COMMAND_PLAY, mediaName));
+        }
+        Duration skew = skewOf(executeMutations(commands), 1);
+        for (String mediaName : mediaNames) {
+            remember(mediaName, KNOWN_PLAYING, true);
+            remember(mediaName, KNOWN_STOPPED, false);
+        }
+        LOG.debug(format("%s media are now playing with a skew of %s ms", mediaNames.size(), skew.getMillis()));
+        return skew;
+    }
+
+    /**
+     * Brings several media in playing state at a given position with minimal skew between them. Works like {@link #playAll(Collection)}, but each
+     * <code>control play</code> command is immediately followed by a <code>control seek</code> command for the same media.
+     *
+     * @param mediaNames
+     *            names of media which should start playing
+     * @param position
+     *            position from the beginning of the current item at which media should start playing
+     * @return skew between the start of the first and the last media, measured as the time between the arrival of their responses
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public Duration playAll(Collection<String> mediaNames, Duration position) throws VlcConnectionException {
+        List<String> commands = new ArrayList<String>(mediaNames.size() * 2);
+        for (String mediaName : mediaNames) {
+            commands.add(format(COMMAND_PLAY, mediaName));
+            commands.add(format(COMMAND_SEEK_DURATION, mediaName, position.getMillis()));
+        }
+        Duration skew = skewOf(executeMutations(commands), 2);
+        for (String mediaName : mediaNames) {
+            remember(mediaName, KNOWN_PLAYING, true);
+            remember(mediaName, KNOWN_STOPPED, false);
+        }
+        LOG.debug(format("%s media are now playing at %s ms with a skew of %s ms", mediaNames.size(), position.getMillis(), skew.getMillis()));
+        return skew;
+    }
+
+    /**
+     * Retrieves all media configured in VLC including their inputs, output, options and the state of their instances with a single round trip. This
+     * allows a controller to warm up its view of a running VLC, for example after it has been restarted.
+     *
+     * @return all media currently configured in VLC
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public List<VlcMedia> readAllMedia() throws VlcConnectionException {
+        List<VlcMedia> media = VlcShowParser.parseMedia(execute(COMMAND_SHOW_ALL, NORMAL_PROMPT).group());
+        for (VlcMedia singleMedia : media) {
+            remember(singleMedia);
+            index(singleMedia);
+        }
+        LOG.debug(format("read %s media from %s:%s", media.size(), hostname, port));
+        return unmodifiableList(media);
+    }
+
     /**
      * Retrieves the length of currently played item of a given media. If media is currently in stopped state or length can't be read, a
      * <code>null</code> will be returned.
@@ -289,9 +561,14 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public Duration readCurrentLength(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SHOW, mediaName));
-        Matcher matcher = waitForAndClear(COMMAND_SHOW_CURRENT_LENGTH);
-        String result = matcher.group(COMMAND_SHOW_CURRENT_LENGTH_RESULT_GROUP);
+        String response = show(mediaName);
+        String result = find(COMMAND_SHOW_CURRENT_LENGTH.matcher(response), COMMAND_SHOW_CURRENT_LENGTH_RESULT_GROUP);
+        if (result != null && inputIndex != null) {
+            VlcMedia media = VlcShowParser.parseSingleMedia(response);
+            if (media != null) {
+                index(media);
+            }
+        }
         LOG.debug(format("length of currently played item on media %s is %s", mediaName, result));
         return result == null ? null : new Duration(parseLong(result));
     }
@@ -307,9 +584,7 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public float readCurrentPosition(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SHOW, mediaName));
-        Matcher matcher = waitForAndClear(COMMAND_SHOW_CURRENT_POSITION);
-        String result = matcher.group(COMMAND_SHOW_CURRENT_POSITION_RESULT_GROUP);
+        String result = find(COMMAND_SHOW_CURRENT_POSITION.matcher(show(mediaName)), COMMAND_SHOW_CURRENT_POSITION_RESULT_GROUP);
         LOG.debug(format("position of currently played item on media %s is %s ms", mediaName, result));
         return result == null ? -1 : parseFloat(result);
     }
@@ -325,13 +600,33 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public boolean readLoopState(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SHOW, mediaName));
-        Matcher matcher = waitForAndClear(COMMAND_SHOW_LOOP);
-        String result = matcher.group(COMMAND_SHOW_LOOP_RESULT_START_GROUP);
+        String result = find(COMMAND_SHOW_LOOP.matcher(show(mediaName)), COMMAND_SHOW_LOOP_RESULT_START_GROUP);
         LOG.debug(format("loop state of media %s is %s", mediaName, result));
+        if (result != null) {
+            remember(mediaName, KNOWN_LOOP, "yes".equals(result));
+        }
         return "yes".equals(result) ? true : false;
     }
 
+    /**
+     * Retrieves the complete state of a given media including its inputs, output, options and the state of its instances with a single round trip.
+     *
+     * @param mediaName
+     *            name of media to retrieve
+     * @return the media or <code>null</code> if it can't be read
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public VlcMedia readMedia(String mediaName) throws VlcConnectionException {
+        VlcMedia media = VlcShowParser.parseSingleMedia(show(mediaName));
+        if (media != null) {
+            remember(media);
+            index(media);
+        }
+        LOG.debug(format("read media %s", media));
+        return media;
+    }
+
     /**
      * Retrieves the index of currently played item of a given media. If media is currently in stopped state or index can't be read, a negative value
      * will be returned.
@@ -343,9 +638,7 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public int readPlayListIndex(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SHOW, mediaName));
-        Matcher matcher = waitForAndClear(COMMAND_SHOW_PLAY_LIST_ITEM);
-        String result = matcher.group(COMMAND_SHOW_PLAY_LIST_ITEM_RESULT_GROUP);
+        String result = find(COMMAND_SHOW_PLAY_LIST_ITEM.matcher(show(mediaName)), COMMAND_SHOW_PLAY_LIST_ITEM_RESULT_GROUP);
         LOG.debug(format("media %s is currently playing item at index %s", mediaName, result));
         return result == null ? -1 : parseInt(result);
     }
@@ -360,9 +653,7 @@ public class VlcManager {
      * @throws VlcConnectionException
      */
     public List<VlcInput> readPlayListItems(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SHOW, mediaName));
-        Matcher matcher = waitForAndClear(COMMAND_SHOW_INPUTS);
-        String result = matcher.group(COMMAND_SHOW_INPUTS_RESULT_START_GROUP);
+        String result = find(COMMAND_SHOW_INPUTS.matcher(show(mediaName)), COMMAND_SHOW_INPUTS_RESULT_START_GROUP);
         List<VlcInput> resultList = new ArrayList<VlcInput>();
         if (result != null) {
             Matcher inputMatcher = COMMAND_SHOW_INPUTS_SINGLE_INPUT.matcher(result);
@@ -374,6 +665,26 @@ public class VlcManager {
         return unmodifiableList(resultList);
     }
 
+    /**
+     * Brings all media recorded in the journal in their desired state. Each media is deleted and recreated, so this is meant to be used to restore a
+     * VLC after a restart. Commands sent by this method will not be appended to the journal again.
+     *
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public void reapplyJournal() throws VlcConnectionException {
+        if (journal == null) {
+            return;
+        }
+        for (String mediaName : journal.getMediaNames()) {
+            execute(format(COMMAND_DEL, mediaName), NORMAL_PROMPT);
+            for (String command : journal.getCommands(mediaName)) {
+                execute(command, NORMAL_PROMPT);
+            }
+            LOG.debug(format("reapplied journaled state of media %s", mediaName));
+        }
+    }
+
     /**
      * Removes a multimedia item from media. If media does not exists or has no such item, nothing will be done.
      *
@@ -386,11 +697,42 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void removeInputItem(String mediaName, int playListIndex) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SETUP_INPUTDELN, mediaName, playListIndex));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_SETUP_INPUTDELN, mediaName, playListIndex));
         LOG.debug(format("removed input %d of media %s", playListIndex, mediaName));
     }
 
+    /**
+     * Seeks like {@link #seek(String, Duration)}, but coalesces seeks of the same media requested in quick succession, for example while dragging a
+     * scrub bar. While a seek of the media is in flight, a new seek replaces any other pending seek and this method returns immediately. Once the
+     * seek in flight has completed, the pending seek is sent. So at most one seek per media is outstanding and the last requested position always
+     * wins, while intermediate positions may be skipped.
+     *
+     * @param mediaName
+     *            name of media which should be seeked
+     * @param position
+     *            absolute position (duration from start of item)
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason), pending seeks are discarded in this case
+     */
+    public void scrub(String mediaName, Duration position) throws VlcConnectionException {
+        seekCoalescing(mediaName, format(COMMAND_SEEK_DURATION, mediaName, position.getMillis()));
+    }
+
+    /**
+     * Seeks like {@link #seek(String, float)}, but coalesces seeks of the same media requested in quick succession (see
+     * {@link #scrub(String, Duration)}).
+     *
+     * @param mediaName
+     *            name of media which should be seeked
+     * @param position
+     *            pencentual position
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason), pending seeks are discarded in this case
+     */
+    public void scrub(String mediaName, float position) throws VlcConnectionException {
+        seekCoalescing(mediaName, format(COMMAND_SEEK_PERCENTAGE, mediaName, position));
+    }
+
     /**
      * Continues playing current item at given absolute position, which may be before or after current position. If the media is stopped command will
      * have no effect.
@@ -403,8 +745,7 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void seek(String mediaName, Duration position) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SEEK_DURATION, mediaName, position.getMillis()));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_SEEK_DURATION, mediaName, position.getMillis()));
         LOG.debug(format("media %s seeked to absolute position %s ms", mediaName, position.getMillis()));
     }
 
@@ -420,11 +761,103 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void seek(String mediaName, float position) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SEEK_PERCENTAGE, mediaName, position));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_SEEK_PERCENTAGE, mediaName, position));
         LOG.debug(format("media %s seeked to relative position %.2f %%", mediaName, position * 100));
     }
 
+    /**
+     * Sets a circuit breaker that guards all commands sent to VLC.
+     *
+     * @param circuitBreaker
+     *            the circuit breaker to use or <code>null</code> to disable it
+     */
+    public void setCircuitBreaker(VlcCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Sets the queue in which commands wait for their turn on the telnet session. By default, an unbounded queue without rate limit is used.
+     *
+     * @param commandQueue
+     *            the queue to use
+     */
+    public void setCommandQueue(VlcCommandQueue commandQueue) {
+        this.commandQueue = commandQueue;
+    }
+
+    /**
+     * Enables or disables a media unless it is known to be in this state already, in which case no command is sent at all.
+     *
+     * @param mediaName
+     *            name of media to enable or disable
+     * @param enabled
+     *            whether media should be enabled
+     * @return <code>true</code> if a command has been sent, <code>false</code> if the media was known to be in this state
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public boolean setEnabled(String mediaName, boolean enabled) throws VlcConnectionException {
+        return setKnownState(mediaName, KNOWN_ENABLED, enabled, format(COMMAND_SETUP_ENABLED, mediaName, enabled ? ENABLED : DISABLED));
+    }
+
+    /**
+     * Sets an index in which the lengths of inputs seen in responses to <code>show</code> are recorded. By default, lengths are not recorded.
+     *
+     * @param inputIndex
+     *            the index to use or <code>null</code> to disable recording
+     */
+    public void setInputIndex(VlcInputIndex inputIndex) {
+        this.inputIndex = inputIndex;
+    }
+
+    /**
+     * Sets a journal to which all mutating commands will be appended once VLC has acknowledged them.
+     *
+     * @param journal
+     *            the journal to use or <code>null</code> to disable journaling
+     */
+    public void setJournal(VlcJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Sets how long the state of a media set or seen by this instance is trusted by the absolute setters ({@link #setLoop(String, boolean)},
+     * {@link #ensurePlaying(String)}, {@link #ensureStopped(String)} and {@link #setEnabled(String, boolean)}). Once expired, the command is sent
+     * again even if the state is unchanged. The state may change without this instance noticing it, for example when the play list of a media has
+     * ended or another client controls the same VLC, so this should be shorter than the time such a change may go unnoticed. Defaults to 30 seconds.
+     *
+     * @param knownStateTtl
+     *            time to trust known state or {@link Duration#ZERO} to always send commands
+     */
+    public void setKnownStateTtl(Duration knownStateTtl) {
+        this.knownStateTtlNanos = MILLISECONDS.toNanos(knownStateTtl.getMillis());
+    }
+
+    /**
+     * Makes a media loop or stop looping unless it is known to be in this state already, in which case no command is sent at all.
+     *
+     * @param mediaName
+     *            name of media to set loop state of
+     * @param loop
+     *            whether media should loop
+     * @return <code>true</code> if a command has been sent, <code>false</code> if the media was known to be in this state
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public boolean setLoop(String mediaName, boolean loop) throws VlcConnectionException {
+        return setKnownState(mediaName, KNOWN_LOOP, loop, format(loop ? COMMAND_LOOP : COMMAND_UNLOOP, mediaName));
+    }
+
+    /**
+     * Sets a recorder that traces the timing of each command on the wire. Tracing is disabled by default.
+     *
+     * @param traceRecorder
+     *            the recorder to use or <code>null</code> to disable tracing
+     */
+    public void setTraceRecorder(VlcTraceRecorder traceRecorder) {
+        this.traceRecorder = traceRecorder;
+    }
+
     /**
      * Sets an option for a given media.
      *
@@ -436,8 +869,7 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void setupOption(String mediaName, VlcOption option) throws VlcConnectionException {
-        sendCommand(format(COMMAND_SETUP_OPTION, mediaName, option));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_SETUP_OPTION, mediaName, option));
     }
 
     /**
@@ -449,11 +881,52 @@ public class VlcManager {
      *             when there is a problem with the connection with VLC (see cause for detailed reason)
      */
     public void stop(String mediaName) throws VlcConnectionException {
-        sendCommand(format(COMMAND_STOP, mediaName));
-        waitForAndClear(NORMAL_PROMPT);
+        executeMutation(format(COMMAND_STOP, mediaName));
+        remember(mediaName, KNOWN_PLAYING, false);
+        remember(mediaName, KNOWN_STOPPED, true);
         LOG.debug(format("stopped media %s", mediaName));
     }
 
+    /**
+     * Brings the play list of a media in a desired state with as few commands as possible. The current play list is read once and compared with the
+     * desired one: since VLC can only append items, the longest beginning of the desired play list that already appears in the current play list
+     * (not necessarily contiguously) is kept, all other items are removed and the remaining desired items are appended. Commands are sent in writes
+     * of up to {@value #SYNC_PLAYLIST_CHUNK_SIZE} commands, so that control commands of other threads don't wait for a long play list.
+     *
+     * @param mediaName
+     *            name of media which play list should be synchronized
+     * @param desired
+     *            desired items of play list in order
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public void syncPlaylist(String mediaName, List<VlcInput> desired) throws VlcConnectionException {
+        List<VlcInput> current = readPlayListItems(mediaName);
+        boolean[] kept = new boolean[current.size()];
+        int keptCount = 0;
+        for (int i = 0; i < current.size() && keptCount < desired.size(); i++) {
+            if (current.get(i).equals(desired.get(keptCount))) {
+                kept[i] = true;
+                keptCount++;
+            }
+        }
+        List<String> commands = new ArrayList<String>();
+        // remove from the end, so that indexes of items still to be removed don't change
+        for (int i = current.size() - 1; i >= 0; i--) {
+            if (!kept[i]) {
+                commands.add(format(COMMAND_SETUP_INPUTDELN, mediaName, i + 1));
+            }
+        }
+        for (VlcInput input : desired.subList(keptCount, desired.size())) {
+            commands.add(format(COMMAND_SETUP_INPUT, mediaName, input));
+        }
+        for (int start = 0; start < commands.size(); start += SYNC_PLAYLIST_CHUNK_SIZE) {
+            executeMutations(commands.subList(start, Math.min(start + SYNC_PLAYLIST_CHUNK_SIZE, commands.size())));
+        }
+        LOG.debug(format("synchronized play list of media %s: kept %s, removed %s and added %s items", mediaName, keptCount,
+                current.size() - keptCount, desired.size() - keptCount));
+    }
+
     /**
      * Toggle the loop state of a media (starts looping if currently not looping and vice versa).
      *
@@ -464,13 +937,248 @@ public class VlcManager {
      */
     public void toggleLoopState(String mediaName) throws VlcConnectionException {
         if (readLoopState(mediaName)) {
-            sendCommand(format(COMMAND_LOOP, mediaName));
+            executeMutation(format(COMMAND_LOOP, mediaName));
+            remember(mediaName, KNOWN_LOOP, true);
             LOG.debug(format("media %s is now looping", mediaName));
         } else {
-            sendCommand(format(COMMAND_UNLOOP, mediaName));
+            executeMutation(format(COMMAND_UNLOOP, mediaName));
+            remember(mediaName, KNOWN_LOOP, false);
             LOG.debug(format("media %s is not looping anymore", mediaName));
         }
-        waitForAndClear(NORMAL_PROMPT);
+    }
+
+    /**
+     * Sends a command and waits for the response.
+     *
+     * @param command
+     *            command to send to telnet
+     * @param expectedMessage
+     *            regular expression to find in response
+     * @return the matcher that successfully found the expected message
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    Matcher execute(String command, Pattern expectedMessage) throws VlcConnectionException {
+        return execute(asList(command), expectedMessage, null).get(0);
+    }
+
+    /**
+     * Sends several commands with a single write and then waits for each response in turn. The commands hold the session together, so that no other
+     * command can be interleaved, and are queued with the priority of the first command.
+     *
+     * @param commands
+     *            commands to send to telnet
+     * @param expectedMessage
+     *            regular expression to find in each response
+     * @param receivedAt
+     *            array receiving the time in nanoseconds (see {@link System#nanoTime()}) when each response has been received or <code>null</code>
+     * @return the matchers that successfully found the expected message, one per command
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    List<Matcher> execute(List<String> commands, Pattern expectedMessage, long[] receivedAt) throws VlcConnectionException {
+        return execute(commands, expectedMessage, receivedAt, null);
+    }
+
+    /**
+     * Sends several commands like {@link #execute(List, Pattern, long[])} and runs a given action before the session is released, that is before
+     * any other command can be sent.
+     *
+     * @param commands
+     *            commands to send to telnet
+     * @param expectedMessage
+     *            regular expression to find in each response
+     * @param receivedAt
+     *            array receiving the time in nanoseconds (see {@link System#nanoTime()}) when each response has been received or <code>null</code>
+     * @param beforeRelease
+     *            action to run (whether commands succeeded or not) before the session is released or <code>null</code>
+     * @return the matchers that successfully found the expected message, one per command
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    List<Matcher> execute(List<String> commands, Pattern expectedMessage, long[] receivedAt, Runnable beforeRelease) throws VlcConnectionException {
+        VlcCircuitBreaker breaker = circuitBreaker;
+        VlcCircuitBreaker.Permission permission = breaker == null ? null : breaker.acquirePermission();
+        VlcCommandQueue queue = commandQueue;
+        VlcTraceRecorder recorder = traceRecorder;
+        long submittedAt = recorder == null ? 0 : nanoTime();
+        CommandPriority priority = priorityOf(commands.get(0));
+        try {
+            queue.enter(priority);
+        } catch (VlcCallRejectedException exception) {
+            if (breaker != null) {
+                breaker.releasePermission(permission);
+            }
+            throw exception;
+        }
+        boolean probe = permission != null && permission.isProbe();
+        boolean released = false;
+        long sequence = -1;
+        if (recorder != null) {
+            sequence = recorder.begin(join(commands, "; "), submittedAt);
+            traceSequence = sequence;
+        }
+        try {
+            long start = nanoTime();
+            boolean success = false;
+            try {
+                List<Matcher> matchers;
+                if (!probe && priority == CommandPriority.QUERY && commands.size() == 1 && canQuery()) {
+                    // query doesn't need the session, so it is passed on right away and the response is awaited concurrently with other commands
+                    traceSequence = -1;
+                    release(queue, beforeRelease);
+                    released = true;
+                    matchers = query(commands.get(0), expectedMessage, recorder, sequence);
+                } else {
+                    if (probe) {
+                        roundTrip(asList(COMMAND_PING), NORMAL_PROMPT, null);
+                    }
+                    matchers = roundTrip(commands, expectedMessage, receivedAt);
+                }
+                success = true;
+                return matchers;
+            } finally {
+                long elapsed = nanoTime() - start;
+                metrics.onRoundTrip(priority, elapsed, success);
+                if (breaker != null) {
+                    breaker.onResult(permission, elapsed, success);
+                }
+            }
+        } finally {
+            if (recorder != null) {
+                recorder.end(sequence);
+            }
+            if (!released) {
+                traceSequence = -1;
+                release(queue, beforeRelease);
+            }
+        }
+    }
+
+    /**
+     * Sends a command that changes the state of VLC, waits for the prompt and appends the command to the journal if there is one.
+     *
+     * @param command
+     *            command to send to telnet
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    void executeMutation(String command) throws VlcConnectionException {
+        executeMutations(asList(command));
+    }
+
+    /**
+     * Sends several commands that change the state of VLC with a single write, waits for their prompts and appends the commands to the journal if
+     * there is one.
+     *
+     * @param commands
+     *            commands to send to telnet
+     * @return time in nanoseconds (see {@link System#nanoTime()}) when each response has been received
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    long[] executeMutations(List<String> commands) throws VlcConnectionException {
+        long[] receivedAt = new long[commands.size()];
+        if (commands.isEmpty()) {
+            return receivedAt;
+        }
+        execute(commands, NORMAL_PROMPT, receivedAt);
+        if (journal != null) {
+            for (String command : commands) {
+                try {
+                    journal.append(command);
+                } catch (IOException exception) {
+                    LOG.warn(format("caught exception while appending command to journal: %s", command), exception);
+                }
+            }
+        }
+        return receivedAt;
+    }
+
+    /**
+     * @return names of media which state is known to this instance, see {@link #setKnownStateTtl(Duration)}
+     */
+    Set<String> getKnownMediaNames() {
+        Set<String> mediaNames = new TreeSet<String>();
+        for (String key : knownStates.keySet()) {
+            mediaNames.add(key.substring(0, key.lastIndexOf(' ')));
+        }
+        return mediaNames;
+    }
+
+    /**
+     * @return time in nanoseconds (see {@link System#nanoTime()}) when the last response has been received from VLC or this instance has been
+     *         created if there was none yet
+     */
+    long getLastResponseAt() {
+        return lastResponseAt;
+    }
+
+    /**
+     * @param mediaName
+     *            name of media
+     * @return whether a concurrent read of the media would join a pending <code>show</code>
+     */
+    boolean isShowPending(String mediaName) {
+        return pendingShows.containsKey(mediaName);
+    }
+
+    /**
+     * Classifies a command into its priority class: commands that control playback overtake queries, which overtake commands setting up media.
+     *
+     * @param command
+     *            command to classify
+     * @return priority class of command
+     */
+    static CommandPriority priorityOf(String command) {
+        if (command.startsWith("control ") || command.startsWith("loop ") || command.startsWith("unloop ")) {
+            return CommandPriority.CONTROL;
+        }
+        if (command.startsWith("show")) {
+            return CommandPriority.QUERY;
+        }
+        return CommandPriority.BULK_SETUP;
+    }
+
+    /**
+     * Sends a seek command unless a seek of the same media is already in flight, in which case the command replaces the pending one. The thread
+     * that sent the seek in flight sends pending seeks until there are none left.
+     *
+     * @param mediaName
+     *            name of media which should be seeked
+     * @param command
+     *            seek command to send
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    void seekCoalescing(String mediaName, String command) throws VlcConnectionException {
+        synchronized (pendingSeeks) {
+            if (pendingSeeks.containsKey(mediaName)) {
+                String replaced = pendingSeeks.put(mediaName, command);
+                LOG.trace(format("seek of media %s is in flight, replaced pending seek %s by %s", mediaName, replaced, command));
+                return;
+            }
+            pendingSeeks.put(mediaName, null);
+        }
+        boolean completed = false;
+        try {
+            for (String next = command; next != null;) {
+                executeMutation(next);
+                synchronized (pendingSeeks) {
+                    next = pendingSeeks.put(mediaName, null);
+                    if (next == null) {
+                        pendingSeeks.remove(mediaName);
+                    }
+                }
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                synchronized (pendingSeeks) {
+                    pendingSeeks.remove(mediaName);
+                }
+            }
+        }
     }
 
     /**
@@ -483,11 +1191,11 @@ public class VlcManager {
      */
     void sendCommand(String command) throws VlcConnectionException {
         try {
-            OutputStream outputStream = telnetClient.getOutputStream();
+            OutputStream outputStream = transport.getOutputStream();
             if (!command.endsWith("\n")) {
                 command += "\n";
             }
-            outputStream.write(command.getBytes());
+            outputStream.write(command.getBytes(UTF_8));
             outputStream.flush();
             LOG.trace(format("sent telnet command: %s", command));
         } catch (IOException exception) {
@@ -507,7 +1215,7 @@ public class VlcManager {
      */
     void sendPassword(char[] password) throws VlcConnectionException {
         try {
-            OutputStream outputStream = telnetClient.getOutputStream();
+            OutputStream outputStream = transport.getOutputStream();
             for (int i = 0; i < password.length; i++) {
                 outputStream.write(password[i]);
                 password[i] = '\0';
@@ -520,6 +1228,58 @@ public class VlcManager {
         }
     }
 
+    /**
+     * Retrieves the state of a media. Concurrent calls for the same media share a single round trip: a call that arrives while a <code>show</code>
+     * for this media is already pending waits for that response instead of sending its own command. If the transport can execute queries outside of
+     * the session (see {@link VlcTransport#canQuery()}), reads of different media run in parallel.
+     *
+     * @param mediaName
+     *            name of media to show
+     * @return complete response of VLC including the prompt
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    String show(final String mediaName) throws VlcConnectionException {
+        final AtomicReference<FutureTask<String>> self = new AtomicReference<FutureTask<String>>();
+        final Runnable unpublish = new Runnable() {
+            @Override
+            public void run() {
+                // no caller must join this response once a command sent after it could have changed the state
+                pendingShows.remove(mediaName, self.get());
+            }
+        };
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() throws VlcConnectionException {
+                return execute(asList(format(COMMAND_SHOW, mediaName)), NORMAL_PROMPT, null, unpublish).get(0).group();
+            }
+        });
+        self.set(task);
+        FutureTask<String> pendingTask = pendingShows.putIfAbsent(mediaName, task);
+        if (pendingTask == null) {
+            try {
+                task.run();
+            } finally {
+                // in case the session has never been entered
+                unpublish.run();
+            }
+        } else {
+            LOG.trace(format("joining pending show of media %s", mediaName));
+            task = pendingTask;
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof VlcConnectionException) {
+                throw (VlcConnectionException) exception.getCause();
+            }
+            throw new VlcConnectionException(exception.getCause());
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new VlcCallRejectedException(format("interrupted while waiting for pending show of media %s", mediaName));
+        }
+    }
+
     /**
      * Reads input from VLC until a given char sequence (for example a prompt) in form of a regular expression is found and clears input buffer until
      * and including the expected sequence.
@@ -532,20 +1292,209 @@ public class VlcManager {
      */
     Matcher waitForAndClear(Pattern expectedMessage) throws VlcConnectionException {
         try {
-            Matcher matcher;
-            do {
-                InputStream inputStream = telnetClient.getInputStream();
-                byte[] buffer = new byte[1024];
-                int length = inputStream.read(buffer);
-                currentMessage += new String(buffer, 0, length);
-                matcher = expectedMessage.matcher(currentMessage);
-            } while (!matcher.find());
-            LOG.trace(format("received telnet response:\n----------------\n%s\n----------------", matcher.group()));
-            currentMessage = currentMessage.substring(matcher.end(0));
-            return matcher;
+            InputStream inputStream = transport.getInputStream();
+            while (true) {
+                int frameLength = responseBuffer.nextFrameLength(NORMAL_PROMPT_SUFFIX, PASSWORD_PROMPT_SUFFIX);
+                if (frameLength < 0) {
+                    if (responseBuffer.fill(inputStream) < 0) {
+                        metrics.onConnected(false);
+                        throw new EOFException("connection has been closed by VLC");
+                    }
+                    trace(Stage.FIRST_BYTE);
+                    continue;
+                }
+                trace(Stage.PROMPT);
+                // frame is only decoded once a prompt has been found, prompts within a frame extend it until the expected one is found
+                CharBuffer frame = responseBuffer.decode(frameLength);
+                Matcher matcher = expectedMessage.matcher(frame);
+                if (matcher.find()) {
+                    responseBuffer.skip(frameLength);
+                    lastResponseAt = nanoTime();
+                    trace(Stage.PARSED);
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace(format("received telnet response:\n----------------\n%s\n----------------", frame));
+                    }
+                    return matcher;
+                }
+            }
         } catch (IOException exception) {
             LOG.warn("caught exception while reading input from telnet", exception);
             throw new VlcConnectionException(exception);
         }
     }
+
+    /**
+     * @return whether the transport can execute a query outside of the session, connecting first if connecting lazily
+     */
+    private boolean canQuery() throws VlcConnectionException {
+        connectIfLazy();
+        return transport.canQuery();
+    }
+
+    /**
+     * Opens the connection if {@link #connectLazily(char[])} has been called and connection has not yet been established.
+     *
+     * @throws VlcConnectionException
+     *             when connection can't be established (see cause for detailed reason)
+     */
+    private synchronized void connectIfLazy() throws VlcConnectionException {
+        if (lazyPassword != null) {
+            // login wipes the password it is given, so keep the original until login has succeeded to retry on next use
+            char[] password = lazyPassword.clone();
+            try {
+                connect(password);
+            } catch (VlcConnectionException exception) {
+                Arrays.fill(password, '\0');
+                throw exception;
+            }
+            Arrays.fill(lazyPassword, '\0');
+            lazyPassword = null;
+        }
+    }
+
+    /**
+     * Executes a single query outside of the session.
+     */
+    private List<Matcher> query(String command, Pattern expectedMessage, VlcTraceRecorder recorder, long sequence) throws VlcConnectionException {
+        try {
+            String response = transport.query(command);
+            lastResponseAt = nanoTime();
+            if (recorder != null) {
+                recorder.mark(sequence, Stage.PROMPT);
+            }
+            Matcher matcher = expectedMessage.matcher(response);
+            if (!matcher.find()) {
+                throw new VlcConnectionException(format("unexpected response to query %s: %s", command, response));
+            }
+            if (recorder != null) {
+                recorder.mark(sequence, Stage.PARSED);
+            }
+            return Collections.singletonList(matcher);
+        } catch (IOException exception) {
+            LOG.warn(format("caught exception while executing query: %s", command), exception);
+            throw new VlcConnectionException(exception);
+        }
+    }
+
+    /**
+     * Runs an action and passes the session on to the next command.
+     */
+    private void release(VlcCommandQueue queue, Runnable beforeRelease) {
+        try {
+            if (beforeRelease != null) {
+                beforeRelease.run();
+            }
+        } finally {
+            queue.leave();
+        }
+    }
+
+    private List<Matcher> roundTrip(List<String> commands, Pattern expectedMessage, long[] receivedAt) throws VlcConnectionException {
+        connectIfLazy();
+        sendCommand(join(commands, '\n'));
+        trace(Stage.WRITTEN);
+        List<Matcher> matchers = new ArrayList<Matcher>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            matchers.add(waitForAndClear(expectedMessage));
+            if (receivedAt != null) {
+                receivedAt[i] = nanoTime();
+            }
+        }
+        return matchers;
+    }
+
+    /**
+     * Computes the skew between media started by a batch of commands.
+     *
+     * @param receivedAt
+     *            times when the response of each command has been received
+     * @param commandsPerMedia
+     *            number of consecutive commands sent for each media
+     */
+    private Duration skewOf(long[] receivedAt, int commandsPerMedia) {
+        if (receivedAt.length == 0) {
+            return Duration.ZERO;
+        }
+        return new Duration(NANOSECONDS.toMillis(receivedAt[receivedAt.length - 1] - receivedAt[commandsPerMedia - 1]));
+    }
+
+    /**
+     * Records the time a stage has been reached by the command currently holding the session if tracing is enabled. The first byte is only recorded
+     * once per command, all other stages are recorded each time they are reached, so that the last occurrence wins.
+     */
+    private void trace(Stage stage) {
+        VlcTraceRecorder recorder = traceRecorder;
+        if (recorder != null && traceSequence >= 0) {
+            if (stage == Stage.FIRST_BYTE) {
+                recorder.markFirst(traceSequence, stage);
+            } else {
+                recorder.mark(traceSequence, stage);
+            }
+        }
+    }
+
+    private void forget(String mediaName) {
+        for (String attribute : asList(KNOWN_LOOP, KNOWN_PLAYING, KNOWN_STOPPED, KNOWN_ENABLED)) {
+            knownStates.remove(knownStateKey(mediaName, attribute));
+        }
+    }
+
+    /**
+     * Records the lengths of the items currently played by a media in the input index if there is one.
+     */
+    private void index(VlcMedia media) {
+        VlcInputIndex index = inputIndex;
+        if (index != null) {
+            try {
+                index.observe(media);
+            } catch (IOException exception) {
+                LOG.warn(format("caught exception while recording lengths of media %s in input index", media.getName()), exception);
+            }
+        }
+    }
+
+    private String knownStateKey(String mediaName, String attribute) {
+        return mediaName + ' ' + attribute;
+    }
+
+    private void remember(String mediaName, String attribute, boolean value) {
+        knownStates.put(knownStateKey(mediaName, attribute), new KnownState(value));
+    }
+
+    private void remember(VlcMedia media) {
+        boolean playing = false;
+        boolean live = false;
+        for (VlcInstance instance : media.getInstances()) {
+            playing |= instance.getState() == InstanceState.PLAYING || instance.getState() == InstanceState.OPENING;
+            live |= instance.getState() != InstanceState.END && instance.getState() != InstanceState.ERROR;
+        }
+        remember(media.getName(), KNOWN_ENABLED, media.isEnabed());
+        remember(media.getName(), KNOWN_PLAYING, playing);
+        remember(media.getName(), KNOWN_STOPPED, !live);
+        remember(media.getName(), KNOWN_LOOP, media.isLoop());
+    }
+
+    /**
+     * Sends a command setting an attribute of a media unless the attribute is known to have the desired value.
+     *
+     * @return whether the command has been sent
+     */
+    private boolean setKnownState(String mediaName, String attribute, boolean value, String command) throws VlcConnectionException {
+        String key = knownStateKey(mediaName, attribute);
+        KnownState known = knownStates.get(key);
+        if (known != null && known.value == value && nanoTime() - known.knownAt < knownStateTtlNanos) {
+            LOG.trace(format("%s of media %s is known to be %s, skipping command: %s", attribute, mediaName, value, command));
+            return false;
+        }
+        // state is unknown while the command is pending and remains so if it fails
+        knownStates.remove(key);
+        executeMutation(command);
+        remember(mediaName, attribute, value);
+        LOG.debug(format("%s of media %s is now %s", attribute, mediaName, value));
+        return true;
+    }
+
+    private String find(Matcher matcher, int group) {
+        return matcher.find() ? matcher.group(group) : null;
+    }
 }
@@ -9,15 +9,32 @@ public class VlcMedia {
     private final String name;
     private final MediaType type;
     private final boolean enabed;
+    private final boolean loop;
+    private final VlcInput[] inputs;
     private final VlcOutput output;
-    private final List<VlcOption> options;
+    private final VlcOption[] options;
+    private final VlcInstance[] instances;
+
+    public VlcMedia(String name, MediaType type, boolean enabed, boolean loop, List<VlcInput> inputs, VlcOutput output, List<VlcOption> options,
+            List<VlcInstance> instances) {
+        this(name, type, enabed, loop, inputs.toArray(new VlcInput[inputs.size()]), output, options.toArray(new VlcOption[options.size()]),
+                instances.toArray(new VlcInstance[instances.size()]));
+    }
 
     public VlcMedia(String name, MediaType type, boolean enabed, VlcOutput output, VlcOption... options) {
+        this(name, type, enabed, false, new VlcInput[0], output, options.clone(), new VlcInstance[0]);
+    }
+
+    private VlcMedia(String name, MediaType type, boolean enabed, boolean loop, VlcInput[] inputs, VlcOutput output, VlcOption[] options,
+            VlcInstance[] instances) {
         this.name = name;
         this.type = type;
         this.enabed = enabed;
+        this.loop = loop;
+        this.inputs = inputs;
         this.output = output;
-        this.options = unmodifiableList(asList(options));
+        this.options = options;
+        this.instances = instances;
     }
 
     @Override
@@ -42,12 +59,20 @@ public class VlcMedia {
         return true;
     }
 
+    public List<VlcInput> getInputs() {
+        return unmodifiableList(asList(inputs));
+    }
+
+    public List<VlcInstance> getInstances() {
+        return unmodifiableList(asList(instances));
+    }
+
     public String getName() {
         return name;
     }
 
     public List<VlcOption> getOptions() {
-        return options;
+        return unmodifiableList(asList(options));
     }
 
     public VlcOutput getOutput() {
@@ -70,6 +95,10 @@ public class VlcMedia {
         return enabed;
     }
 
+    public boolean isLoop() {
+        return loop;
+    }
+
     @Override
     public String toString() {
         return "[name=" + name + ", type=" + type + ", enabed=" + enabed + ", output=" + output + "]";
@@ -0,0 +1,87 @@
+package ch.wellernet.vlclib;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of a {@link VlcManager} for monitoring: connection state, time of the last successful round trip and count, failures and latency of
+ * round trips per priority class. All counters are updated and read without locks, so that reading them (for example by {@link VlcHealthServer})
+ * never slows down commands.
+ *
+ * @since 1.0.0
+ */
+public class VlcMetrics {
+
+    private final AtomicLongArray commandCounts;
+    private final AtomicLongArray failureCounts;
+    private final VlcLatencyHistogram[] roundTripLatencies;
+    private volatile boolean connected;
+    private volatile long lastSuccessAt;
+
+    public VlcMetrics() {
+        int priorityCount = CommandPriority.values().length;
+        commandCounts = new AtomicLongArray(priorityCount);
+        failureCounts = new AtomicLongArray(priorityCount);
+        roundTripLatencies = new VlcLatencyHistogram[priorityCount];
+        for (int priority = 0; priority < priorityCount; priority++) {
+            roundTripLatencies[priority] = new VlcLatencyHistogram();
+        }
+    }
+
+    /**
+     * @param priority
+     *            priority class
+     * @return number of commands of given priority class that have been sent, including failed ones
+     */
+    public long getCommandCount(CommandPriority priority) {
+        return commandCounts.get(priority.ordinal());
+    }
+
+    /**
+     * @param priority
+     *            priority class
+     * @return number of commands of given priority class that have failed
+     */
+    public long getFailureCount(CommandPriority priority) {
+        return failureCounts.get(priority.ordinal());
+    }
+
+    /**
+     * @return time in milliseconds since the epoch when the last round trip has succeeded or 0 if none has succeeded yet
+     */
+    public long getLastSuccessAt() {
+        return lastSuccessAt;
+    }
+
+    /**
+     * @param priority
+     *            priority class
+     * @return latencies of successful round trips of given priority class from sending the command until the response has been received
+     */
+    public VlcLatencyHistogram getRoundTripLatency(CommandPriority priority) {
+        return roundTripLatencies[priority.ordinal()];
+    }
+
+    /**
+     * @return whether the session has been opened and not been closed or failed since
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    void onConnected(boolean connected) {
+        this.connected = connected;
+        if (connected) {
+            lastSuccessAt = System.currentTimeMillis();
+        }
+    }
+
+    void onRoundTrip(CommandPriority priority, long nanos, boolean success) {
+        commandCounts.incrementAndGet(priority.ordinal());
+        if (success) {
+            roundTripLatencies[priority.ordinal()].record(nanos);
+            lastSuccessAt = System.currentTimeMillis();
+        } else {
+            failureCounts.incrementAndGet(priority.ordinal());
+        }
+    }
+}
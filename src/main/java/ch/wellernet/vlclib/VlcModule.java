@@ -5,19 +5,43 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 import static org.apache.commons.lang3.StringUtils.join;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class VlcModule {
     private final String name;
-    private final List<VlcProperty> properties;
+    private final VlcProperty[] properties;
 
     public VlcModule(String name, List<VlcProperty> properties) {
-        this.name = name;
-        this.properties = unmodifiableList(properties);
+        this(name, properties.toArray(new VlcProperty[properties.size()]));
     }
 
     public VlcModule(String name, VlcProperty... properties) {
-        this(name, asList(properties));
+        this.name = name;
+        // copied, since modules are immutable and may be shared between many outputs
+        this.properties = properties.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        VlcModule other = (VlcModule) obj;
+        if (name == null) {
+            if (other.name != null) {
+                return false;
+            }
+        } else if (!name.equals(other.name)) {
+            return false;
+        }
+        return Arrays.equals(properties, other.properties);
     }
 
     public String getName() {
@@ -25,15 +49,24 @@ public class VlcModule {
     }
 
     public List<VlcProperty> getProperties() {
-        return properties;
+        return unmodifiableList(asList(properties));
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + (name == null ? 0 : name.hashCode());
+        result = prime * result + Arrays.hashCode(properties);
+        return result;
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append(name);
-        if (!properties.isEmpty()) {
-            builder.append(format("{%s}", join(properties.toArray(), ',')));
+        if (properties.length > 0) {
+            builder.append(format("{%s}", join(properties, ',')));
         }
         return builder.toString();
     }
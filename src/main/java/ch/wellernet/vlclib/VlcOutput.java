@@ -5,7 +5,8 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
 import static org.apache.commons.lang3.StringUtils.join;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class VlcOutput {
@@ -17,20 +18,19 @@ public class VlcOutput {
         private final List<VlcModule> modules;
 
         public Builder() {
-            this.modules = new LinkedList<VlcModule>();
+            this.modules = new ArrayList<VlcModule>();
         }
 
         @Override
         public VlcOutput build() {
             if (currentModuleName != null) {
-                modules.add(new VlcModule(currentModuleName, currentModuleProperties
-                        .toArray(new VlcProperty[currentModuleProperties.size()])));
+                modules.add(new VlcModule(currentModuleName, currentModuleProperties));
             }
             return new VlcOutput(modules);
         }
 
         public Builder module(String name) {
-            currentModuleProperties = new LinkedList<VlcProperty>();
+            currentModuleProperties = new ArrayList<VlcProperty>();
             currentModuleName = name;
             return this;
         }
@@ -41,22 +41,117 @@ public class VlcOutput {
         }
     }
 
-    private final List<VlcModule> modules;
+    private final VlcModule[] modules;
+
+    // serialized form is cached, since outputs are immutable and often shared between many media
+    private String serialized;
 
     public VlcOutput(List<VlcModule> modules) {
-        this.modules = unmodifiableList(modules);
+        this(modules.toArray(new VlcModule[modules.size()]));
     }
 
     public VlcOutput(VlcModule... modules) {
-        this(asList(modules));
+        // copied, so that changes of the caller's array can't corrupt shared outputs and their serialized form
+        this.modules = modules.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        return Arrays.equals(modules, ((VlcOutput) obj).modules);
     }
 
     public List<VlcModule> getModules() {
-        return modules;
+        return unmodifiableList(asList(modules));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(modules);
+    }
+
+    /**
+     * Parses the serialized form of an output chain as shown by VLC, for example <code>#transcode{vcodec=h264}:std{access=http,dst=:8080}</code>.
+     * Property values may contain nested module chains.
+     *
+     * @param output
+     *            serialized output chain with or without leading <code>#</code>
+     * @return the parsed output or <code>null</code> if the chain is empty
+     */
+    public static VlcOutput parse(String output) {
+        String chain = output.trim();
+        if (chain.startsWith("#")) {
+            chain = chain.substring(1);
+        }
+        if (chain.isEmpty()) {
+            return null;
+        }
+        List<VlcModule> modules = new ArrayList<VlcModule>();
+        for (String module : splitTopLevel(chain, ':')) {
+            int brace = module.indexOf('{');
+            if (brace < 0) {
+                modules.add(new VlcModule(module));
+                continue;
+            }
+            int end = module.lastIndexOf('}');
+            List<VlcProperty> properties = new ArrayList<VlcProperty>();
+            for (String property : splitTopLevel(module.substring(brace + 1, end > brace ? end : module.length()), ',')) {
+                int equals = property.indexOf('=');
+                if (equals >= 0) {
+                    properties.add(new VlcProperty(property.substring(0, equals), property.substring(equals + 1)));
+                } else if (!property.isEmpty()) {
+                    properties.add(new VlcProperty(property, null));
+                }
+            }
+            modules.add(new VlcModule(module.substring(0, brace), properties));
+        }
+        return new VlcOutput(modules);
     }
 
     @Override
     public String toString() {
-        return format("#%s", join(modules, ':'));
+        String result = serialized;
+        if (result == null) {
+            result = format("#%s", join(modules, ':'));
+            serialized = result;
+        }
+        return result;
+    }
+
+    /**
+     * Splits a string at each occurrence of a separator that is neither enclosed in braces nor in quotes.
+     */
+    private static List<String> splitTopLevel(String string, char separator) {
+        List<String> parts = new ArrayList<String>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                depth--;
+            } else if (c == separator && depth == 0) {
+                parts.add(string.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(string.substring(start));
+        return parts;
     }
 }
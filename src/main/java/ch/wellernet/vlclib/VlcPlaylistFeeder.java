@@ -0,0 +1,214 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Feeds the play list of a media from an unbounded schedule while keeping only a sliding window of upcoming items in VLC. Items are drawn lazily
+ * from an {@link Iterator}, so that the schedule may be arbitrarily long or even generated on the fly. Whenever the play list index of the media
+ * advances, the items already played are removed and new items are appended, so that the play list always holds the current item followed by up to
+ * <code>window</code> upcoming items. This keeps the memory used by VLC and the size of <code>show</code> responses constant, no matter how long the
+ * schedule is.
+ *
+ * <p>
+ * VLC doesn't renumber the play list index of a running instance when items are removed, so the feeder keeps track of the number of items removed
+ * since the start and maps the index reported by VLC to its own items accordingly. Indexes that don't advance beyond the last one reported (for
+ * instance because a poll reports a change of the inputs only) don't remove anything.
+ *
+ * <p>
+ * Advances are reported with {@link #advance(int)}, by a {@link VlcLogTailer} the feeder {@link #follow(VlcLogTailer) follows} (no round trips) or
+ * by registering the feeder as listener of a {@link VlcPollingScheduler}.
+ *
+ * @since 1.0.0
+ */
+public class VlcPlaylistFeeder implements VlcLogTailer.Listener, VlcPollingScheduler.Listener {
+
+    private static final Log LOG = LogFactory.getLog(VlcPlaylistFeeder.class);
+
+    private final VlcManager manager;
+    private final String mediaName;
+    private final Iterator<VlcInput> schedule;
+    private final int window;
+    private final List<VlcInput> queued;
+    private VlcInput drawn;
+    private boolean outOfSync;
+    private VlcLogTailer tailer;
+    private int playListIndex;
+    private int trimmed;
+
+    /**
+     * @param manager
+     *            manager used to modify the play list
+     * @param mediaName
+     *            name of media to feed
+     * @param schedule
+     *            items to play in order (only drawn when they enter the window)
+     * @param window
+     *            number of upcoming items to keep in the play list after the current item
+     */
+    public VlcPlaylistFeeder(VlcManager manager, String mediaName, Iterator<VlcInput> schedule, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException(format("window must be positive but was %s", window));
+        }
+        this.manager = manager;
+        this.mediaName = mediaName;
+        this.schedule = schedule;
+        this.window = window;
+        queued = new ArrayList<VlcInput>(window + 1);
+    }
+
+    /**
+     * Removes the items played before a given item and appends upcoming items until the window is full again.
+     *
+     * @param playListIndex
+     *            index (starting with 1) of item currently played as reported by VLC, which isn't renumbered when items are removed; nothing is
+     *            removed if it doesn't exceed the index reported before
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public synchronized void advance(int playListIndex) throws VlcConnectionException {
+        resyncIfNeeded();
+        this.playListIndex = Math.max(this.playListIndex, playListIndex);
+        int current = this.playListIndex - trimmed;
+        try {
+            // remove from the end, so that indexes of items still to be removed don't change
+            for (int index = Math.min(current, queued.size() + 1) - 1; index >= 1; index--) {
+                manager.removeInputItem(mediaName, index);
+                queued.remove(index - 1);
+                trimmed++;
+            }
+            fill();
+        } catch (VlcConnectionException exception) {
+            outOfSync = true;
+            throw exception;
+        } finally {
+            if (tailer != null) {
+                // tailer correlates log lines by the inputs it watches, which have changed
+                tailer.watch(mediaName, queued, this);
+            }
+        }
+    }
+
+    @Override
+    public void endReached(String mediaName, int playListIndex) {
+        // advance is handled when the next input is opened
+    }
+
+    @Override
+    public void errorOccurred(String mediaName, int playListIndex, String message) {
+        // VLC continues with the next item, which is handled when it is opened
+    }
+
+    /**
+     * Registers this feeder as listener of a log tailer and keeps the inputs watched by the tailer in sync with the play list of the media, so that
+     * items appended later are recognized as well.
+     *
+     * @param tailer
+     *            tailer following the log of the VLC instance playing the media
+     */
+    public synchronized void follow(VlcLogTailer tailer) {
+        this.tailer = tailer;
+        tailer.watch(mediaName, queued, this);
+    }
+
+    /**
+     * @return items currently in the play list of the media as far as known by this feeder
+     */
+    public synchronized List<VlcInput> getQueued() {
+        return Collections.unmodifiableList(new ArrayList<VlcInput>(queued));
+    }
+
+    @Override
+    public void inputChanged(String mediaName, int playListIndex, VlcInput input) {
+        if (this.mediaName.equals(mediaName)) {
+            // index is relative to the inputs the tailer has been watching, which may have been trimmed since, so the input is looked up instead
+            advanceQuietly(input);
+        }
+    }
+
+    @Override
+    public void mediaChanged(VlcManager manager, String mediaName, VlcMedia media) {
+        if (this.mediaName.equals(mediaName) && media != null && !media.getInstances().isEmpty()) {
+            advanceQuietly(media.getInstances().get(0).getPlayListIndex());
+        }
+    }
+
+    @Override
+    public void pollFailed(VlcManager manager, String mediaName, VlcConnectionException exception) {
+        // polling is retried by the scheduler
+    }
+
+    /**
+     * Replaces the play list of the media with the first items of the schedule.
+     *
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    public synchronized void start() throws VlcConnectionException {
+        outOfSync = true;
+        manager.clearInput(mediaName);
+        queued.clear();
+        playListIndex = 0;
+        trimmed = 0;
+        outOfSync = false;
+        advance(0);
+        LOG.debug(format("started feeding media %s with a window of %s items", mediaName, window));
+    }
+
+    private void advanceQuietly(int playListIndex) {
+        try {
+            advance(playListIndex);
+        } catch (VlcConnectionException exception) {
+            LOG.warn(format("caught exception while feeding media %s", mediaName), exception);
+        }
+    }
+
+    private synchronized void advanceQuietly(VlcInput input) {
+        try {
+            resyncIfNeeded();
+            int index = indexOf(input);
+            if (index > 0) {
+                advance(index + trimmed);
+            } else {
+                LOG.debug(format("ignoring input %s opened by media %s, which is not in its play list", input, mediaName));
+            }
+        } catch (VlcConnectionException exception) {
+            LOG.warn(format("caught exception while feeding media %s", mediaName), exception);
+        }
+    }
+
+    private void fill() throws VlcConnectionException {
+        while (queued.size() < window + 1 && (drawn != null || schedule.hasNext())) {
+            // keep item drawn from schedule until it has been added, so that it isn't lost on failure
+            if (drawn == null) {
+                drawn = schedule.next();
+            }
+            manager.addInputItem(mediaName, drawn);
+            queued.add(drawn);
+            drawn = null;
+        }
+    }
+
+    private int indexOf(VlcInput input) {
+        // prefer the item after the current one if the same input occurs several times in the play list
+        if (queued.size() > 1 && queued.get(1).equals(input)) {
+            return 2;
+        }
+        return queued.indexOf(input) + 1;
+    }
+
+    private void resyncIfNeeded() throws VlcConnectionException {
+        if (outOfSync) {
+            queued.clear();
+            queued.addAll(manager.readPlayListItems(mediaName));
+            outOfSync = false;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+/**
+ * Polls the state of media with a single <code>show</code> per round and notifies a listener whenever the state has changed. Instead of polling at a
+ * fixed rate, the interval of each media adapts to its state:
+ * <ul>
+ * <li>stopped or paused media are polled at the idle interval, playing media at the (shorter) playing interval,</li>
+ * <li>after a change has been seen, the media is polled at the minimum interval and backs off exponentially while nothing changes,</li>
+ * <li>near the end of the current item, the interval is reduced to half the remaining time, so that advances in the play list are noticed
+ * quickly.</li>
+ * </ul>
+ * All polls to the same VLC instance (host and port) share a round-trip budget and a thread, so that many media can't flood a single VLC with
+ * <code>show</code> commands and a VLC that hangs can't stall polling of other instances.
+ *
+ * @since 1.0.0
+ */
+public class VlcPollingScheduler {
+
+    public static class Builder implements org.apache.commons.lang3.builder.Builder<VlcPollingScheduler> {
+
+        private Duration minInterval = Duration.millis(250);
+        private Duration playingInterval = Duration.standardSeconds(2);
+        private Duration idleInterval = Duration.standardSeconds(10);
+        private double roundTripsPerSecond = 10;
+        private int threads = 1;
+
+        @Override
+        public VlcPollingScheduler build() {
+            return new VlcPollingScheduler(this);
+        }
+
+        public Builder idleInterval(Duration idleInterval) {
+            this.idleInterval = idleInterval;
+            return this;
+        }
+
+        public Builder minInterval(Duration minInterval) {
+            this.minInterval = minInterval;
+            return this;
+        }
+
+        public Builder playingInterval(Duration playingInterval) {
+            this.playingInterval = playingInterval;
+            return this;
+        }
+
+        public Builder roundTripsPerSecond(double roundTripsPerSecond) {
+            this.roundTripsPerSecond = roundTripsPerSecond;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+    }
+
+    /**
+     * Receives the results of polling.
+     */
+    public interface Listener {
+
+        /**
+         * Called after the first poll of a media and whenever its state has changed since the previous poll.
+         *
+         * @param manager
+         *            manager used to poll the media
+         * @param mediaName
+         *            name of polled media
+         * @param media
+         *            current state of media or <code>null</code> if it doesn't exist (anymore)
+         */
+        void mediaChanged(VlcManager manager, String mediaName, VlcMedia media);
+
+        /**
+         * Called when a poll failed. Polling continues at the idle interval.
+         *
+         * @param manager
+         *            manager used to poll the media
+         * @param mediaName
+         *            name of polled media
+         * @param exception
+         *            cause of failure
+         */
+        void pollFailed(VlcManager manager, String mediaName, VlcConnectionException exception);
+    }
+
+    private class Watch implements Runnable {
+        private final VlcManager manager;
+        private final String mediaName;
+        private final Listener listener;
+        private boolean polled;
+        private VlcMedia media;
+        private volatile long intervalMillis;
+        private volatile boolean cancelled;
+        private ScheduledFuture<?> future;
+
+        private Watch(VlcManager manager, String mediaName, Listener listener) {
+            this.manager = manager;
+            this.mediaName = mediaName;
+            this.listener = listener;
+            this.intervalMillis = minIntervalMillis;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            if (!budgetOf(manager).tryAcquire()) {
+                LOG.trace(format("round-trip budget of %s exhausted, postponing poll of media %s", endpointOf(manager), mediaName));
+                reschedule(budgetRetryMillis);
+                return;
+            }
+            // poll on the thread of the VLC instance, so that a hung instance can't stall polling of other instances
+            pollerOf(manager).execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled) {
+                        poll();
+                        reschedule(intervalMillis);
+                    }
+                }
+            });
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private void poll() {
+            try {
+                VlcMedia current = manager.readMedia(mediaName);
+                boolean changed = !polled || hasChanged(media, current);
+                polled = true;
+                media = current;
+                intervalMillis = nextIntervalMillis(current, intervalMillis, changed);
+                if (changed) {
+                    listener.mediaChanged(manager, mediaName, current);
+                }
+            } catch (VlcConnectionException exception) {
+                intervalMillis = idleIntervalMillis;
+                listener.pollFailed(manager, mediaName, exception);
+            } catch (RuntimeException exception) {
+                LOG.warn(format("caught exception while polling media %s", mediaName), exception);
+            }
+        }
+
+        private synchronized void reschedule(long delay) {
+            if (!cancelled) {
+                future = executor.schedule(this, delay, MILLISECONDS);
+            }
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcPollingScheduler.class);
+
+    private final long minIntervalMillis;
+    private final long playingIntervalMillis;
+    private final long idleIntervalMillis;
+    private final double roundTripsPerSecond;
+    private final long budgetRetryMillis;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, VlcRateLimiter> budgets;
+    private final ConcurrentMap<String, ExecutorService> pollers;
+    private final ConcurrentMap<String, Watch> watches;
+
+    private VlcPollingScheduler(Builder builder) {
+        minIntervalMillis = builder.minInterval.getMillis();
+        playingIntervalMillis = builder.playingInterval.getMillis();
+        idleIntervalMillis = builder.idleInterval.getMillis();
+        roundTripsPerSecond = builder.roundTripsPerSecond;
+        budgetRetryMillis = Math.max(1, (long) (1000 / builder.roundTripsPerSecond));
+        executor = Executors.newScheduledThreadPool(builder.threads);
+        budgets = new ConcurrentHashMap<String, VlcRateLimiter>();
+        pollers = new ConcurrentHashMap<String, ExecutorService>();
+        watches = new ConcurrentHashMap<String, Watch>();
+    }
+
+    /**
+     * @param manager
+     *            manager used to poll the media
+     * @param mediaName
+     *            name of polled media
+     * @return interval until next poll of media or <code>null</code> if the media is not watched
+     */
+    public Duration getInterval(VlcManager manager, String mediaName) {
+        Watch watch = watches.get(keyOf(manager, mediaName));
+        return watch == null ? null : Duration.millis(watch.intervalMillis);
+    }
+
+    /**
+     * Stops polling all media and releases the threads of this scheduler.
+     */
+    public void shutdown() {
+        for (Watch watch : watches.values()) {
+            watch.cancel();
+        }
+        watches.clear();
+        executor.shutdown();
+        for (ExecutorService poller : pollers.values()) {
+            poller.shutdown();
+        }
+    }
+
+    /**
+     * Stops polling a media.
+     *
+     * @param manager
+     *            manager used to poll the media
+     * @param mediaName
+     *            name of polled media
+     */
+    public void unwatch(VlcManager manager, String mediaName) {
+        Watch watch = watches.remove(keyOf(manager, mediaName));
+        if (watch != null) {
+            watch.cancel();
+            LOG.debug(format("stopped polling media %s on %s:%s", mediaName, manager.getHostname(), manager.getPort()));
+        }
+    }
+
+    /**
+     * Starts polling a media immediately. If the media is already polled, only its listener will be replaced.
+     *
+     * @param manager
+     *            manager used to poll the media
+     * @param mediaName
+     *            name of media to poll
+     * @param listener
+     *            listener to notify
+     */
+    public void watch(VlcManager manager, String mediaName, Listener listener) {
+        String key = keyOf(manager, mediaName);
+        Watch watch = new Watch(manager, mediaName, listener);
+        Watch previous = watches.put(key, watch);
+        if (previous != null) {
+            previous.cancel();
+        }
+        executor.execute(watch);
+        LOG.debug(format("started polling media %s on %s:%s", mediaName, manager.getHostname(), manager.getPort()));
+    }
+
+    /**
+     * Computes the interval until the next poll of a media.
+     *
+     * @param media
+     *            state of media seen by the last poll or <code>null</code> if it doesn't exist
+     * @param lastIntervalMillis
+     *            interval used before the last poll
+     * @param changed
+     *            whether the last poll has seen a change
+     * @return interval in milliseconds
+     */
+    long nextIntervalMillis(VlcMedia media, long lastIntervalMillis, boolean changed) {
+        VlcInstance instance = media == null || media.getInstances().isEmpty() ? null : media.getInstances().get(0);
+        boolean playing = instance != null && (instance.getState() == InstanceState.PLAYING || instance.getState() == InstanceState.OPENING);
+        long targetMillis = playing ? playingIntervalMillis : idleIntervalMillis;
+        long intervalMillis = changed ? minIntervalMillis : Math.min(targetMillis, Math.max(minIntervalMillis, lastIntervalMillis * 2));
+        if (playing && instance.getLength() != null && instance.getTime() != null && instance.getLength().getMillis() > 0) {
+            long remainingMillis = instance.getLength().getMillis() - instance.getTime().getMillis();
+            intervalMillis = Math.min(intervalMillis, Math.max(minIntervalMillis, remainingMillis / 2));
+        }
+        return intervalMillis;
+    }
+
+    private VlcRateLimiter budgetOf(VlcManager manager) {
+        String endpoint = endpointOf(manager);
+        VlcRateLimiter budget = budgets.get(endpoint);
+        if (budget == null) {
+            VlcRateLimiter newBudget = new VlcRateLimiter(roundTripsPerSecond, Math.max(1, (int) roundTripsPerSecond));
+            budget = budgets.putIfAbsent(endpoint, newBudget);
+            if (budget == null) {
+                budget = newBudget;
+            }
+        }
+        return budget;
+    }
+
+    private String endpointOf(VlcManager manager) {
+        return format("%s:%s", manager.getHostname(), manager.getPort());
+    }
+
+    private boolean hasChanged(VlcMedia previous, VlcMedia current) {
+        if (previous == null || current == null) {
+            return previous != current;
+        }
+        if (previous.isEnabed() != current.isEnabed() || previous.isLoop() != current.isLoop() || !previous.getInputs().equals(current.getInputs())) {
+            return true;
+        }
+        List<VlcInstance> previousInstances = previous.getInstances();
+        List<VlcInstance> currentInstances = current.getInstances();
+        if (previousInstances.size() != currentInstances.size()) {
+            return true;
+        }
+        for (int i = 0; i < currentInstances.size(); i++) {
+            VlcInstance previousInstance = previousInstances.get(i);
+            VlcInstance currentInstance = currentInstances.get(i);
+            if (previousInstance.getState() != currentInstance.getState()
+                    || previousInstance.getPlayListIndex() != currentInstance.getPlayListIndex()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String keyOf(VlcManager manager, String mediaName) {
+        return format("%s/%s", endpointOf(manager), mediaName);
+    }
+
+    private ExecutorService pollerOf(VlcManager manager) {
+        final String endpoint = endpointOf(manager);
+        ExecutorService poller = pollers.get(endpoint);
+        if (poller == null) {
+            ExecutorService newPoller = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, format("vlc-poller-%s", endpoint));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            poller = pollers.putIfAbsent(endpoint, newPoller);
+            if (poller == null) {
+                poller = newPoller;
+            } else {
+                newPoller.shutdown();
+            }
+        }
+        return poller;
+    }
+}
@@ -0,0 +1,91 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Token bucket that limits the rate at which commands are sent to VLC. Tokens are refilled continuously at a fixed rate up to the size of the
+ * bucket, which allows short bursts while keeping the long-term rate bounded.
+ *
+ * @since 1.0.0
+ */
+public class VlcRateLimiter {
+
+    private final double permitsPerSecond;
+    private final double burstSize;
+    private final double nanosPerPermit;
+
+    // guarded by this
+    private double availablePermits;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond
+     *            long-term rate of commands per second
+     * @param burstSize
+     *            maximum number of commands that may be sent without delay after a period of inactivity
+     */
+    public VlcRateLimiter(double permitsPerSecond, int burstSize) {
+        if (permitsPerSecond <= 0 || burstSize < 1) {
+            throw new IllegalArgumentException(format("invalid rate %s/s with burst size %s", permitsPerSecond, burstSize));
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.burstSize = burstSize;
+        this.nanosPerPermit = SECONDS.toNanos(1) / permitsPerSecond;
+        this.availablePermits = burstSize;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token from the bucket, waiting until one is available.
+     *
+     * @throws InterruptedException
+     *             when the current thread has been interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public int getBurstSize() {
+        return (int) burstSize;
+    }
+
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Takes a token from the bucket if one is available.
+     *
+     * @return <code>true</code> if a token has been taken, <code>false</code> otherwise
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (availablePermits >= 1) {
+            availablePermits--;
+            return true;
+        }
+        return false;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        availablePermits = Math.min(burstSize, availablePermits + (now - lastRefill) / nanosPerPermit);
+        lastRefill = now;
+    }
+
+    /**
+     * Takes a token, possibly in advance, so that concurrent callers are served in order of reservation.
+     *
+     * @return time in nanoseconds the caller has to wait until its token becomes available
+     */
+    private synchronized long reserve() {
+        refill();
+        availablePermits--;
+        return availablePermits >= 0 ? 0 : (long) (-availablePermits * nanosPerPermit);
+    }
+}
@@ -0,0 +1,215 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Transport that records a session to a capture file while passing everything through to another transport. Each chunk of bytes sent to VLC (one
+ * per flush, that is one per command) and each chunk received from VLC (one per read) is written with its direction and the time since the session
+ * has been opened, so that the session can be served again with its original timing by {@link VlcReplayServer}. The password is replaced by
+ * asterisks of the same length before it is written.
+ *
+ * <p>
+ * A capture file starts with the magic number {@value #MAGIC} and a format version, followed by records made of the direction (1 byte), time in
+ * nanoseconds since the session has been opened (8 bytes), length (4 bytes) and the bytes of the chunk.
+ *
+ * @since 1.0.0
+ */
+public class VlcRecordingTransport implements VlcTransport {
+
+    /**
+     * Input stream that records each chunk read.
+     */
+    private class RecordingInputStream extends InputStream {
+        private final InputStream delegate;
+
+        private RecordingInputStream(InputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return delegate.available();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = delegate.read(buffer, offset, length);
+            if (count > 0) {
+                record(RECEIVED, buffer, offset, count);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Output stream that records everything written between two flushes as a single chunk.
+     */
+    private class RecordingOutputStream extends OutputStream {
+        private final OutputStream delegate;
+        // chunk is kept in an array of its own rather than a ByteArrayOutputStream, so that the password can be wiped once it has been sent
+        private byte[] chunk = new byte[256];
+        private int chunkLength;
+        private boolean passwordSent;
+
+        private RecordingOutputStream(OutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            delegate.flush();
+            try {
+                if (!passwordSent) {
+                    // first line sent is the password
+                    int end = chunkLength > 0 && chunk[chunkLength - 1] == '\n' ? chunkLength - 1 : chunkLength;
+                    Arrays.fill(chunk, 0, end, (byte) '*');
+                    passwordSent = true;
+                }
+                if (chunkLength > 0) {
+                    record(SENT, chunk, 0, chunkLength);
+                }
+            } finally {
+                Arrays.fill(chunk, 0, chunkLength, (byte) 0);
+                chunkLength = 0;
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] buffer, int offset, int length) throws IOException {
+            delegate.write(buffer, offset, length);
+            ensureCapacity(chunkLength + length);
+            System.arraycopy(buffer, offset, chunk, chunkLength, length);
+            chunkLength += length;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            delegate.write(b);
+            ensureCapacity(chunkLength + 1);
+            chunk[chunkLength++] = (byte) b;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > chunk.length) {
+                byte[] grown = Arrays.copyOf(chunk, Math.max(capacity, chunk.length * 2));
+                Arrays.fill(chunk, (byte) 0);
+                chunk = grown;
+            }
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcRecordingTransport.class);
+
+    public static final String MAGIC = "VLCCAP";
+
+    static final int VERSION = 1;
+    static final byte SENT = 0;
+    static final byte RECEIVED = 1;
+
+    private final VlcTransport delegate;
+    private final File captureFile;
+
+    private DataOutputStream capture;
+    private long openedAt;
+    private InputStream inputStream;
+    private OutputStream outputStream;
+
+    /**
+     * @param delegate
+     *            transport used to talk to VLC
+     * @param captureFile
+     *            file to record session to (replaced each time a session is opened)
+     */
+    public VlcRecordingTransport(VlcTransport delegate, File captureFile) {
+        this.delegate = delegate;
+        this.captureFile = captureFile;
+    }
+
+    /**
+     * @return always <code>false</code>, so that all commands are recorded in the session and can be replayed
+     */
+    @Override
+    public boolean canQuery() {
+        return false;
+    }
+
+    @Override
+    public synchronized void connect(String hostname, int port) throws IOException {
+        delegate.connect(hostname, port);
+        capture = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(captureFile)));
+        capture.writeBytes(MAGIC);
+        capture.writeInt(VERSION);
+        openedAt = System.nanoTime();
+        inputStream = new RecordingInputStream(delegate.getInputStream());
+        outputStream = new RecordingOutputStream(delegate.getOutputStream());
+        LOG.debug(format("recording session with %s:%s to %s", hostname, port, captureFile));
+    }
+
+    @Override
+    public synchronized void disconnect() throws IOException {
+        try {
+            delegate.disconnect();
+        } finally {
+            if (capture != null) {
+                capture.close();
+                capture = null;
+            }
+        }
+    }
+
+    public File getCaptureFile() {
+        return captureFile;
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return delegate.isConnected();
+    }
+
+    @Override
+    public String query(String command) {
+        throw new UnsupportedOperationException("queries outside of the session can't be recorded");
+    }
+
+    private synchronized void record(byte direction, byte[] buffer, int offset, int length) throws IOException {
+        if (capture == null) {
+            return;
+        }
+        capture.writeByte(direction);
+        capture.writeLong(System.nanoTime() - openedAt);
+        capture.writeInt(length);
+        capture.write(buffer, offset, length);
+        if (direction == SENT) {
+            // make sure a capture of a session that hangs contains the last command
+            capture.flush();
+        }
+    }
+}
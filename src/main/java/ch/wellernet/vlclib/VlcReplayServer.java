@@ -0,0 +1,218 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.VlcRecordingTransport.MAGIC;
+import static ch.wellernet.vlclib.VlcRecordingTransport.SENT;
+import static ch.wellernet.vlclib.VlcRecordingTransport.VERSION;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Server that plays the VLC side of a session recorded by {@link VlcRecordingTransport}, so that a {@link VlcManager} connected to it (with the
+ * default telnet transport) receives exactly the responses VLC has sent. Each response is delayed relative to the moment the command preceding it
+ * has been received as much as it was in the recorded session, divided by a speed factor. The commands of the client are only counted (by lines),
+ * not compared with the recorded ones.
+ *
+ * <p>
+ * Connections are served one after another, each of them replaying the whole capture.
+ *
+ * @since 1.0.0
+ */
+public class VlcReplayServer {
+
+    /**
+     * Chunk of bytes recorded in a capture file.
+     */
+    private static class Record {
+        private final byte direction;
+        private final long time;
+        private final byte[] bytes;
+
+        private Record(byte direction, long time, byte[] bytes) {
+            this.direction = direction;
+            this.time = time;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcReplayServer.class);
+
+    private final List<Record> records;
+    private final double speed;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+
+    /**
+     * Loads a capture and starts a server replaying it on a given address.
+     *
+     * @param address
+     *            address to listen on (port 0 to pick a free port)
+     * @param captureFile
+     *            file written by {@link VlcRecordingTransport}
+     * @param speed
+     *            factor to speed up replay by (1 for original timing, {@link Double#POSITIVE_INFINITY} for no delays at all)
+     * @throws IOException
+     *             when the capture can't be read or the server can't be bound to the address
+     */
+    public VlcReplayServer(InetSocketAddress address, File captureFile, double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException(format("speed must be positive but was %s", speed));
+        }
+        this.records = load(captureFile);
+        this.speed = speed;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "vlc-replay-server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        });
+        LOG.debug(format("replaying %s records of %s on %s", records.size(), captureFile, serverSocket.getLocalSocketAddress()));
+    }
+
+    /**
+     * @return address the server is listening on
+     */
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Stops the server. A session being replayed is aborted.
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException exception) {
+            LOG.warn("caught exception while closing replay server", exception);
+        }
+        executor.shutdownNow();
+    }
+
+    private List<Record> load(File captureFile) throws IOException {
+        List<Record> records = new ArrayList<Record>();
+        DataInputStream capture = new DataInputStream(new BufferedInputStream(new FileInputStream(captureFile)));
+        try {
+            byte[] magic = new byte[MAGIC.length()];
+            capture.readFully(magic);
+            int version = capture.readInt();
+            if (!MAGIC.equals(new String(magic, US_ASCII)) || version != VERSION) {
+                throw new IOException(format("%s is not a capture of version %s", captureFile, VERSION));
+            }
+            while (true) {
+                byte direction;
+                try {
+                    direction = capture.readByte();
+                } catch (EOFException exception) {
+                    break;
+                }
+                long time = capture.readLong();
+                byte[] bytes = new byte[capture.readInt()];
+                capture.readFully(bytes);
+                records.add(new Record(direction, time, bytes));
+            }
+        } finally {
+            capture.close();
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    private void readCommand(InputStream in, byte[] recorded) throws IOException {
+        int lines = 0;
+        for (byte b : recorded) {
+            lines += b == '\n' ? 1 : 0;
+        }
+        // without a line feed (partial write), consume as many bytes as recorded
+        int remaining = lines > 0 ? lines : recorded.length;
+        while (remaining > 0) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("client closed connection before end of capture");
+            }
+            if (lines == 0 || b == '\n') {
+                remaining--;
+            }
+        }
+    }
+
+    private void replay(Socket client) throws IOException, InterruptedException {
+        InputStream in = client.getInputStream();
+        OutputStream out = client.getOutputStream();
+        long anchorTime = 0;
+        long anchorNanos = System.nanoTime();
+        for (Record record : records) {
+            if (record.direction == SENT) {
+                readCommand(in, record.bytes);
+                anchorTime = record.time;
+                anchorNanos = System.nanoTime();
+            } else {
+                long delay = (long) ((record.time - anchorTime) / speed) - (System.nanoTime() - anchorNanos);
+                if (delay > 0) {
+                    NANOSECONDS.sleep(delay);
+                }
+                out.write(record.bytes);
+                out.flush();
+            }
+        }
+    }
+
+    private void serve() {
+        while (!serverSocket.isClosed()) {
+            Socket client = null;
+            try {
+                client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                replay(client);
+                LOG.debug(format("replayed capture to %s", client.getRemoteSocketAddress()));
+            } catch (SocketException exception) {
+                if (!serverSocket.isClosed()) {
+                    LOG.warn("caught exception while replaying capture", exception);
+                }
+            } catch (IOException exception) {
+                LOG.warn("caught exception while replaying capture", exception);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (client != null) {
+                    try {
+                        client.close();
+                    } catch (IOException exception) {
+                        LOG.debug("caught exception while closing replayed connection", exception);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ch.wellernet.vlclib;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Byte-oriented ring buffer for responses received from VLC. Bytes are read directly into the ring and searched for prompt sequences without being
+ * decoded. Only complete frames (everything up to and including a prompt) are decoded with an explicit UTF-8 decoder, so that multi-byte characters
+ * are never split and no intermediary strings are created. The ring grows if a single frame doesn't fit into it.
+ *
+ * @since 1.0.0
+ */
+class VlcResponseBuffer {
+
+    static final byte[] NORMAL_PROMPT_SUFFIX = "\n> ".getBytes(UTF_8);
+    static final byte[] PASSWORD_PROMPT_SUFFIX = "\nPassword: ".getBytes(UTF_8);
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private final CharsetDecoder decoder;
+
+    private byte[] ring;
+    private byte[] scratch = new byte[0];
+    private int mask;
+    private long readIndex;
+    private long writeIndex;
+    private long scanIndex;
+
+    VlcResponseBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    VlcResponseBuffer(int capacity) {
+        ring = new byte[Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1];
+        mask = ring.length - 1;
+        decoder = UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * @return number of bytes currently buffered
+     */
+    int available() {
+        return (int) (writeIndex - readIndex);
+    }
+
+    /**
+     * Discards all buffered bytes.
+     */
+    void clear() {
+        readIndex = writeIndex;
+        scanIndex = writeIndex;
+    }
+
+    /**
+     * Decodes a given number of bytes from the start of the buffer without removing them.
+     *
+     * @param length
+     *            number of bytes to decode
+     * @return decoded characters
+     */
+    CharBuffer decode(int length) {
+        CharBuffer frame = CharBuffer.allocate((int) (length * (double) decoder.maxCharsPerByte()));
+        decoder.reset();
+        int start = (int) (readIndex & mask);
+        int firstPart = Math.min(length, ring.length - start);
+        if (firstPart == length) {
+            decoder.decode(ByteBuffer.wrap(ring, start, length), frame, true);
+        } else {
+            // decode a frame wrapping the end of the ring from a contiguous copy, so that characters split at the end are decoded as a whole
+            if (scratch.length < length) {
+                scratch = new byte[ring.length];
+            }
+            System.arraycopy(ring, start, scratch, 0, firstPart);
+            System.arraycopy(ring, 0, scratch, firstPart, length - firstPart);
+            decoder.decode(ByteBuffer.wrap(scratch, 0, length), frame, true);
+        }
+        decoder.flush(frame);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Reads as many bytes as available (but at least one) from a stream into the free space of the ring.
+     *
+     * @param inputStream
+     *            stream to read from
+     * @return number of bytes read or -1 if end of stream has been reached
+     * @throws IOException
+     *             when reading fails
+     */
+    int fill(InputStream inputStream) throws IOException {
+        if (available() == ring.length) {
+            grow();
+        }
+        int start = (int) (writeIndex & mask);
+        int free = ring.length - available();
+        int length = inputStream.read(ring, start, Math.min(free, ring.length - start));
+        if (length > 0) {
+            writeIndex += length;
+        }
+        return length;
+    }
+
+    /**
+     * Searches for the next occurrence of any of the given byte sequences that hasn't been searched for before.
+     *
+     * @param suffixes
+     *            byte sequences to search
+     * @return number of bytes from start of buffer until and including the found sequence or -1 if not found yet
+     */
+    int nextFrameLength(byte[]... suffixes) {
+        for (long end = Math.max(scanIndex, readIndex) + 1; end <= writeIndex; end++) {
+            for (byte[] suffix : suffixes) {
+                if (endsWith(end, suffix)) {
+                    scanIndex = end;
+                    return (int) (end - readIndex);
+                }
+            }
+        }
+        // a sequence ending after current end can only be completed by bytes that will be read later
+        scanIndex = writeIndex;
+        return -1;
+    }
+
+    /**
+     * Removes a given number of bytes from the start of the buffer.
+     *
+     * @param length
+     *            number of bytes to remove
+     */
+    void skip(int length) {
+        readIndex += length;
+        scanIndex = Math.max(scanIndex, readIndex);
+    }
+
+    private boolean endsWith(long end, byte[] suffix) {
+        if (end - suffix.length < readIndex) {
+            return false;
+        }
+        for (int i = 0; i < suffix.length; i++) {
+            if (ring[(int) (end - suffix.length + i & mask)] != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        byte[] grown = new byte[ring.length << 1];
+        int length = available();
+        for (int i = 0; i < length; i++) {
+            grown[i] = ring[(int) (readIndex + i & mask)];
+        }
+        scanIndex -= readIndex;
+        writeIndex = length;
+        readIndex = 0;
+        ring = grown;
+        mask = ring.length - 1;
+    }
+}
@@ -0,0 +1,214 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.Float.parseFloat;
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.joda.time.Duration;
+
+/**
+ * Parser for responses of VLC's <code>show</code> command. VLC prints its state as a tree, where the indentation of a line determines its parent
+ * and each line is either a plain name or a <code>name : value</code> pair.
+ *
+ * @since 1.0.0
+ */
+class VlcShowParser {
+
+    static class Node {
+        private final String name;
+        private final String value;
+        private final int indentation;
+        private final List<Node> children;
+
+        private Node(String name, String value, int indentation) {
+            this.name = name;
+            this.value = value;
+            this.indentation = indentation;
+            this.children = new ArrayList<Node>();
+        }
+
+        /**
+         * @param childName
+         *            name of child
+         * @return first direct child with given name or <code>null</code> if there is none
+         */
+        Node child(String childName) {
+            for (Node child : children) {
+                if (child.name.equals(childName)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param descendantName
+         *            name of descendant
+         * @return first descendant with given name in depth-first order or <code>null</code> if there is none
+         */
+        Node find(String descendantName) {
+            for (Node child : children) {
+                Node found = child.name.equals(descendantName) ? child : child.find(descendantName);
+                if (found != null) {
+                    return found;
+                }
+            }
+            return null;
+        }
+
+        List<Node> getChildren() {
+            return children;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        /**
+         * @param childName
+         *            name of child
+         * @return value of first direct child with given name or <code>null</code> if there is none
+         */
+        String value(String childName) {
+            Node child = child(childName);
+            return child == null ? null : child.value;
+        }
+    }
+
+    private static final String SEPARATOR = " : ";
+
+    private VlcShowParser() {
+    }
+
+    /**
+     * Parses the response of a <code>show</code> command into a tree. The prompt and empty lines are ignored.
+     *
+     * @param response
+     *            complete response of VLC
+     * @return root node, whose children are the top level lines of the response
+     */
+    static Node parse(CharSequence response) {
+        Node root = new Node("", null, -1);
+        Deque<Node> path = new ArrayDeque<Node>();
+        path.push(root);
+        for (String line : response.toString().split("\r?\n")) {
+            int indentation = 0;
+            while (indentation < line.length() && line.charAt(indentation) == ' ') {
+                indentation++;
+            }
+            String text = line.substring(indentation).trim();
+            if (text.isEmpty() || indentation == 0 && text.startsWith(">")) {
+                continue;
+            }
+            while (path.peek().indentation >= indentation) {
+                path.pop();
+            }
+            Node node;
+            int separator = text.indexOf(SEPARATOR);
+            if (separator >= 0) {
+                node = new Node(text.substring(0, separator), text.substring(separator + SEPARATOR.length()), indentation);
+            } else if (text.endsWith(SEPARATOR.trim())) {
+                // values may be empty, in which case the trailing space has been trimmed
+                node = new Node(text.substring(0, text.length() - 1).trim(), "", indentation);
+            } else {
+                node = new Node(text, null, indentation);
+            }
+            path.peek().children.add(node);
+            path.push(node);
+        }
+        return root;
+    }
+
+    /**
+     * Parses all media listed in the response of a bare <code>show</code> command.
+     *
+     * @param response
+     *            complete response of VLC
+     * @return all media with their inputs, output, options and instances
+     */
+    static List<VlcMedia> parseMedia(CharSequence response) {
+        List<VlcMedia> media = new ArrayList<VlcMedia>();
+        Node mediaNode = parse(response).find("media");
+        if (mediaNode != null) {
+            for (Node node : mediaNode.children) {
+                media.add(toMedia(node));
+            }
+        }
+        return media;
+    }
+
+    /**
+     * Parses the media shown in the response of a <code>show</code> command for a single media.
+     *
+     * @param response
+     *            complete response of VLC
+     * @return the media with its inputs, output, options and instances or <code>null</code> if response doesn't contain a media
+     */
+    static VlcMedia parseSingleMedia(CharSequence response) {
+        Node show = parse(response).child("show");
+        return show == null || show.children.isEmpty() ? null : toMedia(show.children.get(0));
+    }
+
+    private static boolean isYes(String value) {
+        return "yes".equals(value);
+    }
+
+    private static Duration toDuration(String value) {
+        return value == null ? null : new Duration(parseLong(value));
+    }
+
+    private static float toFloat(String value, float defaultValue) {
+        return value == null ? defaultValue : parseFloat(value);
+    }
+
+    private static VlcInstance toInstance(Node node) {
+        String playListIndex = node.value("playlistindex");
+        return new VlcInstance(node.value("name"), InstanceState.fromValue(node.value("state")), toFloat(node.value("position"), -1),
+                toDuration(node.value("time")), toDuration(node.value("length")), toFloat(node.value("rate"), 0),
+                playListIndex == null ? -1 : parseInt(playListIndex));
+    }
+
+    private static VlcMedia toMedia(Node node) {
+        MediaType type = null;
+        for (MediaType candidate : MediaType.values()) {
+            if (candidate.value().equals(node.value("type"))) {
+                type = candidate;
+            }
+        }
+        List<VlcInput> inputs = new ArrayList<VlcInput>();
+        Node inputsNode = node.child("inputs");
+        if (inputsNode != null) {
+            for (Node input : inputsNode.children) {
+                inputs.add(new VlcInput(input.value));
+            }
+        }
+        String output = node.value("output");
+        List<VlcOption> options = new ArrayList<VlcOption>();
+        Node optionsNode = node.child("options");
+        if (optionsNode != null) {
+            for (Node option : optionsNode.children) {
+                int equals = option.name.indexOf('=');
+                options.add(equals < 0 ? new VlcOption(option.name)
+                        : new VlcOption(option.name.substring(0, equals), option.name.substring(equals + 1)));
+            }
+        }
+        List<VlcInstance> instances = new ArrayList<VlcInstance>();
+        Node instancesNode = node.child("instances");
+        if (instancesNode != null) {
+            for (Node instance : instancesNode.children) {
+                instances.add(toInstance(instance));
+            }
+        }
+        return new VlcMedia(node.name, type, isYes(node.value("enabled")), isYes(node.value("loop")), inputs, output == null ? null
+                : VlcOutput.parse(output), options, instances);
+    }
+}
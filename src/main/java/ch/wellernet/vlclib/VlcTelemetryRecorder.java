@@ -0,0 +1,405 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+/**
+ * Records the playback state (state, position, time, rate and play list index) of media at a fixed rate to detect stalls and drift. Each recorded
+ * media gets a preallocated ring of samples outside the heap, so that the memory used is fixed and hours of history don't put any load on the garbage
+ * collector. The state is read with <code>show</code> (see {@link VlcManager#readMedia(String)}), so that samples share round trips with other
+ * readers of the same media. Samples are read on a thread per VLC instance, so that a hung instance only misses its own samples. Queries scan the
+ * samples of a time window backwards from the latest sample.
+ *
+ * @since 1.0.0
+ */
+public class VlcTelemetryRecorder {
+
+    public static class Builder implements org.apache.commons.lang3.builder.Builder<VlcTelemetryRecorder> {
+
+        private Duration interval = Duration.standardSeconds(1);
+        private int capacity = 3600;
+        private int threads = 1;
+
+        @Override
+        public VlcTelemetryRecorder build() {
+            return new VlcTelemetryRecorder(this);
+        }
+
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder interval(Duration interval) {
+            this.interval = interval;
+            return this;
+        }
+
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+    }
+
+    /**
+     * Ring of samples of a single media. Samples are written by a single thread at a time and published by incrementing the sample count, readers
+     * discard samples that may have been overwritten while reading them.
+     */
+    private class Channel implements Runnable {
+        private final VlcManager manager;
+        private final String mediaName;
+        private final ByteBuffer samples;
+        private volatile long count;
+        private ScheduledFuture<?> future;
+        private Future<?> pendingSample;
+
+        private Channel(VlcManager manager, String mediaName) {
+            this.manager = manager;
+            this.mediaName = mediaName;
+            this.samples = ByteBuffer.allocateDirect(capacity * SAMPLE_SIZE);
+        }
+
+        @Override
+        public synchronized void run() {
+            if (pendingSample != null && !pendingSample.isDone()) {
+                LOG.trace(format("previous sample of media %s on %s still pending, skipping sample", mediaName, endpointOf(manager)));
+                return;
+            }
+            pendingSample = samplerOf(manager).submit(new Runnable() {
+                @Override
+                public void run() {
+                    sample();
+                }
+            });
+        }
+
+        private synchronized void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        private synchronized void record(long timestamp, VlcMedia media) {
+            VlcInstance instance = media == null || media.getInstances().isEmpty() ? null : media.getInstances().get(0);
+            int offset = (int) (count % capacity) * SAMPLE_SIZE;
+            samples.putLong(offset + TIMESTAMP_OFFSET, timestamp);
+            samples.putLong(offset + TIME_OFFSET, instance == null || instance.getTime() == null ? -1 : instance.getTime().getMillis());
+            samples.putFloat(offset + POSITION_OFFSET, instance == null ? -1 : instance.getPosition());
+            samples.putFloat(offset + RATE_OFFSET, instance == null ? 0 : instance.getRate());
+            samples.putInt(offset + PLAY_LIST_INDEX_OFFSET, instance == null ? -1 : instance.getPlayListIndex());
+            samples.putInt(offset + STATE_OFFSET, instance == null || instance.getState() == null ? NO_INSTANCE : instance.getState().ordinal());
+            count++;
+        }
+
+        private void sample() {
+            try {
+                record(System.currentTimeMillis(), manager.readMedia(mediaName));
+            } catch (VlcConnectionException exception) {
+                LOG.debug(format("caught exception while sampling media %s", mediaName), exception);
+            } catch (RuntimeException exception) {
+                LOG.warn(format("caught exception while sampling media %s", mediaName), exception);
+            }
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcTelemetryRecorder.class);
+
+    // sample layout: wall clock time of sample, time within item (ms), position, rate, play list index, state of first instance
+    private static final int SAMPLE_SIZE = 32;
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int TIME_OFFSET = 8;
+    private static final int POSITION_OFFSET = 16;
+    private static final int RATE_OFFSET = 20;
+    private static final int PLAY_LIST_INDEX_OFFSET = 24;
+    private static final int STATE_OFFSET = 28;
+    private static final int NO_INSTANCE = -1;
+
+    private final long intervalMillis;
+    private final int capacity;
+    private final ScheduledExecutorService executor;
+    private final ConcurrentMap<String, Channel> channels;
+    private final ConcurrentMap<String, ExecutorService> samplers;
+
+    private VlcTelemetryRecorder(Builder builder) {
+        intervalMillis = builder.interval.getMillis();
+        capacity = builder.capacity;
+        executor = Executors.newScheduledThreadPool(builder.threads);
+        channels = new ConcurrentHashMap<String, Channel>();
+        samplers = new ConcurrentHashMap<String, ExecutorService>();
+    }
+
+    /**
+     * Computes the drift of a playing media within a time window: how far the time within the played item has advanced more (positive) or less
+     * (negative) than the wall clock time between the first and the last sample of the window. Only samples of the same item are considered.
+     *
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of sampled media
+     * @param window
+     *            time window before the latest sample
+     * @return drift or <code>null</code> if there are less than two samples of the latest item in the window
+     */
+    public Duration getDrift(VlcManager manager, String mediaName, Duration window) {
+        Channel channel = channels.get(keyOf(manager, mediaName));
+        if (channel == null) {
+            return null;
+        }
+        long end = channel.count;
+        long latest = end - 1;
+        long first = -1;
+        if (latest < 0) {
+            return null;
+        }
+        int latestOffset = offsetOf(latest);
+        long windowStart = channel.samples.getLong(latestOffset + TIMESTAMP_OFFSET) - window.getMillis();
+        int playListIndex = channel.samples.getInt(latestOffset + PLAY_LIST_INDEX_OFFSET);
+        for (long sequence = latest - 1; sequence >= Math.max(0, end - capacity + 1); sequence--) {
+            int offset = offsetOf(sequence);
+            if (channel.samples.getLong(offset + TIMESTAMP_OFFSET) < windowStart
+                    || channel.samples.getInt(offset + PLAY_LIST_INDEX_OFFSET) != playListIndex
+                    || channel.samples.getLong(offset + TIME_OFFSET) < 0) {
+                break;
+            }
+            first = sequence;
+        }
+        if (first < 0 || channel.samples.getLong(latestOffset + TIME_OFFSET) < 0) {
+            return null;
+        }
+        int firstOffset = offsetOf(first);
+        long mediaElapsed = channel.samples.getLong(latestOffset + TIME_OFFSET) - channel.samples.getLong(firstOffset + TIME_OFFSET);
+        long wallElapsed = channel.samples.getLong(latestOffset + TIMESTAMP_OFFSET) - channel.samples.getLong(firstOffset + TIMESTAMP_OFFSET);
+        return isValid(first, channel.count) ? new Duration(mediaElapsed - wallElapsed) : null;
+    }
+
+    /**
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of sampled media
+     * @return number of samples currently kept for media (at most the capacity)
+     */
+    public int getSampleCount(VlcManager manager, String mediaName) {
+        Channel channel = channels.get(keyOf(manager, mediaName));
+        return channel == null ? 0 : (int) Math.min(channel.count, capacity);
+    }
+
+    /**
+     * Computes how long a media has been stalled: playing (or opening) without its time advancing, up to the latest sample.
+     *
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of sampled media
+     * @return time between the first and the latest sample of the stall or {@link Duration#ZERO} if the media is not stalled
+     */
+    public Duration getStalledDuration(VlcManager manager, String mediaName) {
+        Channel channel = channels.get(keyOf(manager, mediaName));
+        if (channel == null) {
+            return Duration.ZERO;
+        }
+        long end = channel.count;
+        long latest = end - 1;
+        if (latest < 0 || !isPlaying(channel, offsetOf(latest))) {
+            return Duration.ZERO;
+        }
+        int latestOffset = offsetOf(latest);
+        long time = channel.samples.getLong(latestOffset + TIME_OFFSET);
+        int playListIndex = channel.samples.getInt(latestOffset + PLAY_LIST_INDEX_OFFSET);
+        long stallStart = latest;
+        for (long sequence = latest - 1; sequence >= Math.max(0, end - capacity + 1); sequence--) {
+            int offset = offsetOf(sequence);
+            if (!isPlaying(channel, offset) || channel.samples.getLong(offset + TIME_OFFSET) != time
+                    || channel.samples.getInt(offset + PLAY_LIST_INDEX_OFFSET) != playListIndex) {
+                break;
+            }
+            stallStart = sequence;
+        }
+        long stalledMillis = channel.samples.getLong(latestOffset + TIMESTAMP_OFFSET)
+                - channel.samples.getLong(offsetOf(stallStart) + TIMESTAMP_OFFSET);
+        return isValid(stallStart, channel.count) ? new Duration(stalledMillis) : Duration.ZERO;
+    }
+
+    /**
+     * Checks whether a playing media has been played at another rate than a given one at any time within a time window.
+     *
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of sampled media
+     * @param rate
+     *            expected rate (usually 1)
+     * @param window
+     *            time window before the latest sample
+     * @return <code>true</code> if at least one sample in the window shows the media playing at another rate
+     */
+    public boolean hasRateOtherThan(VlcManager manager, String mediaName, float rate, Duration window) {
+        Channel channel = channels.get(keyOf(manager, mediaName));
+        if (channel == null) {
+            return false;
+        }
+        long end = channel.count;
+        if (end == 0) {
+            return false;
+        }
+        long windowStart = channel.samples.getLong(offsetOf(end - 1) + TIMESTAMP_OFFSET) - window.getMillis();
+        for (long sequence = end - 1; sequence >= Math.max(0, end - capacity + 1); sequence--) {
+            int offset = offsetOf(sequence);
+            if (channel.samples.getLong(offset + TIMESTAMP_OFFSET) < windowStart) {
+                break;
+            }
+            if (isPlaying(channel, offset) && channel.samples.getFloat(offset + RATE_OFFSET) != rate && isValid(sequence, channel.count)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of sampled media
+     * @param threshold
+     *            minimum duration of stall
+     * @return <code>true</code> if the media has been stalled for at least the given duration (see {@link #getStalledDuration(VlcManager, String)})
+     */
+    public boolean isStalled(VlcManager manager, String mediaName, Duration threshold) {
+        return getStalledDuration(manager, mediaName).getMillis() >= threshold.getMillis();
+    }
+
+    /**
+     * Starts sampling a media. If the media is already sampled, its samples are discarded.
+     *
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of media to sample
+     */
+    public void record(VlcManager manager, String mediaName) {
+        Channel channel = add(manager, mediaName);
+        synchronized (channel) {
+            channel.future = executor.scheduleAtFixedRate(channel, 0, intervalMillis, MILLISECONDS);
+        }
+        LOG.debug(format("started recording telemetry of media %s on %s:%s", mediaName, manager.getHostname(), manager.getPort()));
+    }
+
+    /**
+     * Stops sampling all media and releases the threads of this recorder.
+     */
+    public void shutdown() {
+        for (Channel channel : channels.values()) {
+            channel.cancel();
+        }
+        channels.clear();
+        executor.shutdown();
+        for (ExecutorService sampler : samplers.values()) {
+            sampler.shutdown();
+        }
+    }
+
+    /**
+     * Stops sampling a media and discards its samples.
+     *
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of sampled media
+     */
+    public void stop(VlcManager manager, String mediaName) {
+        Channel channel = channels.remove(keyOf(manager, mediaName));
+        if (channel != null) {
+            channel.cancel();
+            LOG.debug(format("stopped recording telemetry of media %s on %s:%s", mediaName, manager.getHostname(), manager.getPort()));
+        }
+    }
+
+    /**
+     * Records a sample of a media which is not sampled automatically.
+     *
+     * @param manager
+     *            manager used to sample the media
+     * @param mediaName
+     *            name of sampled media
+     * @param timestamp
+     *            wall clock time of sample in milliseconds since the epoch
+     * @param media
+     *            state of media or <code>null</code> if it doesn't exist
+     */
+    void record(VlcManager manager, String mediaName, long timestamp, VlcMedia media) {
+        Channel channel = channels.get(keyOf(manager, mediaName));
+        if (channel == null) {
+            channel = add(manager, mediaName);
+        }
+        channel.record(timestamp, media);
+    }
+
+    private Channel add(VlcManager manager, String mediaName) {
+        Channel channel = new Channel(manager, mediaName);
+        Channel previous = channels.put(keyOf(manager, mediaName), channel);
+        if (previous != null) {
+            previous.cancel();
+        }
+        return channel;
+    }
+
+    private String endpointOf(VlcManager manager) {
+        return format("%s:%s", manager.getHostname(), manager.getPort());
+    }
+
+    private boolean isPlaying(Channel channel, int offset) {
+        int state = channel.samples.getInt(offset + STATE_OFFSET);
+        return state == InstanceState.PLAYING.ordinal() || state == InstanceState.OPENING.ordinal();
+    }
+
+    /**
+     * @return <code>false</code> if the sample may have been overwritten while it was read (the slot of the oldest sample is the one written next)
+     */
+    private boolean isValid(long sequence, long count) {
+        return sequence > count - capacity;
+    }
+
+    private String keyOf(VlcManager manager, String mediaName) {
+        return format("%s/%s", endpointOf(manager), mediaName);
+    }
+
+    private int offsetOf(long sequence) {
+        return (int) (sequence % capacity) * SAMPLE_SIZE;
+    }
+
+    private ExecutorService samplerOf(VlcManager manager) {
+        final String endpoint = endpointOf(manager);
+        ExecutorService sampler = samplers.get(endpoint);
+        if (sampler == null) {
+            ExecutorService newSampler = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, format("vlc-sampler-%s", endpoint));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sampler = samplers.putIfAbsent(endpoint, newSampler);
+            if (sampler == null) {
+                sampler = newSampler;
+            } else {
+                newSampler.shutdown();
+            }
+        }
+        return sampler;
+    }
+}
@@ -0,0 +1,60 @@
+package ch.wellernet.vlclib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.net.telnet.TelnetClient;
+
+/**
+ * Transport for VLC's telnet interface (enabled with <code>--extraintf telnet</code>).
+ *
+ * @since 1.0.0
+ */
+public class VlcTelnetTransport implements VlcTransport {
+
+    private final TelnetClient telnetClient;
+
+    public VlcTelnetTransport() {
+        telnetClient = new TelnetClient();
+        telnetClient.setReaderThread(true);
+    }
+
+    /**
+     * @return always <code>false</code>, the telnet interface only executes commands within the session
+     */
+    @Override
+    public boolean canQuery() {
+        return false;
+    }
+
+    @Override
+    public void connect(String hostname, int port) throws IOException {
+        telnetClient.connect(hostname, port);
+    }
+
+    @Override
+    public void disconnect() throws IOException {
+        telnetClient.disconnect();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return telnetClient.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return telnetClient.getOutputStream();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return telnetClient.isConnected();
+    }
+
+    @Override
+    public String query(String command) {
+        throw new UnsupportedOperationException("the telnet interface only executes commands within the session");
+    }
+}
@@ -0,0 +1,200 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static org.apache.commons.lang3.StringEscapeUtils.escapeCsv;
+import static org.apache.commons.lang3.StringEscapeUtils.escapeJson;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the timing of each command on the wire: when it has been submitted, dispatched to the session, written to the socket, when the first byte
+ * of the response and the prompt have been received and when the response has been parsed. Records are kept in a preallocated ring, which is written
+ * without locks and overwrites the oldest records once full, and can be dumped on demand as CSV or in Chrome's trace event format (to be loaded in
+ * <code>chrome://tracing</code>). Recording is opt-in: as long as no recorder is set on a {@link VlcManager}, no timestamps are taken at all.
+ *
+ * @since 1.0.0
+ */
+public class VlcTraceRecorder {
+
+    public enum Stage {
+        SUBMITTED, DISPATCHED, WRITTEN, FIRST_BYTE, PROMPT, PARSED
+    }
+
+    private static final int STAGES = Stage.values().length;
+    private static final String[] PHASES = { "queueing", "write", "first byte", "receive", "parse" };
+    private static final long IN_PROGRESS = -1;
+    private static final String CHROME_TRACE_EVENT = ""
+            + "{\"name\":\"%s\",\"cat\":\"%s\",\"ph\":\"X\",\"pid\":1,\"tid\":1,\"ts\":%.3f,\"dur\":%.3f,\"args\":{\"sequence\":%s}}";
+
+    private final int mask;
+    private final long[] timestamps;
+    private final String[] commands;
+    // sequence of record each slot holds once it's complete, IN_PROGRESS while being written
+    private final AtomicLongArray published;
+    private final AtomicLong nextSequence;
+
+    /**
+     * @param capacity
+     *            number of records to keep (rounded up to next power of two)
+     */
+    public VlcTraceRecorder(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        mask = size - 1;
+        timestamps = new long[size * STAGES];
+        commands = new String[size];
+        published = new AtomicLongArray(size);
+        for (int slot = 0; slot < size; slot++) {
+            published.set(slot, IN_PROGRESS);
+        }
+        nextSequence = new AtomicLong();
+    }
+
+    /**
+     * Writes all complete records, oldest first, as comma separated values. Each line contains the command, its submission time and the duration
+     * of each phase in microseconds, which is empty if the phase has not been recorded.
+     *
+     * @param out
+     *            where to write to
+     * @throws IOException
+     *             when writing fails
+     */
+    public void dumpCsv(Appendable out) throws IOException {
+        out.append("sequence,command,submitted_ns,queueing_us,write_us,first_byte_us,receive_us,parse_us\n");
+        long[] record = new long[STAGES];
+        long end = nextSequence.get();
+        for (long sequence = Math.max(0, end - commands.length); sequence < end; sequence++) {
+            String command = read(sequence, record);
+            if (command == null) {
+                continue;
+            }
+            out.append(Long.toString(sequence)).append(',').append(escapeCsv(command)).append(',').append(Long.toString(record[0]));
+            for (int stage = 1; stage < STAGES; stage++) {
+                out.append(',');
+                if (record[stage] != 0 && record[stage - 1] != 0) {
+                    out.append(format(Locale.ROOT, "%.3f", (record[stage] - record[stage - 1]) / 1000d));
+                }
+            }
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Writes all complete records in Chrome's trace event format, where each phase of a command is a complete event.
+     *
+     * @param out
+     *            where to write to
+     * @throws IOException
+     *             when writing fails
+     */
+    public void dumpChromeTrace(Appendable out) throws IOException {
+        out.append("{\"traceEvents\":[");
+        long[] record = new long[STAGES];
+        long end = nextSequence.get();
+        boolean first = true;
+        for (long sequence = Math.max(0, end - commands.length); sequence < end; sequence++) {
+            String command = read(sequence, record);
+            if (command == null) {
+                continue;
+            }
+            for (int stage = 1; stage < STAGES; stage++) {
+                if (record[stage] == 0 || record[stage - 1] == 0) {
+                    continue;
+                }
+                out.append(first ? "\n" : ",\n");
+                first = false;
+                out.append(format(Locale.ROOT, CHROME_TRACE_EVENT, escapeJson(command), PHASES[stage - 1], record[stage - 1] / 1000d,
+                        (record[stage] - record[stage - 1]) / 1000d, sequence));
+            }
+        }
+        out.append("\n]}\n");
+    }
+
+    public int getCapacity() {
+        return commands.length;
+    }
+
+    /**
+     * @return number of records started since this recorder has been created, including those that have already been overwritten
+     */
+    public long getRecordedCount() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Starts a new record for a command that has just been dispatched.
+     *
+     * @param command
+     *            command being traced
+     * @param submittedAt
+     *            time in nanoseconds (see {@link System#nanoTime()}) when the command has been submitted
+     * @return sequence of the new record to be passed to {@link #mark(long, Stage)} and {@link #end(long)}
+     */
+    long begin(String command, long submittedAt) {
+        long sequence = nextSequence.getAndIncrement();
+        int slot = (int) (sequence & mask);
+        published.set(slot, IN_PROGRESS);
+        int offset = slot * STAGES;
+        for (int stage = 0; stage < STAGES; stage++) {
+            timestamps[offset + stage] = 0;
+        }
+        timestamps[offset + Stage.SUBMITTED.ordinal()] = submittedAt;
+        timestamps[offset + Stage.DISPATCHED.ordinal()] = System.nanoTime();
+        commands[slot] = command;
+        return sequence;
+    }
+
+    /**
+     * Completes a record, making it visible to dumps.
+     *
+     * @param sequence
+     *            sequence returned by {@link #begin(String, long)}
+     */
+    void end(long sequence) {
+        published.lazySet((int) (sequence & mask), sequence);
+    }
+
+    /**
+     * Records the current time for a stage, replacing the time recorded before for the same stage.
+     *
+     * @param sequence
+     *            sequence returned by {@link #begin(String, long)}
+     * @param stage
+     *            stage that has been reached
+     */
+    void mark(long sequence, Stage stage) {
+        timestamps[(int) (sequence & mask) * STAGES + stage.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Records the current time for a stage unless it has already been recorded.
+     *
+     * @param sequence
+     *            sequence returned by {@link #begin(String, long)}
+     * @param stage
+     *            stage that has been reached
+     */
+    void markFirst(long sequence, Stage stage) {
+        int index = (int) (sequence & mask) * STAGES + stage.ordinal();
+        if (timestamps[index] == 0) {
+            timestamps[index] = System.nanoTime();
+        }
+    }
+
+    /**
+     * Copies a complete record.
+     *
+     * @return command of the record or <code>null</code> if the record is not complete or has been overwritten while reading
+     */
+    private String read(long sequence, long[] record) {
+        int slot = (int) (sequence & mask);
+        if (published.get(slot) != sequence) {
+            return null;
+        }
+        System.arraycopy(timestamps, slot * STAGES, record, 0, STAGES);
+        String command = commands[slot];
+        return published.get(slot) == sequence ? command : null;
+    }
+}
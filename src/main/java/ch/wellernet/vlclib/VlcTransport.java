@@ -0,0 +1,71 @@
+package ch.wellernet.vlclib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Connection to the command interface of VLC. A transport provides a text session that behaves like VLC's telnet interface: after connecting, VLC
+ * asks for the password, after which each command line written to the output stream is answered by a response ending with a prompt. Implementations
+ * may map this session to other protocols (see {@link VlcHttpTransport}). Transports of protocols that can execute queries independently of the
+ * session may offer this with {@link #query(String)}, so that reads of different callers don't wait for each other.
+ *
+ * @since 1.0.0
+ */
+public interface VlcTransport {
+
+    /**
+     * @return <code>true</code> if {@link #query(String)} can currently be used, that is if the transport supports it and the session has been
+     *         opened with the password
+     */
+    boolean canQuery();
+
+    /**
+     * Opens the connection.
+     *
+     * @param hostname
+     *            host name to where VLC is running
+     * @param port
+     *            port on which VLC is listening
+     * @throws IOException
+     *             when connection can't be established
+     */
+    void connect(String hostname, int port) throws IOException;
+
+    /**
+     * Closes the connection.
+     *
+     * @throws IOException
+     *             when connection can't be closed properly
+     */
+    void disconnect() throws IOException;
+
+    /**
+     * @return stream of responses sent by VLC
+     */
+    InputStream getInputStream();
+
+    /**
+     * @return stream to send password and commands to VLC
+     */
+    OutputStream getOutputStream();
+
+    /**
+     * @return <code>true</code> if connection is currently open
+     */
+    boolean isConnected();
+
+    /**
+     * Executes a query (<code>show</code>) independently of the session and concurrently with other queries. Must only be called if
+     * {@link #canQuery()} returns <code>true</code>.
+     *
+     * @param command
+     *            query to execute
+     * @return response as it would have been sent within the session, including the prompt
+     * @throws IOException
+     *             when the query fails
+     * @throws UnsupportedOperationException
+     *             when the transport doesn't support queries outside of the session
+     */
+    String query(String command) throws IOException;
+}
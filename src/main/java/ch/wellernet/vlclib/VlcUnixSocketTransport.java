@@ -0,0 +1,212 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Transport for a control interface of a VLC running on the same host, which listens on a Unix domain socket instead of a TCP port. The path of the
+ * socket is given as host name of the {@link VlcManager}, its port is ignored:
+ *
+ * <pre>
+ * new VlcManager(&quot;/var/run/vlc/vlm.sock&quot;, 0, new VlcUnixSocketTransport())
+ * </pre>
+ *
+ * VLC itself only serves the remote control interface on a Unix domain socket (<code>--rc-unix</code>), which neither asks for a password nor
+ * understands VLM commands, so it can't be used: {@link VlcManager#connect(char[])} would wait for a password prompt that never comes. VLM is only
+ * served by the telnet interface, which listens on TCP. To control VLC through a socket that is only accessible to local users with permission,
+ * bind the telnet interface to the loopback interface and relay it to the socket, for instance with socat:
+ *
+ * <pre>
+ * vlc -I telnet --telnet-host 127.0.0.1 --telnet-port 4212 --telnet-password secret
+ * socat UNIX-LISTEN:/var/run/vlc/vlm.sock,fork,mode=660 TCP:127.0.0.1:4212
+ * </pre>
+ *
+ * The session is then the one of the telnet interface, including the password prompt. Telnet option negotiation is not performed, but negotiation
+ * sequences sent by VLC are removed from the input. Unix domain sockets are only supported by <code>SocketChannel</code> since Java 16, on older
+ * runtimes {@link #connect(String, int)} fails with an {@link IOException}.
+ *
+ * @since 1.0.0
+ */
+public class VlcUnixSocketTransport implements VlcTransport {
+
+    /**
+     * Input stream reading directly from the channel, which removes telnet negotiation sequences.
+     */
+    private static class ChannelInputStream extends InputStream {
+        private static final int DATA = 0;
+        private static final int COMMAND = 1;
+        private static final int OPTION = 2;
+
+        private static final int IAC = 0xff;
+        private static final int WILL = 0xfb;
+        private static final int DONT = 0xfe;
+
+        private final SocketChannel channel;
+        private int state = DATA;
+
+        private ChannelInputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            while (true) {
+                int count = channel.read(ByteBuffer.wrap(buffer, offset, length));
+                if (count < 0) {
+                    return -1;
+                }
+                int filtered = filter(buffer, offset, count);
+                if (filtered > 0) {
+                    return filtered;
+                }
+            }
+        }
+
+        /**
+         * Removes negotiation sequences in place, keeping track of sequences split between reads.
+         *
+         * @return number of remaining bytes
+         */
+        private int filter(byte[] buffer, int offset, int count) {
+            int target = offset;
+            for (int i = offset; i < offset + count; i++) {
+                int b = buffer[i] & 0xff;
+                if (state == DATA) {
+                    if (b == IAC) {
+                        state = COMMAND;
+                    } else {
+                        buffer[target++] = buffer[i];
+                    }
+                } else if (state == COMMAND) {
+                    if (b == IAC) {
+                        // escaped data byte
+                        buffer[target++] = buffer[i];
+                        state = DATA;
+                    } else {
+                        state = b >= WILL && b <= DONT ? OPTION : DATA;
+                    }
+                } else {
+                    state = DATA;
+                }
+            }
+            return target - offset;
+        }
+    }
+
+    /**
+     * Output stream writing directly to the channel.
+     */
+    private static class ChannelOutputStream extends OutputStream {
+        private final SocketChannel channel;
+
+        private ChannelOutputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer, offset, length);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcUnixSocketTransport.class);
+
+    private SocketChannel channel;
+    private InputStream inputStream;
+    private OutputStream outputStream;
+
+    /**
+     * @return always <code>false</code>, commands are only executed within the session
+     */
+    @Override
+    public boolean canQuery() {
+        return false;
+    }
+
+    @Override
+    public synchronized void connect(String socketPath, int port) throws IOException {
+        SocketChannel newChannel = openChannel(socketPath);
+        channel = newChannel;
+        inputStream = new ChannelInputStream(newChannel);
+        outputStream = new ChannelOutputStream(newChannel);
+        LOG.debug(format("connected to unix domain socket %s", socketPath));
+    }
+
+    @Override
+    public synchronized void disconnect() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() {
+        return inputStream;
+    }
+
+    @Override
+    public synchronized OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    @Override
+    public synchronized boolean isConnected() {
+        return channel != null && channel.isConnected();
+    }
+
+    @Override
+    public String query(String command) {
+        throw new UnsupportedOperationException("commands are only executed within the session");
+    }
+
+    /**
+     * Opens a channel to a Unix domain socket. The API needed is resolved at runtime, since it's not available before Java 16.
+     */
+    private SocketChannel openChannel(String socketPath) throws IOException {
+        SocketChannel newChannel;
+        SocketAddress address;
+        try {
+            address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke(null, socketPath);
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            newChannel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, unix);
+        } catch (InvocationTargetException exception) {
+            throw exception.getCause() instanceof IOException ? (IOException) exception.getCause() : new IOException(exception.getCause());
+        } catch (ReflectiveOperationException | IllegalArgumentException exception) {
+            throw new IOException("unix domain sockets are not supported by this Java runtime (Java 16 or later is required)", exception);
+        }
+        try {
+            newChannel.connect(address);
+        } catch (IOException exception) {
+            newChannel.close();
+            throw exception;
+        }
+        return newChannel;
+    }
+}
@@ -0,0 +1,46 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.MediaType.BROADCAST;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+public class VlcCatalogTest {
+
+    private final VlcCatalog catalog = new VlcCatalog();
+
+    @Test
+    public void shouldReplaceMediaWithSameName() {
+        // given
+        catalog.register(new VlcMedia("media", BROADCAST, true, null));
+
+        // when
+        catalog.register(new VlcMedia("media", BROADCAST, false, null));
+
+        // then
+        assertThat(catalog.size(), is(1));
+        assertThat(catalog.get("media").isEnabed(), is(false));
+    }
+
+    @Test
+    public void shouldShareEqualOutputsBetweenMedia() {
+        // given
+        VlcOutput output1 = new VlcOutput(new VlcModule("transcode", new VlcProperty("vcodec", "h264")), new VlcModule("std", new VlcProperty("dst",
+                "a:1234")));
+        VlcOutput output2 = new VlcOutput(new VlcModule("transcode", new VlcProperty("vcodec", "h264")), new VlcModule("std", new VlcProperty("dst",
+                "a:1234")));
+
+        // when
+        VlcMedia media1 = catalog.register(new VlcMedia("media1", BROADCAST, true, output1, new VlcOption("sout-keep")));
+        VlcMedia media2 = catalog.register(new VlcMedia("media2", BROADCAST, true, output2, new VlcOption("sout-keep")));
+
+        // then
+        assertThat(media1.getOutput(), is(sameInstance(media2.getOutput())));
+        assertThat(media1.getOptions().get(0), is(sameInstance(media2.getOptions().get(0))));
+        assertThat(media1.getOutput().toString(), is(sameInstance(media2.getOutput().toString())));
+        assertThat(catalog.getOutputCount(), is(1));
+        assertThat(catalog.getModuleCount(), is(2));
+    }
+}
@@ -0,0 +1,147 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.VlcCircuitBreaker.State.CLOSED;
+import static ch.wellernet.vlclib.VlcCircuitBreaker.State.HALF_OPEN;
+import static ch.wellernet.vlclib.VlcCircuitBreaker.State.OPEN;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+
+public class VlcCircuitBreakerTest {
+
+    private static final long FAST_CALL = 1000;
+    private static final long SLOW_CALL = SECONDS.toNanos(2);
+
+    @Test
+    public void shouldCloseAfterSuccessfulProbe() throws VlcCallRejectedException {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(2).minimumNumberOfCalls(2)
+                .waitDurationInOpenState(Duration.ZERO).build();
+        recordCalls(breaker, 2, FAST_CALL, false);
+
+        // when
+        VlcCircuitBreaker.Permission permission = breaker.acquirePermission();
+        assertThat(breaker.getState(), is(HALF_OPEN));
+        breaker.onResult(permission, FAST_CALL, true);
+
+        // then
+        assertThat(permission.isProbe(), is(true));
+        assertThat(breaker.getState(), is(CLOSED));
+    }
+
+    @Test
+    public void shouldIgnoreResultOfCallAdmittedBeforeProbing() throws VlcCallRejectedException {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(1).minimumNumberOfCalls(1)
+                .waitDurationInOpenState(Duration.ZERO).build();
+        VlcCircuitBreaker.Permission failing = breaker.acquirePermission();
+        VlcCircuitBreaker.Permission late = breaker.acquirePermission();
+        breaker.onResult(failing, FAST_CALL, false);
+        VlcCircuitBreaker.Permission probe = breaker.acquirePermission();
+
+        // when
+        breaker.onResult(late, FAST_CALL, true);
+
+        // then
+        assertThat(breaker.getState(), is(HALF_OPEN));
+        breaker.onResult(probe, FAST_CALL, true);
+        assertThat(breaker.getState(), is(CLOSED));
+    }
+
+    @Test
+    public void shouldNotExtendOpenPeriodWithLateFailures() throws Exception {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(1).minimumNumberOfCalls(1)
+                .waitDurationInOpenState(Duration.millis(300)).build();
+        VlcCircuitBreaker.Permission failing = breaker.acquirePermission();
+        VlcCircuitBreaker.Permission late = breaker.acquirePermission();
+        breaker.onResult(failing, FAST_CALL, false);
+        Thread.sleep(200);
+
+        // when
+        breaker.onResult(late, FAST_CALL, false);
+        Thread.sleep(200);
+
+        // then
+        assertThat(breaker.acquirePermission().isProbe(), is(true));
+    }
+
+    @Test
+    public void shouldOpenWhenFailureRateIsExceeded() throws VlcCallRejectedException {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(4).minimumNumberOfCalls(4).failureRateThreshold(.5f)
+                .build();
+
+        // when
+        recordCalls(breaker, 2, FAST_CALL, true);
+        recordCalls(breaker, 1, FAST_CALL, false);
+        assertThat(breaker.getState(), is(CLOSED));
+        recordCalls(breaker, 1, FAST_CALL, false);
+
+        // then
+        assertThat(breaker.getState(), is(OPEN));
+    }
+
+    @Test
+    public void shouldOpenWhenSlowCallRateIsExceeded() throws VlcCallRejectedException {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(2).minimumNumberOfCalls(2)
+                .slowCallDurationThreshold(Duration.standardSeconds(1)).slowCallRateThreshold(1f).build();
+
+        // when
+        recordCalls(breaker, 2, SLOW_CALL, true);
+
+        // then
+        assertThat(breaker.getState(), is(OPEN));
+    }
+
+    @Test
+    public void shouldReopenAfterFailedProbe() throws VlcCallRejectedException {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(1).minimumNumberOfCalls(1)
+                .waitDurationInOpenState(Duration.ZERO).build();
+        recordCalls(breaker, 1, FAST_CALL, false);
+
+        // when
+        breaker.onResult(breaker.acquirePermission(), FAST_CALL, false);
+
+        // then
+        assertThat(breaker.getState(), is(OPEN));
+    }
+
+    @Test(expected = VlcCallRejectedException.class)
+    public void shouldRejectCallsWhenMaximumOfConcurrentCallsIsReached() throws VlcCallRejectedException {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().maxConcurrentCalls(1).build();
+        breaker.acquirePermission();
+
+        // when
+        breaker.acquirePermission();
+
+        // then
+        // a VlcCallRejectedException is expected
+    }
+
+    @Test(expected = VlcCallRejectedException.class)
+    public void shouldRejectCallsWhileOpen() throws VlcCallRejectedException {
+        // given
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(1).minimumNumberOfCalls(1)
+                .waitDurationInOpenState(Duration.standardMinutes(1)).build();
+        recordCalls(breaker, 1, FAST_CALL, false);
+
+        // when
+        breaker.acquirePermission();
+
+        // then
+        // a VlcCallRejectedException is expected
+    }
+
+    private void recordCalls(VlcCircuitBreaker breaker, int count, long durationNanos, boolean success) throws VlcCallRejectedException {
+        for (int i = 0; i < count; i++) {
+            breaker.onResult(breaker.acquirePermission(), durationNanos, success);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.CommandPriority.BULK_SETUP;
+import static ch.wellernet.vlclib.CommandPriority.CONTROL;
+import static ch.wellernet.vlclib.CommandPriority.QUERY;
+import static ch.wellernet.vlclib.VlcCommandQueue.SubmissionPolicy.REJECT;
+import static ch.wellernet.vlclib.VlcCommandQueue.SubmissionPolicy.TIMED;
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+
+public class VlcCommandQueueTest {
+
+    private final List<CommandPriority> dispatched = Collections.synchronizedList(new ArrayList<CommandPriority>());
+
+    @Test
+    public void shouldDispatchCommandsOfHigherPriorityFirst() throws Exception {
+        // given
+        VlcCommandQueue queue = new VlcCommandQueue.Builder().build();
+        queue.enter(QUERY);
+        Thread bulkSetup = startWaiting(queue, BULK_SETUP, 1);
+        Thread query = startWaiting(queue, QUERY, 2);
+        Thread control = startWaiting(queue, CONTROL, 3);
+
+        // when
+        queue.leave();
+        bulkSetup.join();
+        query.join();
+        control.join();
+
+        // then
+        assertThat(dispatched, is(asList(CONTROL, QUERY, BULK_SETUP)));
+        assertThat(queue.getLatency(CONTROL).getCount(), is(1l));
+        assertThat(queue.getQueueingLatency(BULK_SETUP).getCount(), is(1l));
+    }
+
+    @Test
+    public void shouldDispatchStarvingCommandsOfLowerPriority() throws Exception {
+        // given
+        VlcCommandQueue queue = new VlcCommandQueue.Builder().starvationThreshold(Duration.millis(10)).build();
+        queue.enter(QUERY);
+        Thread bulkSetup = startWaiting(queue, BULK_SETUP, 1);
+        Thread.sleep(20);
+        Thread control = startWaiting(queue, CONTROL, 2);
+
+        // when
+        queue.leave();
+        bulkSetup.join();
+        control.join();
+
+        // then
+        assertThat(dispatched, is(asList(BULK_SETUP, CONTROL)));
+    }
+
+    @Test
+    public void shouldLimitRateOfDispatchedCommands() throws VlcCallRejectedException {
+        // given
+        VlcCommandQueue queue = new VlcCommandQueue.Builder().rateLimiter(new VlcRateLimiter(20, 1)).build();
+
+        // when
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            queue.enter(QUERY);
+            queue.leave();
+        }
+
+        // then
+        assertThat(NANOSECONDS.toMillis(System.nanoTime() - start), is(greaterThanOrEqualTo(90l)));
+    }
+
+    @Test
+    public void shouldRejectCommandWhenQueueIsFull() throws Exception {
+        // given
+        final VlcCommandQueue queue = new VlcCommandQueue.Builder().capacity(1).submissionPolicy(REJECT).build();
+        queue.enter(QUERY);
+        Thread waiting = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.enter(QUERY);
+                    queue.leave();
+                } catch (VlcCallRejectedException exception) {
+                    // not expected
+                }
+            }
+        };
+        waiting.start();
+        while (queue.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+
+        // when
+        try {
+            queue.enter(QUERY);
+            fail("command should have been rejected");
+        } catch (VlcCallRejectedException exception) {
+            // expected
+        }
+        queue.leave();
+        waiting.join();
+
+        // then
+        assertThat(queue.getRejectedCount(), is(1l));
+        assertThat(queue.getSubmittedCount(), is(3l));
+        assertThat(queue.getMaxQueueDepth(), is(1));
+        assertThat(queue.getQueueDepth(), is(0));
+    }
+
+    @Test(expected = VlcCallRejectedException.class)
+    public void shouldRejectCommandWhenTimedOutWhileWaitingForTurn() throws VlcCallRejectedException {
+        // given
+        VlcCommandQueue queue = new VlcCommandQueue.Builder().submissionPolicy(TIMED).timeout(Duration.millis(20)).build();
+        queue.enter(QUERY);
+
+        // when
+        queue.enter(QUERY);
+
+        // then
+        // a VlcCallRejectedException is expected
+    }
+
+    private Thread startWaiting(final VlcCommandQueue queue, final CommandPriority priority, int expectedQueueDepth) throws InterruptedException {
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.enter(priority);
+                    dispatched.add(priority);
+                    queue.leave();
+                } catch (VlcCallRejectedException exception) {
+                    // not expected
+                }
+            }
+        };
+        thread.start();
+        while (queue.getQueueDepth() < expectedQueueDepth) {
+            Thread.sleep(1);
+        }
+        return thread;
+    }
+}
@@ -0,0 +1,62 @@
+package ch.wellernet.vlclib;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class VlcConnectorTest {
+
+    // under test
+    private final VlcConnector connector = new VlcConnector(2);
+
+    @Test
+    public void shouldConnectAllManagersAndReportFailures() throws VlcConnectionException, InterruptedException {
+        // given
+        VlcManager healthy1 = mock(VlcManager.class);
+        VlcManager healthy2 = mock(VlcManager.class);
+        VlcManager broken = mock(VlcManager.class);
+        VlcConnectionException failure = new VlcConnectionException("connection refused");
+        doThrow(failure).when(broken).connect(any(char[].class));
+        Map<VlcManager, char[]> passwords = new LinkedHashMap<VlcManager, char[]>();
+        passwords.put(healthy1, "secret1".toCharArray());
+        passwords.put(broken, "secret2".toCharArray());
+        passwords.put(healthy2, "secret3".toCharArray());
+
+        // when
+        Map<VlcManager, VlcConnectionException> failures = connector.connectAll(passwords, 10, SECONDS);
+
+        // then
+        verify(healthy1).connect(any(char[].class));
+        verify(healthy2).connect(any(char[].class));
+        assertThat(failures.size(), is(1));
+        assertThat(failures.get(broken), is(sameInstance(failure)));
+        for (char[] password : passwords.values()) {
+            assertThat(new String(password).replace("\0", "").isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void shouldPrepareAllManagersForLazyConnection() {
+        // given
+        VlcManager manager = mock(VlcManager.class);
+        char[] password = "secret".toCharArray();
+        Map<VlcManager, char[]> passwords = new LinkedHashMap<VlcManager, char[]>();
+        passwords.put(manager, password);
+
+        // when
+        connector.connectAllLazily(passwords);
+
+        // then
+        verify(manager).connectLazily(password);
+    }
+}
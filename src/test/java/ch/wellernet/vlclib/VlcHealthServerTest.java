@@ -0,0 +1,119 @@
+package ch.wellernet.vlclib;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VlcHealthServerTest {
+
+    // under test
+    private VlcHealthServer server;
+
+    private VlcManager manager;
+
+    @Before
+    public void setup() throws IOException {
+        server = new VlcHealthServer(new InetSocketAddress("localhost", 0));
+        manager = new VlcManager("vlc1", 4212, mock(VlcTransport.class));
+        server.add(manager);
+    }
+
+    @After
+    public void teardown() {
+        server.stop();
+    }
+
+    @Test
+    public void shouldBeReadyWhileManagerConnectsLazilyUntilItsCircuitBreakerOpens() throws Exception {
+        // given
+        VlcManager lazyManager = new VlcManager("vlc2", 4212, mock(VlcTransport.class));
+        VlcCircuitBreaker breaker = new VlcCircuitBreaker.Builder().slidingWindowSize(1).minimumNumberOfCalls(1)
+                .waitDurationInOpenState(Duration.standardMinutes(1)).build();
+        lazyManager.setCircuitBreaker(breaker);
+        lazyManager.connectLazily("secret".toCharArray());
+        server.add(lazyManager);
+        manager.getMetrics().onConnected(true);
+
+        // when
+        get("/health/ready", HttpURLConnection.HTTP_OK);
+        breaker.onResult(breaker.acquirePermission(), 0, false);
+
+        // then
+        get("/health/ready", HttpURLConnection.HTTP_UNAVAILABLE);
+    }
+
+    @Test
+    public void shouldExposeMetricsAsJson() throws IOException {
+        // given
+        manager.getMetrics().onRoundTrip(CommandPriority.QUERY, 1000000, true);
+
+        // when
+        String metrics = get("/metrics.json", HttpURLConnection.HTTP_OK);
+
+        // then
+        assertThat(metrics, containsString("\"host\":\"vlc1\",\"port\":4212,\"connected\":false"));
+        assertThat(metrics, containsString("\"query\":{\"count\":1,\"failures\":0,\"p50\":0.001"));
+    }
+
+    @Test
+    public void shouldExposeMetricsInPrometheusFormat() throws IOException {
+        // given
+        manager.getMetrics().onConnected(true);
+        manager.getMetrics().onRoundTrip(CommandPriority.CONTROL, 2000000, true);
+        manager.getMetrics().onRoundTrip(CommandPriority.CONTROL, 0, false);
+
+        // when
+        String metrics = get("/metrics", HttpURLConnection.HTTP_OK);
+
+        // then
+        assertThat(metrics, containsString("vlc_connected{host=\"vlc1\",port=\"4212\"} 1\n"));
+        assertThat(metrics, containsString("vlc_commands_total{host=\"vlc1\",port=\"4212\",priority=\"control\"} 2\n"));
+        assertThat(metrics, containsString("vlc_command_failures_total{host=\"vlc1\",port=\"4212\",priority=\"control\"} 1\n"));
+        assertThat(metrics, containsString("vlc_round_trip_seconds_count{host=\"vlc1\",port=\"4212\",priority=\"control\"} 1\n"));
+        assertThat(metrics, containsString("vlc_queue_depth{host=\"vlc1\",port=\"4212\"} 0\n"));
+    }
+
+    @Test
+    public void shouldNotBeReadyUntilAllManagersAreConnected() throws IOException {
+        // given
+        VlcManager otherManager = new VlcManager("vlc2", 4212, mock(VlcTransport.class));
+        server.add(otherManager);
+        manager.getMetrics().onConnected(true);
+
+        // when
+        get("/health/ready", HttpURLConnection.HTTP_UNAVAILABLE);
+        otherManager.getMetrics().onConnected(true);
+
+        // then
+        get("/health/ready", HttpURLConnection.HTTP_OK);
+        get("/health/live", HttpURLConnection.HTTP_OK);
+    }
+
+    private String get(String path, int expectedStatus) throws IOException {
+        URL url = new URL("http", "localhost", server.getAddress().getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertThat(connection.getResponseCode(), is(expectedStatus));
+        InputStream body = expectedStatus == HttpURLConnection.HTTP_OK ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int length = body.read(buffer); length >= 0; length = body.read(buffer)) {
+            bytes.write(buffer, 0, length);
+        }
+        body.close();
+        return new String(bytes.toByteArray(), UTF_8);
+    }
+}
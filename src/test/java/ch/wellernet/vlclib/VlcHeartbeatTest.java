@@ -0,0 +1,152 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.System.nanoTime;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class VlcHeartbeatTest {
+
+    private final VlcHeartbeat heartbeat = new VlcHeartbeat.Builder().interval(Duration.millis(50)).deadline(Duration.millis(100)).build();
+
+    @After
+    public void tearDown() {
+        heartbeat.shutdown();
+    }
+
+    @Test
+    public void shouldDetectHungSessionsIndependently() throws Exception {
+        // given
+        VlcHeartbeat slowHeartbeat = new VlcHeartbeat.Builder().interval(Duration.millis(50)).deadline(Duration.millis(400)).threads(1).build();
+        VlcHeartbeat.Listener listener = mock(VlcHeartbeat.Listener.class);
+        VlcManager[] managers = { hungManager(), hungManager(), hungManager() };
+        try {
+            // when
+            for (VlcManager manager : managers) {
+                slowHeartbeat.monitor(manager, listener);
+            }
+
+            // then
+            for (VlcManager manager : managers) {
+                // blocking on each deadline in turn would take three deadlines
+                verify(listener, timeout(800)).sessionDead(eq(manager), any(VlcConnectionException.class));
+            }
+        } finally {
+            slowHeartbeat.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldDisconnectAndNotifyWhenDeadlineIsMissed() throws Exception {
+        // given
+        VlcManager manager = hungManager();
+        VlcHeartbeat.Listener listener = mock(VlcHeartbeat.Listener.class);
+
+        // when
+        heartbeat.monitor(manager, listener);
+
+        // then
+        verify(listener, timeout(2000)).sessionDead(eq(manager), any(VlcConnectionException.class));
+        verify(manager).disconnect();
+        assertThat(heartbeat.getRoundTrip(manager), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotDeclareSessionDeadWhenPingIsRejected() throws Exception {
+        // given
+        VlcManager manager = mock(VlcManager.class);
+        VlcHeartbeat.Listener listener = mock(VlcHeartbeat.Listener.class);
+        doThrow(new VlcCallRejectedException("circuit breaker is open")).when(manager).ping();
+
+        // when
+        heartbeat.monitor(manager, listener);
+
+        // then
+        verify(manager, timeout(2000).atLeast(2)).ping();
+        verify(manager, never()).disconnect();
+        verify(listener, never()).sessionDead(any(VlcManager.class), any(VlcConnectionException.class));
+    }
+
+    @Test
+    public void shouldNotPingAgainWhilePreviousPingIsPending() throws Exception {
+        // given
+        VlcHeartbeat slowHeartbeat = new VlcHeartbeat.Builder().interval(Duration.millis(50)).deadline(Duration.standardSeconds(5)).build();
+        VlcManager manager = hungManager();
+        try {
+            // when
+            slowHeartbeat.monitor(manager, mock(VlcHeartbeat.Listener.class));
+            Thread.sleep(300);
+
+            // then
+            verify(manager, times(1)).ping();
+        } finally {
+            slowHeartbeat.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldNotPingSessionThatIsNotIdle() throws Exception {
+        // given
+        VlcManager manager = mock(VlcManager.class);
+        VlcHeartbeat.Listener listener = mock(VlcHeartbeat.Listener.class);
+        doAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(InvocationOnMock invocation) {
+                return nanoTime();
+            }
+        }).when(manager).getLastResponseAt();
+
+        // when
+        heartbeat.monitor(manager, listener);
+        Thread.sleep(200);
+
+        // then
+        verify(manager, never()).ping();
+    }
+
+    @Test
+    public void shouldPingIdleSession() throws Exception {
+        // given
+        VlcManager manager = mock(VlcManager.class);
+        VlcHeartbeat.Listener listener = mock(VlcHeartbeat.Listener.class);
+        doReturn(Duration.millis(3)).when(manager).ping();
+
+        // when
+        heartbeat.monitor(manager, listener);
+
+        // then
+        verify(manager, timeout(2000)).ping();
+        Thread.sleep(50);
+        assertThat(heartbeat.getRoundTrip(manager), is(Duration.millis(3)));
+        verify(listener, never()).sessionDead(any(VlcManager.class), any(VlcConnectionException.class));
+    }
+
+    private VlcManager hungManager() throws VlcConnectionException {
+        VlcManager manager = mock(VlcManager.class);
+        doAnswer(new Answer<Duration>() {
+            @Override
+            public Duration answer(InvocationOnMock invocation) throws InterruptedException {
+                // peer vanished without closing the connection
+                Thread.sleep(10000);
+                return null;
+            }
+        }).when(manager).ping();
+        return manager;
+    }
+}
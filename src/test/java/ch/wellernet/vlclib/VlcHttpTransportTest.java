@@ -0,0 +1,181 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.VlcManager.NORMAL_PROMPT;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.util.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class VlcHttpTransportTest {
+
+    private static final String PASSWORD = "secret";
+    private static final String AUTHORIZATION = "Basic " + Base64.encodeBase64StringUnChunked((":" + PASSWORD).getBytes(UTF_8));
+
+    // @formatter:off
+    private static final String SHOW_RESPONSE = ""
+            + "<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"yes\" ?>\n"
+            + "<vlm><error></error>\n"
+            + "<show><%s><type>broadcast</type><enabled>yes</enabled><loop>yes</loop>"
+            + "<inputs><1>/home/myself/films/film1.avi</1><2>/home/myself/films/film&amp;2.avi</2></inputs>"
+            + "<output>#std{access=http,mux=ts,dst=:8080}</output><options/>"
+            + "<instances><instance><name>default</name><state>playing</state><playlistindex>2</playlistindex></instance></instances>"
+            + "</%1$s></show>\n"
+            + "</vlm>\n";
+    // @formatter:on
+
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<String>());
+
+    private HttpServer server;
+    private CyclicBarrier barrier;
+    private VlcManager vlcManager;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/requests/vlm_cmd.xml", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String command = URLDecoder.decode(exchange.getRequestURI().getRawQuery().substring("command=".length()), "UTF-8");
+                if (!AUTHORIZATION.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                    exchange.sendResponseHeaders(401, -1);
+                    exchange.close();
+                    return;
+                }
+                commands.add(command);
+                if (command.contains(" inputdeln ")) {
+                    try {
+                        // slower than the command written after it
+                        Thread.sleep(200);
+                    } catch (InterruptedException exception) {
+                        throw new IOException(exception);
+                    }
+                }
+                if (barrier != null) {
+                    try {
+                        barrier.await(5, TimeUnit.SECONDS);
+                    } catch (Exception exception) {
+                        throw new IOException(exception);
+                    }
+                }
+                byte[] response = format(SHOW_RESPONSE, command.substring("show ".length())).getBytes(UTF_8);
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream body = exchange.getResponseBody();
+                body.write(response);
+                body.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        vlcManager = new VlcManager("localhost", server.getAddress().getPort(), new VlcHttpTransport());
+    }
+
+    @After
+    public void tearDown() throws VlcConnectionException {
+        vlcManager.disconnect();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldExecuteCommandsWrittenBackToBackConcurrently() throws VlcConnectionException {
+        // given
+        vlcManager.connect(PASSWORD.toCharArray());
+        barrier = new CyclicBarrier(2);
+
+        // when
+        vlcManager.sendCommand("show channel1\nshow channel2");
+
+        // then
+        assertThat(vlcManager.waitForAndClear(NORMAL_PROMPT).group().contains("    channel1\n"), is(true));
+        assertThat(vlcManager.waitForAndClear(NORMAL_PROMPT).group().contains("    channel2\n"), is(true));
+    }
+
+    @Test(expected = VlcConnectionException.class)
+    public void shouldFailWhenPasswordIsRejected() throws VlcConnectionException {
+        // given
+        vlcManager.connect("wrong".toCharArray());
+
+        // when
+        vlcManager.ping();
+
+        // then exception is thrown
+    }
+
+    @Test
+    public void shouldExecuteMutationsWrittenBackToBackInOrder() throws VlcConnectionException {
+        // given
+        vlcManager.connect(PASSWORD.toCharArray());
+
+        // when
+        vlcManager.sendCommand("setup channel1 inputdeln 2\nsetup channel1 input \"/home/myself/films/film3.avi\"");
+        vlcManager.waitForAndClear(NORMAL_PROMPT);
+        vlcManager.waitForAndClear(NORMAL_PROMPT);
+
+        // then
+        assertThat(commands, is(asList("setup channel1 inputdeln 2", "setup channel1 input \"/home/myself/films/film3.avi\"")));
+    }
+
+    @Test
+    public void shouldReadMediaOfDifferentCallersInParallel() throws Exception {
+        // given
+        vlcManager.connect(PASSWORD.toCharArray());
+        barrier = new CyclicBarrier(2);
+        final VlcMedia[] concurrentMedia = new VlcMedia[1];
+        Thread concurrentReader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    concurrentMedia[0] = vlcManager.readMedia("channel2");
+                } catch (VlcConnectionException exception) {
+                    // asserted below
+                }
+            }
+        };
+        concurrentReader.start();
+
+        // when
+        VlcMedia media = vlcManager.readMedia("channel1");
+        concurrentReader.join();
+
+        // then
+        assertThat(media.getName(), is("channel1"));
+        assertThat(concurrentMedia[0].getName(), is("channel2"));
+    }
+
+    @Test
+    public void shouldReadMediaThroughWebInterface() throws VlcConnectionException {
+        // given
+        vlcManager.connect(PASSWORD.toCharArray());
+
+        // when
+        VlcMedia media = vlcManager.readMedia("channel1");
+
+        // then
+        assertThat(media.getName(), is("channel1"));
+        assertThat(media.isLoop(), is(true));
+        assertThat(media.getInputs(), is(asList(new VlcInput("/home/myself/films/film1.avi"), new VlcInput("/home/myself/films/film&2.avi"))));
+        assertThat(media.getOutput().toString(), is("#std{access=http,mux=ts,dst=:8080}"));
+        assertThat(media.getInstances().get(0).getState(), is(InstanceState.PLAYING));
+        assertThat(media.getInstances().get(0).getPlayListIndex(), is(2));
+    }
+}
@@ -0,0 +1,110 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.InstanceState.PLAYING;
+import static ch.wellernet.vlclib.MediaType.BROADCAST;
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VlcInputIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldFindDurationsAfterGrowingAndReopening() throws IOException {
+        // given
+        File file = new File(folder.getRoot(), "inputs.index");
+        VlcInputIndex index = new VlcInputIndex(file, 2);
+        for (int i = 0; i < 100; i++) {
+            index.putDuration(format("/films/film%s.avi", i), 1000 + i, 42, Duration.millis(i * 1000));
+        }
+        index.close();
+
+        // when
+        VlcInputIndex reopenedIndex = new VlcInputIndex(file, 2);
+
+        // then
+        assertThat(reopenedIndex.size(), is(100));
+        for (int i = 0; i < 100; i++) {
+            assertThat(reopenedIndex.getDuration(format("/films/film%s.avi", i), 1000 + i, 42), is(Duration.millis(i * 1000)));
+        }
+        assertThat(reopenedIndex.getDuration("/films/film100.avi", 1100, 42), is(nullValue()));
+        reopenedIndex.close();
+    }
+
+    @Test
+    public void shouldIgnoreDurationOfChangedFile() throws IOException {
+        // given
+        VlcInputIndex index = new VlcInputIndex(folder.newFile());
+        index.putDuration("/films/film1.avi", 1000, 42, Duration.standardMinutes(90));
+
+        // when
+        Duration duration = index.getDuration("/films/film1.avi", 1000, 43);
+
+        // then
+        assertThat(duration, is(nullValue()));
+        index.close();
+    }
+
+    @Test
+    public void shouldKeepEntriesWhenGrowingHasBeenInterrupted() throws IOException {
+        // given
+        File file = new File(folder.getRoot(), "inputs.index");
+        VlcInputIndex index = new VlcInputIndex(file, 2);
+        index.putDuration("/films/film1.avi", 1000, 42, Duration.standardMinutes(90));
+        index.close();
+        // garbage of a new table that hasn't been switched to yet
+        RandomAccessFile indexFile = new RandomAccessFile(file, "rw");
+        indexFile.seek(indexFile.length());
+        for (int i = 0; i < 64; i++) {
+            indexFile.writeLong(-1);
+        }
+        indexFile.close();
+
+        // when
+        VlcInputIndex reopenedIndex = new VlcInputIndex(file, 2);
+        for (int i = 2; i <= 10; i++) {
+            reopenedIndex.putDuration(format("/films/film%s.avi", i), 1000, 42, Duration.standardMinutes(i));
+        }
+
+        // then
+        assertThat(reopenedIndex.size(), is(10));
+        assertThat(reopenedIndex.getDuration("/films/film1.avi", 1000, 42), is(Duration.standardMinutes(90)));
+        assertThat(reopenedIndex.getDuration("/films/film10.avi", 1000, 42), is(Duration.standardMinutes(10)));
+        assertThat(reopenedIndex.getDuration("/films/film11.avi", 1000, 42), is(nullValue()));
+        reopenedIndex.close();
+    }
+
+    @Test
+    public void shouldRecordLengthOfPlayedItem() throws IOException {
+        // given
+        VlcInputIndex index = new VlcInputIndex(folder.newFile());
+        VlcInput film1 = new VlcInput(folder.newFile().getPath());
+        VlcInput film2 = new VlcInput(folder.newFile().getPath());
+        VlcInstance instance = new VlcInstance("defaultInstance", PLAYING, .5f, Duration.standardMinutes(45), Duration.standardMinutes(90), 1, 2);
+        VlcMedia media = new VlcMedia("channel42", BROADCAST, true, false, asList(film1, film2), new VlcOutput(new VlcModule("dummy")),
+                Collections.<VlcOption> emptyList(), asList(instance));
+
+        // when
+        int recorded = index.observe(media);
+
+        // then
+        assertThat(recorded, is(1));
+        assertThat(index.getDuration(film1), is(nullValue()));
+        assertThat(index.getDuration(film2), is(Duration.standardMinutes(90)));
+        index.close();
+    }
+}
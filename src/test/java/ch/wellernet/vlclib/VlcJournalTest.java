@@ -0,0 +1,141 @@
+package ch.wellernet.vlclib;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VlcJournalTest {
+
+    private static final String MEDIA_NAME = "channel42";
+
+    private static final String NEW_COMMAND = "new channel42 broadcast enabled";
+    private static final String OUTPUT_COMMAND_1 = "setup channel42 output #std{access=http,mux=ts,dst=:8080}";
+    private static final String OUTPUT_COMMAND_2 = "setup channel42 output #std{access=http,mux=ts,dst=:8081}";
+    private static final String INPUT_COMMAND_1 = "setup channel42 input \"/home/myself/films/film1.avi\"";
+    private static final String INPUT_COMMAND_2 = "setup channel42 input \"/home/myself/films/film2.avi\"";
+    private static final String INPUT_COMMAND_3 = "setup channel42 input \"/home/myself/films/film3.avi\"";
+    private static final String PLAY_COMMAND = "control channel42 play";
+    private static final String SEEK_COMMAND = "control channel42 seek 42000ms";
+    private static final String STOP_COMMAND = "control channel42 stop";
+    private static final String LOOP_COMMAND = "loop channel42";
+    private static final String UNLOOP_COMMAND = "unloop channel42";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // under test
+    private VlcJournal journal;
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = folder.newFolder();
+        journal = new VlcJournal(directory, 1024);
+    }
+
+    @After
+    public void teardown() throws IOException {
+        journal.close();
+    }
+
+    @Test
+    public void shouldCollapseCommandsToDesiredState() throws IOException {
+        // given
+        appendAll(NEW_COMMAND, OUTPUT_COMMAND_1, INPUT_COMMAND_1, INPUT_COMMAND_2, INPUT_COMMAND_3, LOOP_COMMAND, PLAY_COMMAND, SEEK_COMMAND);
+
+        // when
+        appendAll(OUTPUT_COMMAND_2, "setup channel42 inputdeln 2", UNLOOP_COMMAND);
+
+        // then
+        assertThat(journal.getCommands(MEDIA_NAME),
+                is(asList(NEW_COMMAND, OUTPUT_COMMAND_2, INPUT_COMMAND_1, INPUT_COMMAND_3, UNLOOP_COMMAND, PLAY_COMMAND)));
+    }
+
+    @Test
+    public void shouldCompactWhenJournalIsFull() throws IOException {
+        // given
+        appendAll(NEW_COMMAND, OUTPUT_COMMAND_1);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            appendAll(PLAY_COMMAND, STOP_COMMAND);
+        }
+        appendAll(PLAY_COMMAND);
+        journal.close();
+        journal = new VlcJournal(directory, 1024);
+
+        // then
+        assertThat(new File(directory, VlcJournal.SNAPSHOT_FILE_NAME).exists(), is(true));
+        assertThat(journal.getCommands(MEDIA_NAME), is(asList(NEW_COMMAND, OUTPUT_COMMAND_1, PLAY_COMMAND)));
+    }
+
+    @Test
+    public void shouldForgetDeletedMedia() throws IOException {
+        // given
+        appendAll(NEW_COMMAND, OUTPUT_COMMAND_1, INPUT_COMMAND_1);
+
+        // when
+        appendAll("del channel42");
+
+        // then
+        assertThat(journal.getMediaNames().isEmpty(), is(true));
+        assertThat(journal.getCommands(MEDIA_NAME), is(Collections.<String> emptyList()));
+    }
+
+    @Test
+    public void shouldKeepLastEnabledStateOnly() throws IOException {
+        // given
+        appendAll(NEW_COMMAND, "setup channel42 disabled", OUTPUT_COMMAND_1);
+
+        // when
+        appendAll("setup channel42 enabled", "setup channel42 disabled");
+
+        // then
+        assertThat(journal.getCommands(MEDIA_NAME), is(asList(NEW_COMMAND, "setup channel42 disabled", OUTPUT_COMMAND_1)));
+    }
+
+    @Test
+    public void shouldRecoverDesiredStateAfterCompactionAndReopen() throws IOException {
+        // given
+        appendAll(NEW_COMMAND, OUTPUT_COMMAND_1, INPUT_COMMAND_1);
+        journal.compact();
+        appendAll(INPUT_COMMAND_2, "setup channel42 inputdel all", INPUT_COMMAND_3);
+
+        // when
+        journal.close();
+        journal = new VlcJournal(directory, 1024);
+
+        // then
+        assertThat(journal.getCommands(MEDIA_NAME), is(asList(NEW_COMMAND, OUTPUT_COMMAND_1, INPUT_COMMAND_3)));
+    }
+
+    @Test
+    public void shouldRecoverDesiredStateAfterReopen() throws IOException {
+        // given
+        appendAll(NEW_COMMAND, OUTPUT_COMMAND_1, INPUT_COMMAND_1);
+
+        // when
+        journal.close();
+        journal = new VlcJournal(directory, 1024);
+
+        // then
+        assertThat(journal.getCommands(MEDIA_NAME), is(asList(NEW_COMMAND, OUTPUT_COMMAND_1, INPUT_COMMAND_1)));
+    }
+
+    private void appendAll(String... commands) throws IOException {
+        for (String command : commands) {
+            journal.append(command);
+        }
+    }
+}
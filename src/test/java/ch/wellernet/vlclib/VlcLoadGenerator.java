@@ -0,0 +1,412 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.joda.time.Duration;
+
+/**
+ * Generates load on the VLM interface of a VLC to measure how many control operations per second it sustains. A number of connections send a
+ * weighted mix of operations on a set of media at a fixed target rate. Operations are scheduled open loop: each has an intended start time derived
+ * from the target rate, and its latency is measured from that time instead of from the time it has actually been sent. This way, operations that had
+ * to wait for a stalled VLC are accounted for with their full delay instead of being omitted (coordinated omission).
+ *
+ * <p>
+ * This is a benchmarking tool rather than part of the library, so it lives with the tests and isn't packaged into the library jar. Run it from
+ * command line on the test class path with:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ch.wellernet.vlclib.VlcLoadGenerator -Dexec.args="--host localhost
+ *         --port 4212 --password secret --connections 4 --media 8 --rate 200 --duration 60 --mix show=6,play=1,seek=2,input=1
+ *         --input /home/myself/films/film1.avi"
+ * </pre>
+ *
+ * @since 1.0.0
+ */
+public class VlcLoadGenerator {
+
+    public static class Builder implements org.apache.commons.lang3.builder.Builder<VlcLoadGenerator> {
+
+        private String hostname = VlcManager.DEFAULT_HOSTANAME;
+        private int port = VlcManager.DEFAULT_PORT;
+        private String password = "";
+        private int connections = 1;
+        private int media = 1;
+        private double rate = 100;
+        private Duration duration = Duration.standardSeconds(30);
+        private final Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+        private String input = "/dev/null";
+
+        @Override
+        public VlcLoadGenerator build() {
+            if (mix.isEmpty()) {
+                mix.put(Operation.SHOW, 1);
+            }
+            int total = 0;
+            for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+                if (weight.getValue() < 0) {
+                    throw new IllegalArgumentException(format("weight of operation %s must not be negative but was %s", weight.getKey().value(),
+                            weight.getValue()));
+                }
+                total += weight.getValue();
+            }
+            if (total == 0) {
+                throw new IllegalArgumentException(format("at least one operation of mix %s must have a positive weight", mix));
+            }
+            return new VlcLoadGenerator(this);
+        }
+
+        public Builder connections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        public Builder hostname(String hostname) {
+            this.hostname = hostname;
+            return this;
+        }
+
+        public Builder input(String input) {
+            this.input = input;
+            return this;
+        }
+
+        public Builder media(int media) {
+            this.media = media;
+            return this;
+        }
+
+        public Builder operation(Operation operation, int weight) {
+            mix.put(operation, weight);
+            return this;
+        }
+
+        public Builder password(String password) {
+            this.password = password;
+            return this;
+        }
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder rate(double rate) {
+            this.rate = rate;
+            return this;
+        }
+    }
+
+    public enum Operation {
+        PLAY("play"), SEEK("seek"), SHOW("show"), SETUP_INPUT("input");
+
+        private String value;
+
+        private Operation(String value) {
+            this.value = value;
+        }
+
+        public String value() {
+            return value;
+        }
+    }
+
+    /**
+     * Result of a load run.
+     */
+    public static class Report {
+        private final long elapsedNanos;
+        private final Map<Operation, VlcLatencyHistogram> latencies;
+        private final AtomicLongArray errors;
+
+        private Report(long elapsedNanos, Map<Operation, VlcLatencyHistogram> latencies, AtomicLongArray errors) {
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+
+        public long getErrorCount(Operation operation) {
+            return errors.get(operation.ordinal());
+        }
+
+        /**
+         * @param operation
+         *            type of operation
+         * @return latencies of successful operations, measured from their intended start
+         */
+        public VlcLatencyHistogram getLatency(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        /**
+         * @return successful operations per second
+         */
+        public double getThroughput() {
+            long count = 0;
+            for (VlcLatencyHistogram latency : latencies.values()) {
+                count += latency.getCount();
+            }
+            return count / (elapsedNanos / (double) SECONDS.toNanos(1));
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder();
+            report.append(format("throughput: %.1f ops/s%n", getThroughput()));
+            report.append(format("%-10s %10s %8s %10s %10s %10s %10s%n", "operation", "count", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+            for (Operation operation : Operation.values()) {
+                VlcLatencyHistogram latency = latencies.get(operation);
+                report.append(format("%-10s %10s %8s %10.2f %10.2f %10.2f %10.2f%n", operation.value(), latency.getCount(),
+                        errors.get(operation.ordinal()), millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                        millis(latency.getValueAtPercentile(99.9)), millis(latency.getMax())));
+            }
+            return report.toString();
+        }
+
+        private double millis(long nanos) {
+            return nanos / (double) MILLISECONDS.toNanos(1);
+        }
+    }
+
+    private static final Log LOG = LogFactory.getLog(VlcLoadGenerator.class);
+
+    private static final String MEDIA_NAME_TEMPLATE = "loadtest%s";
+
+    private final String hostname;
+    private final int port;
+    private final String password;
+    private final int connections;
+    private final int media;
+    private final long intervalNanos;
+    private final long durationNanos;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final String input;
+
+    private VlcLoadGenerator(Builder builder) {
+        hostname = builder.hostname;
+        port = builder.port;
+        password = builder.password;
+        connections = builder.connections;
+        media = builder.media;
+        intervalNanos = (long) (SECONDS.toNanos(1) / builder.rate);
+        durationNanos = MILLISECONDS.toNanos(builder.duration.getMillis());
+        operations = builder.mix.keySet().toArray(new Operation[builder.mix.size()]);
+        cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += builder.mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        input = builder.input;
+    }
+
+    /**
+     * Runs the load generator with options given on command line.
+     *
+     * @param args
+     *            options in form <code>--name value</code>
+     * @throws Exception
+     *             when load can't be generated
+     */
+    public static void main(String[] args) throws Exception {
+        Builder builder = new Builder();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--host":
+                builder.hostname(value);
+                break;
+            case "--port":
+                builder.port(Integer.parseInt(value));
+                break;
+            case "--password":
+                builder.password(value);
+                break;
+            case "--connections":
+                builder.connections(Integer.parseInt(value));
+                break;
+            case "--media":
+                builder.media(Integer.parseInt(value));
+                break;
+            case "--rate":
+                builder.rate(Double.parseDouble(value));
+                break;
+            case "--duration":
+                builder.duration(Duration.standardSeconds(Long.parseLong(value)));
+                break;
+            case "--input":
+                builder.input(value);
+                break;
+            case "--mix":
+                for (String entry : value.split(",")) {
+                    String[] weight = entry.split("=");
+                    builder.operation(operationOf(weight[0]), Integer.parseInt(weight[1]));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(format("unknown option %s", args[i]));
+            }
+        }
+        System.out.print(builder.build().run());
+    }
+
+    /**
+     * Connects, sets up the media, generates load for the configured duration and cleans up again.
+     *
+     * @return report with throughput and latencies
+     * @throws VlcConnectionException
+     *             when connections or media can't be set up
+     * @throws InterruptedException
+     *             when interrupted while waiting for the load to complete
+     */
+    public Report run() throws VlcConnectionException, InterruptedException {
+        List<VlcManager> managers = new ArrayList<VlcManager>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                VlcManager manager = new VlcManager(hostname, port);
+                manager.connect(password.toCharArray());
+                managers.add(manager);
+            }
+            VlcOutput output = new VlcOutput(new VlcModule("dummy"));
+            for (int i = 0; i < media; i++) {
+                String mediaName = format(MEDIA_NAME_TEMPLATE, i);
+                managers.get(0).createMedia(new VlcMedia(mediaName, MediaType.BROADCAST, true, output));
+                managers.get(0).addInputItem(mediaName, new VlcInput(input));
+            }
+            LOG.debug(format("set up %s connections and %s media on %s:%s", connections, media, hostname, port));
+            return generate(managers);
+        } finally {
+            for (int i = 0; i < media && !managers.isEmpty(); i++) {
+                try {
+                    managers.get(0).deleteMedia(format(MEDIA_NAME_TEMPLATE, i));
+                } catch (VlcConnectionException exception) {
+                    LOG.warn(format("caught exception while deleting media %s", format(MEDIA_NAME_TEMPLATE, i)), exception);
+                }
+            }
+            for (VlcManager manager : managers) {
+                try {
+                    manager.disconnect();
+                } catch (VlcConnectionException exception) {
+                    LOG.warn("caught exception while disconnecting", exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes a single operation.
+     *
+     * @param manager
+     *            manager to use
+     * @param operation
+     *            operation to execute
+     * @param mediaName
+     *            media to execute operation on
+     * @param random
+     *            source of randomness for operation parameters
+     * @throws VlcConnectionException
+     *             when there is a problem with the connection with VLC (see cause for detailed reason)
+     */
+    void execute(VlcManager manager, Operation operation, String mediaName, Random random) throws VlcConnectionException {
+        switch (operation) {
+        case PLAY:
+            manager.play(mediaName);
+            break;
+        case SEEK:
+            manager.seek(mediaName, random.nextFloat());
+            break;
+        case SETUP_INPUT:
+            manager.addInputItem(mediaName, new VlcInput(input));
+            break;
+        default:
+            manager.readPlayListIndex(mediaName);
+            break;
+        }
+    }
+
+    /**
+     * Generates load with one thread per connection. Operations are taken from a common sequence, where operation <code>n</code> is intended to
+     * start at <code>n</code> times the interval after the start of the run. If VLC can't keep up, operations start late but are still executed,
+     * so that the backlog shows up in their latency.
+     */
+    Report generate(List<VlcManager> managers) throws InterruptedException {
+        final Map<Operation, VlcLatencyHistogram> latencies = new EnumMap<Operation, VlcLatencyHistogram>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            latencies.put(operation, new VlcLatencyHistogram());
+        }
+        final AtomicLongArray errors = new AtomicLongArray(Operation.values().length);
+        final AtomicLong nextOperation = new AtomicLong();
+        final long start = System.nanoTime();
+        final long end = start + durationNanos;
+        final CountDownLatch done = new CountDownLatch(managers.size());
+        for (int i = 0; i < managers.size(); i++) {
+            final VlcManager manager = managers.get(i);
+            final Random random = new Random(i);
+            new Thread(format("vlc-load-%s", i)) {
+                @Override
+                public void run() {
+                    try {
+                        for (long n = nextOperation.getAndIncrement(); start + n * intervalNanos < end; n = nextOperation.getAndIncrement()) {
+                            long intendedStart = start + n * intervalNanos;
+                            long delay = intendedStart - System.nanoTime();
+                            if (delay > 0) {
+                                NANOSECONDS.sleep(delay);
+                            }
+                            Operation operation = pick(random);
+                            try {
+                                execute(manager, operation, format(MEDIA_NAME_TEMPLATE, random.nextInt(media)), random);
+                                latencies.get(operation).record(System.nanoTime() - intendedStart);
+                            } catch (VlcConnectionException exception) {
+                                errors.incrementAndGet(operation.ordinal());
+                            }
+                        }
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await();
+        return new Report(System.nanoTime() - start, latencies, errors);
+    }
+
+    private static Operation operationOf(String value) {
+        for (Operation operation : Operation.values()) {
+            if (operation.value().equals(value)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException(format("unknown operation %s", value));
+    }
+
+    private Operation pick(Random random) {
+        int weight = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < operations.length; i++) {
+            if (weight < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+}
@@ -0,0 +1,76 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.VlcLoadGenerator.Operation.PLAY;
+import static ch.wellernet.vlclib.VlcLoadGenerator.Operation.SEEK;
+import static ch.wellernet.vlclib.VlcLoadGenerator.Operation.SHOW;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class VlcLoadGeneratorTest {
+
+    @Test
+    public void shouldCountErrorsPerOperation() throws Exception {
+        // given
+        VlcLoadGenerator generator = new VlcLoadGenerator.Builder().rate(200).duration(Duration.millis(200)).operation(PLAY, 1).operation(SEEK, 1)
+                .build();
+        VlcManager manager = mock(VlcManager.class);
+        doThrow(new VlcConnectionException("timeout")).when(manager).play(anyString());
+
+        // when
+        VlcLoadGenerator.Report report = generator.generate(asList(manager, manager));
+
+        // then
+        assertThat(report.getErrorCount(PLAY) + report.getLatency(SEEK).getCount(), is(40l));
+        assertThat(report.getLatency(PLAY).getCount(), is(0l));
+    }
+
+    @Test
+    public void shouldMeasureLatencyFromIntendedStartTime() throws Exception {
+        // given
+        VlcLoadGenerator generator = new VlcLoadGenerator.Builder().rate(100).duration(Duration.millis(500)).operation(SHOW, 1).build();
+        VlcManager manager = mock(VlcManager.class);
+        doAnswer(new Answer<Integer>() {
+            private boolean stalled;
+
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws InterruptedException {
+                if (!stalled) {
+                    // a single stall delays all operations intended to start meanwhile
+                    stalled = true;
+                    Thread.sleep(200);
+                }
+                return 1;
+            }
+        }).when(manager).readPlayListIndex(anyString());
+
+        // when
+        VlcLoadGenerator.Report report = generator.generate(asList(manager));
+
+        // then
+        assertThat(report.getLatency(SHOW).getCount(), is(50l));
+        assertThat(report.getLatency(SHOW).getValueAtPercentile(90), greaterThanOrEqualTo(90000000l));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMixWithoutPositiveWeight() {
+        // given
+        VlcLoadGenerator.Builder builder = new VlcLoadGenerator.Builder().operation(PLAY, 0).operation(SHOW, 0);
+
+        // when
+        builder.build();
+
+        // then
+        // an IllegalArgumentException is expected
+    }
+}
@@ -0,0 +1,113 @@
+package ch.wellernet.vlclib;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+public class VlcLogTailerTest {
+
+    private static final String MEDIA_NAME = "channel1";
+    private static final VlcInput FIRST_INPUT = new VlcInput("/media/first clip.mp4");
+    private static final VlcInput SECOND_INPUT = new VlcInput("/media/second.mp4");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File logFile;
+    private VlcLogTailer tailer;
+    private VlcLogTailer.Listener listener;
+
+    @Before
+    public void setUp() throws IOException {
+        logFile = folder.newFile("vlc.log");
+        append("main debug: line written before start\n", "main input debug: `file:///media/second.mp4' successfully opened\n");
+        tailer = new VlcLogTailer.Builder().logFile(logFile).pollInterval(Duration.millis(5)).build();
+        listener = mock(VlcLogTailer.Listener.class);
+        tailer.watch(MEDIA_NAME, asList(FIRST_INPUT, SECOND_INPUT), listener);
+    }
+
+    @After
+    public void tearDown() {
+        tailer.shutdown();
+    }
+
+    @Test
+    public void shouldAttributeErrorToInputThatFailed() throws IOException {
+        // when
+        append("main input error: open of `file:///media/second.mp4' failed\n");
+
+        // then
+        verify(listener, timeout(1000)).errorOccurred(MEDIA_NAME, 2, "open of `file:///media/second.mp4' failed");
+    }
+
+    @Test
+    public void shouldEmitEventsOfPlayListAdvance() throws IOException {
+        // when
+        append("main input debug: `file:///media/first%20clip.mp4' successfully opened\n", "main input debug: EOF reached\n");
+        append("main input debug: `file:///media/second.mp4' successfully opened\r\n", "main input debug: EOF rea");
+        append("ched\nfilesystem error: read error\n");
+
+        // then
+        verify(listener, timeout(1000)).errorOccurred(MEDIA_NAME, 2, "read error");
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).inputChanged(MEDIA_NAME, 1, FIRST_INPUT);
+        inOrder.verify(listener).endReached(MEDIA_NAME, 1);
+        inOrder.verify(listener).inputChanged(MEDIA_NAME, 2, SECOND_INPUT);
+        inOrder.verify(listener).endReached(MEDIA_NAME, 2);
+        inOrder.verify(listener).errorOccurred(MEDIA_NAME, 2, "read error");
+    }
+
+    @Test
+    public void shouldFollowTruncatedLogFromStart() throws Exception {
+        // given
+        append("main input debug: `file:///media/first%20clip.mp4' successfully opened\n");
+        verify(listener, timeout(1000)).inputChanged(MEDIA_NAME, 1, FIRST_INPUT);
+
+        // when
+        try (OutputStream out = new FileOutputStream(logFile)) {
+            out.write("main input debug: `file:///media/second.mp4' successfully opened\n".getBytes(UTF_8));
+        }
+
+        // then
+        verify(listener, timeout(1000)).inputChanged(MEDIA_NAME, 2, SECOND_INPUT);
+    }
+
+    @Test
+    public void shouldIgnoreLinesWrittenBeforeStart() throws Exception {
+        // when
+        append("main debug: nothing interesting\n");
+        Thread.sleep(100);
+
+        // then
+        verify(listener, never()).inputChanged(anyString(), anyInt(), any(VlcInput.class));
+    }
+
+    private void append(String... lines) throws IOException {
+        try (OutputStream out = new FileOutputStream(logFile, true)) {
+            for (String line : lines) {
+                out.write(line.getBytes(UTF_8));
+                out.flush();
+            }
+        }
+    }
+}
@@ -12,31 +12,39 @@ import static ch.wellernet.vlclib.VlcManager.NORMAL_PROMPT;
 import static java.lang.Math.min;
 import static java.lang.String.format;
 import static java.lang.System.arraycopy;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 import static org.apache.commons.lang3.StringUtils.repeat;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.Matchers.lessThan;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyByte;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.apache.commons.net.telnet.TelnetClient;
 import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Test;
@@ -52,6 +60,7 @@ public class VlcManagerTest {
     private static final char[] PASSWORD = "secret".toCharArray();
 
     private static final String MEDIA_NAME = "channel42";
+    private static final String OTHER_MEDIA_NAME = "channel43";
 
     private static final String MEDIA_ITEM_FILE_PATH_1 = "/home/myself/films/film1.avi";
     private static final Duration MEDIA_ITEM_LENGTH_1 = new Duration(669000000l);
@@ -124,6 +133,46 @@ public class VlcManagerTest {
 
 
 
+    private static final String NESTED_OUTPUT = "#duplicate{dst=std{access=http,mux=ts,dst=:8080},dst=display}";
+
+    private static final String ALL_MEDIA_RESULT = format(""
+            + "show\n"
+            + "    media : ( 2 broadcast - 0 vod )\n"
+            + "        channel1\n"
+            + "            type : broadcast\n"
+            + "            enabled : yes\n"
+            + "            loop : yes\n"
+            + "            inputs\n"
+            + "                1 : %s\n"
+            + "                2 : %s\n"
+            + "            output : %s\n"
+            + "            options\n"
+            + "                sout-keep\n"
+            + "                sout-display-delay=150\n"
+            + "            instances\n"
+            + "                instance\n"
+            + "                    name : default\n"
+            + "                    state : playing\n"
+            + "                    position : %s\n"
+            + "                    time : 14300000\n"
+            + "                    length : %s\n"
+            + "                    rate : 1.000000\n"
+            + "                    title : 0\n"
+            + "                    chapter : 0\n"
+            + "                    can-seek : 1\n"
+            + "                    playlistindex : %s\n"
+            + "        channel2\n"
+            + "            type : broadcast\n"
+            + "            enabled : no\n"
+            + "            loop : no\n"
+            + "            inputs\n"
+            + "            output : \n"
+            + "            options\n"
+            + "            instances\n"
+            + "    schedule\n"
+            + "> ", MEDIA_ITEM_FILE_PATH_1, MEDIA_ITEM_FILE_PATH_2, NESTED_OUTPUT, STATE_POSITION, MEDIA_ITEM_LENGTH_1.getMillis(),
+                    STATE_PLAY_LIST_INDEX);
+
     // @formatter:on
 
     // under test
@@ -132,7 +181,7 @@ public class VlcManagerTest {
     public VlcManager vlcManager;
 
     @Mock
-    private TelnetClient telnetClient;
+    private VlcTransport transport;
 
     @Mock
     private OutputStream outputStream;
@@ -143,8 +192,8 @@ public class VlcManagerTest {
     @Before
     public void setup() {
         initMocks(this);
-        doReturn(inputStream).when(telnetClient).getInputStream();
-        doReturn(outputStream).when(telnetClient).getOutputStream();
+        doReturn(inputStream).when(transport).getInputStream();
+        doReturn(outputStream).when(transport).getOutputStream();
     }
 
     @Test
@@ -157,13 +206,35 @@ public class VlcManagerTest {
         vlcManager.connect(PASSWORD.clone());
 
         // then
-        InOrder order = inOrder(vlcManager, telnetClient);
-        order.verify(telnetClient).connect(DEFAULT_HOSTANAME, DEFAULT_PORT);
+        InOrder order = inOrder(vlcManager, transport);
+        order.verify(transport).connect(DEFAULT_HOSTANAME, DEFAULT_PORT);
         order.verify(vlcManager).waitForAndClear(VlcManager.PASSWORD_PROMPT);
         order.verify(vlcManager).sendPassword(PASSWORD.clone());
         order.verify(vlcManager).waitForAndClear(ANY_PROMPT);
     }
 
+    @Test
+    public void shoudConnectOnFirstUseWhenConnectingLazily() throws VlcConnectionException, IOException {
+        // given
+        doNothing().when(vlcManager).sendPassword(any(char[].class));
+        doReturn(null).when(vlcManager).waitForAndClear(any(Pattern.class));
+        doNothing().when(vlcManager).sendCommand(anyString());
+
+        // when
+        vlcManager.connectLazily(PASSWORD.clone());
+        verify(transport, never()).connect(anyString(), anyInt());
+        vlcManager.play(MEDIA_NAME);
+        vlcManager.stop(MEDIA_NAME);
+
+        // then
+        InOrder order = inOrder(vlcManager, transport);
+        order.verify(transport).connect(DEFAULT_HOSTANAME, DEFAULT_PORT);
+        order.verify(vlcManager).sendPassword(PASSWORD.clone());
+        order.verify(vlcManager).sendCommand(EXPECTED_PLAY_COMMAND);
+        order.verify(vlcManager).sendCommand(EXPECTED_STOP_COMMAND);
+        verify(transport).connect(anyString(), anyInt());
+    }
+
     @Test
     public void shouldAddInputItem() throws VlcConnectionException {
         // given
@@ -178,6 +249,23 @@ public class VlcManagerTest {
         order.verify(vlcManager).waitForAndClear(NORMAL_PROMPT);
     }
 
+    @Test
+    public void shouldAppendMutatingCommandToJournal() throws VlcConnectionException, IOException {
+        // given
+        mockedBaseCommunicationMethods();
+        VlcJournal journal = mock(VlcJournal.class);
+        vlcManager.setJournal(journal);
+
+        // when
+        vlcManager.addInputItem(MEDIA_NAME, INPUT);
+
+        // then
+        InOrder order = inOrder(vlcManager, journal);
+        order.verify(vlcManager).sendCommand(EXPECTED_SETUP_INPUT_COMMAND);
+        order.verify(vlcManager).waitForAndClear(NORMAL_PROMPT);
+        order.verify(journal).append(EXPECTED_SETUP_INPUT_COMMAND);
+    }
+
     @Test
     public void shouldBringMediaInPlayingState() throws VlcConnectionException {
         // given
@@ -234,6 +322,45 @@ public class VlcManagerTest {
         order.verify(vlcManager).waitForAndClear(NORMAL_PROMPT);
     }
 
+    @Test
+    public void shouldClassifyCommandsByPriority() {
+        assertThat(VlcManager.priorityOf(EXPECTED_STOP_COMMAND), is(CommandPriority.CONTROL));
+        assertThat(VlcManager.priorityOf(EXPECTED_TOOGLE_TO_LOOP_COMMAND), is(CommandPriority.CONTROL));
+        assertThat(VlcManager.priorityOf(EXPECTED_SHOW_COMMAND), is(CommandPriority.QUERY));
+        assertThat(VlcManager.priorityOf(EXPECTED_SETUP_INPUT_COMMAND), is(CommandPriority.BULK_SETUP));
+        assertThat(VlcManager.priorityOf(EXPECTED_DEL_MEDIA_COMMAND), is(CommandPriority.BULK_SETUP));
+    }
+
+    @Test
+    public void shouldCoalesceScrubbingSeeksWhileSeekIsInFlight() throws VlcConnectionException {
+        // given
+        doReturn(null).when(vlcManager).waitForAndClear(any(Pattern.class));
+        doAnswer(new Answer<Void>() {
+            private boolean inFlight;
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                if (!inFlight) {
+                    // operator keeps dragging while first seek is in flight
+                    inFlight = true;
+                    vlcManager.scrub(MEDIA_NAME, .1f);
+                    vlcManager.scrub(MEDIA_NAME, .2f);
+                    vlcManager.scrub(MEDIA_NAME, .3f);
+                }
+                return null;
+            }
+        }).when(vlcManager).sendCommand(anyString());
+
+        // when
+        vlcManager.scrub(MEDIA_NAME, SEEK_PERCENTAGE_POSITION);
+
+        // then
+        InOrder order = inOrder(vlcManager);
+        order.verify(vlcManager).sendCommand(EXPECTED_SEEK_PERCENTAGE_COMMAND);
+        order.verify(vlcManager).sendCommand(format("control %s seek %f", MEDIA_NAME, .3f));
+        verify(vlcManager, times(2)).sendCommand(anyString());
+    }
+
     @Test
     public void shouldCreateNewBroadcastMediaDisabled() throws VlcConnectionException {
         // given
@@ -305,6 +432,153 @@ public class VlcManagerTest {
         order.verify(vlcManager).waitForAndClear(NORMAL_PROMPT);
     }
 
+    @Test
+    public void shouldExecuteQueryOutsideOfSessionWhenTransportSupportsIt() throws VlcConnectionException, IOException {
+        // given
+        VlcTraceRecorder recorder = new VlcTraceRecorder(16);
+        vlcManager.setTraceRecorder(recorder);
+        doReturn(true).when(transport).canQuery();
+        doReturn(PLAYING_MEDIA_RESULT).when(transport).query(EXPECTED_SHOW_COMMAND);
+
+        // when
+        VlcMedia media = vlcManager.readMedia(MEDIA_NAME);
+
+        // then
+        verify(vlcManager, never()).sendCommand(anyString());
+        assertThat(media.getName(), is("channel1"));
+        assertThat(recorder.getRecordedCount(), is(1L));
+        assertThat(vlcManager.getMetrics().getCommandCount(CommandPriority.QUERY), is(1L));
+        assertThat(vlcManager.getCommandQueue().getSubmittedCount(), is(1L));
+    }
+
+    @Test
+    public void shouldNotShareResponseOfShowOnceSessionIsReleased() throws Exception {
+        // given
+        mockInputStreamRead(PLAYING_MEDIA_RESULT);
+        doNothing().when(vlcManager).sendCommand(anyString());
+        VlcCommandQueue queue = spy(new VlcCommandQueue.Builder().build());
+        final boolean[] showPendingAtRelease = new boolean[1];
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                showPendingAtRelease[0] = vlcManager.isShowPending(MEDIA_NAME);
+                invocation.callRealMethod();
+                return null;
+            }
+        }).when(queue).leave();
+        vlcManager.setCommandQueue(queue);
+
+        // when
+        vlcManager.readPlayListIndex(MEDIA_NAME);
+
+        // then
+        assertThat(showPendingAtRelease[0], is(false));
+    }
+
+    @Test
+    public void shouldPingVlc() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+
+        // when
+        Duration roundTrip = vlcManager.ping();
+
+        // then
+        InOrder order = inOrder(vlcManager);
+        order.verify(vlcManager).sendCommand(VlcManager.COMMAND_PING);
+        order.verify(vlcManager).waitForAndClear(NORMAL_PROMPT);
+        assertThat(roundTrip.getMillis(), is(lessThan(1000l)));
+    }
+
+    @Test
+    public void shouldPlayAllMediaWithSingleWrite() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+
+        // when
+        vlcManager.playAll(asList(MEDIA_NAME, OTHER_MEDIA_NAME));
+
+        // then
+        InOrder order = inOrder(vlcManager);
+        order.verify(vlcManager).sendCommand(format("control %s play\ncontrol %s play", MEDIA_NAME, OTHER_MEDIA_NAME));
+        order.verify(vlcManager, times(2)).waitForAndClear(NORMAL_PROMPT);
+    }
+
+    @Test
+    public void shouldPlayAllMediaWithSingleWriteAtGivenPosition() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+
+        // when
+        vlcManager.playAll(asList(MEDIA_NAME, OTHER_MEDIA_NAME), SEEK_DURATION_POSITION);
+
+        // then
+        InOrder order = inOrder(vlcManager);
+        order.verify(vlcManager).sendCommand(
+                format("control %1$s play\n%2$s\ncontrol %3$s play\ncontrol %3$s seek %4$dms", MEDIA_NAME, EXPECTED_SEEK_DURATION_COMMAND,
+                        OTHER_MEDIA_NAME, SEEK_DURATION_POSITION.getMillis()));
+        order.verify(vlcManager, times(4)).waitForAndClear(NORMAL_PROMPT);
+    }
+
+    @Test
+    public void shouldProbeWithPingBeforeCommandWhenCircuitBreakerIsHalfOpen() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+        VlcCircuitBreaker circuitBreaker = new VlcCircuitBreaker.Builder().slidingWindowSize(1).minimumNumberOfCalls(1)
+                .waitDurationInOpenState(Duration.ZERO).build();
+        vlcManager.setCircuitBreaker(circuitBreaker);
+        doThrow(VlcConnectionException.class).when(vlcManager).sendCommand(EXPECTED_STOP_COMMAND);
+        try {
+            vlcManager.stop(MEDIA_NAME);
+        } catch (VlcConnectionException exception) {
+            // expected to open circuit breaker
+        }
+
+        // when
+        vlcManager.play(MEDIA_NAME);
+
+        // then
+        InOrder order = inOrder(vlcManager);
+        order.verify(vlcManager).sendCommand(EXPECTED_STOP_COMMAND);
+        order.verify(vlcManager).sendCommand(VlcManager.COMMAND_PING);
+        order.verify(vlcManager).sendCommand(EXPECTED_PLAY_COMMAND);
+        assertThat(circuitBreaker.getState(), is(VlcCircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void shouldReadAllMedia() throws VlcConnectionException, IOException {
+        // given
+        doNothing().when(vlcManager).sendCommand(anyString());
+        mockInputStreamRead(ALL_MEDIA_RESULT);
+
+        // when
+        List<VlcMedia> media = vlcManager.readAllMedia();
+
+        // then
+        verify(vlcManager).sendCommand("show");
+        assertThat(media.size(), is(2));
+        VlcMedia playing = media.get(0);
+        assertThat(playing.getName(), is("channel1"));
+        assertThat(playing.getType(), is(BROADCAST));
+        assertThat(playing.isEnabed(), is(true));
+        assertThat(playing.isLoop(), is(true));
+        assertThat(playing.getInputs(), is(asList(new VlcInput(MEDIA_ITEM_FILE_PATH_1), new VlcInput(MEDIA_ITEM_FILE_PATH_2))));
+        assertThat(playing.getOutput().toString(), is(NESTED_OUTPUT));
+        assertThat(playing.getOptions(), is(asList(OPTION_WITHOUT_VALUE, OPTION_WITH_VALUE)));
+        assertThat(playing.getInstances().size(), is(1));
+        VlcInstance instance = playing.getInstances().get(0);
+        assertThat(instance.getState(), is(InstanceState.PLAYING));
+        assertThat(instance.getPosition(), is(STATE_POSITION));
+        assertThat(instance.getLength(), is(MEDIA_ITEM_LENGTH_1));
+        assertThat(instance.getPlayListIndex(), is(STATE_PLAY_LIST_INDEX));
+        VlcMedia stopped = media.get(1);
+        assertThat(stopped.getName(), is("channel2"));
+        assertThat(stopped.isEnabed(), is(false));
+        assertThat(stopped.getOutput(), is(nullValue()));
+        assertThat(stopped.getInputs().isEmpty(), is(true));
+        assertThat(stopped.getInstances().isEmpty(), is(true));
+    }
+
     @Test
     public void shouldReadCurrentLength() throws VlcConnectionException, IOException {
         // given
@@ -362,6 +636,23 @@ public class VlcManagerTest {
         assertThat(state, is(STATE_LOOP));
     }
 
+    @Test
+    public void shouldReadMedia() throws VlcConnectionException, IOException {
+        // given
+        doNothing().when(vlcManager).sendCommand(anyString());
+        mockInputStreamRead(PLAYING_MEDIA_RESULT);
+
+        // when
+        VlcMedia media = vlcManager.readMedia(MEDIA_NAME);
+
+        // then
+        verify(vlcManager).sendCommand(EXPECTED_SHOW_COMMAND);
+        assertThat(media.getName(), is("channel1"));
+        assertThat(media.isLoop(), is(STATE_LOOP));
+        assertThat(media.getInputs(), is(asList(new VlcInput(MEDIA_ITEM_FILE_PATH_1), new VlcInput(MEDIA_ITEM_FILE_PATH_2))));
+        assertThat(media.getInstances().get(0).getPlayListIndex(), is(STATE_PLAY_LIST_INDEX));
+    }
+
     @Test
     public void shouldReadPlayListIitems() throws VlcConnectionException, IOException {
         // given
@@ -392,6 +683,71 @@ public class VlcManagerTest {
         assertThat(playListIndex, is(STATE_PLAY_LIST_INDEX));
     }
 
+    @Test
+    public void shouldReadPlayListItemsOfLongPlayList() throws VlcConnectionException, IOException {
+        // given
+        StringBuilder result = new StringBuilder("show\n    channel1\n        type : broadcast\n        inputs\n");
+        List<VlcInput> inputs = new ArrayList<VlcInput>();
+        for (int i = 1; i <= 12; i++) {
+            inputs.add(new VlcInput(format("/films/film%s.avi", i)));
+            result.append(format("            %s : /films/film%s.avi\n", i, i));
+        }
+        result.append("        output : \n> ");
+        doNothing().when(vlcManager).sendCommand(anyString());
+        mockInputStreamRead(result.toString());
+
+        // when
+        List<VlcInput> items = vlcManager.readPlayListItems(MEDIA_NAME);
+
+        // then
+        assertThat(items, is(inputs));
+    }
+
+    @Test
+    public void shouldReapplyJournal() throws VlcConnectionException, IOException {
+        // given
+        mockedBaseCommunicationMethods();
+        VlcJournal journal = mock(VlcJournal.class);
+        doReturn(Collections.singleton(MEDIA_NAME)).when(journal).getMediaNames();
+        doReturn(asList(SAMPLE_COMMAND, EXPECTED_SETUP_INPUT_COMMAND)).when(journal).getCommands(MEDIA_NAME);
+        vlcManager.setJournal(journal);
+
+        // when
+        vlcManager.reapplyJournal();
+
+        // then
+        InOrder order = inOrder(vlcManager);
+        order.verify(vlcManager).sendCommand(EXPECTED_DEL_MEDIA_COMMAND);
+        order.verify(vlcManager).sendCommand(SAMPLE_COMMAND);
+        order.verify(vlcManager).sendCommand(EXPECTED_SETUP_INPUT_COMMAND);
+        verify(journal, never()).append(anyString());
+    }
+
+    @Test
+    public void shouldRejectQueryOutsideOfSessionWhileCircuitBreakerIsOpen() throws VlcConnectionException, IOException {
+        // given
+        vlcManager.setCircuitBreaker(new VlcCircuitBreaker.Builder().slidingWindowSize(1).minimumNumberOfCalls(1)
+                .waitDurationInOpenState(Duration.standardMinutes(1)).build());
+        doReturn(true).when(transport).canQuery();
+        doThrow(new IOException("connection reset")).when(transport).query(EXPECTED_SHOW_COMMAND);
+        try {
+            vlcManager.show(MEDIA_NAME);
+        } catch (VlcConnectionException exception) {
+            // expected to open circuit breaker
+        }
+
+        // when
+        try {
+            vlcManager.show(MEDIA_NAME);
+            fail("call should have been rejected");
+        } catch (VlcCallRejectedException exception) {
+            // expected
+        }
+
+        // then
+        verify(transport, times(1)).query(EXPECTED_SHOW_COMMAND);
+    }
+
     @Test
     public void shouldRemoveInputItem() throws VlcConnectionException {
         // given
@@ -406,6 +762,29 @@ public class VlcManagerTest {
         order.verify(vlcManager).waitForAndClear(NORMAL_PROMPT);
     }
 
+    @Test
+    public void shouldRetryLazyConnectionOnNextUseWhenFirstAttemptFails() throws VlcConnectionException, IOException {
+        // given
+        doNothing().when(vlcManager).sendPassword(any(char[].class));
+        doReturn(null).when(vlcManager).waitForAndClear(any(Pattern.class));
+        doNothing().when(vlcManager).sendCommand(anyString());
+        doThrow(new IOException("connection refused")).doNothing().when(transport).connect(DEFAULT_HOSTANAME, DEFAULT_PORT);
+        vlcManager.connectLazily(PASSWORD.clone());
+        try {
+            vlcManager.play(MEDIA_NAME);
+        } catch (VlcConnectionException exception) {
+            // expected on first attempt
+        }
+
+        // when
+        vlcManager.play(MEDIA_NAME);
+
+        // then
+        verify(transport, times(2)).connect(DEFAULT_HOSTANAME, DEFAULT_PORT);
+        verify(vlcManager).sendPassword(PASSWORD.clone());
+        verify(vlcManager).sendCommand(EXPECTED_PLAY_COMMAND);
+    }
+
     @Test
     public void shouldRetrunEmptyListIfReadPlayListIndexFails() throws VlcConnectionException, IOException {
         // given
@@ -471,6 +850,58 @@ public class VlcManagerTest {
         assertThat(state, is(false));
     }
 
+    @Test
+    public void shouldSendStopWhenMediaHasBeenSeenPaused() throws VlcConnectionException, IOException {
+        // given
+        doNothing().when(vlcManager).sendCommand(anyString());
+        mockInputStreamRead(PLAYING_MEDIA_RESULT.replace("state : playing", "state : paused"));
+        vlcManager.readMedia("channel1");
+
+        // when
+        boolean sent = vlcManager.ensureStopped("channel1");
+
+        // then
+        assertThat(sent, is(true));
+        verify(vlcManager).sendCommand("control channel1 stop");
+    }
+
+    @Test
+    public void shouldShareResponseOfPendingShowWithConcurrentRead() throws Exception {
+        // given
+        mockInputStreamRead(PLAYING_MEDIA_RESULT);
+        final float[] concurrentPosition = new float[1];
+        final Thread concurrentReader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    concurrentPosition[0] = vlcManager.readCurrentPosition(MEDIA_NAME);
+                } catch (VlcConnectionException exception) {
+                    concurrentPosition[0] = Float.NaN;
+                }
+            }
+        };
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                // let concurrent reader join while show is pending
+                concurrentReader.start();
+                while (concurrentReader.getState() != Thread.State.WAITING) {
+                    Thread.sleep(1);
+                }
+                return null;
+            }
+        }).when(vlcManager).sendCommand(anyString());
+
+        // when
+        int playListIndex = vlcManager.readPlayListIndex(MEDIA_NAME);
+        concurrentReader.join();
+
+        // then
+        verify(vlcManager, times(1)).sendCommand(EXPECTED_SHOW_COMMAND);
+        assertThat(playListIndex, is(STATE_PLAY_LIST_INDEX));
+        assertThat(concurrentPosition[0], is(STATE_POSITION));
+    }
+
     @Test
     public void shouldSeekCurrentPlayedItemToGivenDuration() throws VlcConnectionException {
         // given
@@ -528,10 +959,39 @@ public class VlcManagerTest {
 
         // then
         InOrder order = inOrder(outputStream);
-        order.verify(outputStream).write((SAMPLE_COMMAND + '\n').getBytes());
+        order.verify(outputStream).write((SAMPLE_COMMAND + '\n').getBytes(UTF_8));
         order.verify(outputStream).flush();
     }
 
+    @Test
+    public void shouldSendNothingWhenPlaylistIsAlreadySynchronized() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+        VlcInput a = new VlcInput("/films/a.avi");
+        doReturn(asList(a)).when(vlcManager).readPlayListItems(MEDIA_NAME);
+
+        // when
+        vlcManager.syncPlaylist(MEDIA_NAME, asList(a));
+
+        // then
+        verify(vlcManager, never()).sendCommand(anyString());
+    }
+
+    @Test
+    public void shouldSendCommandAgainWhenKnownStateHasExpired() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+        vlcManager.setKnownStateTtl(Duration.ZERO);
+        vlcManager.play(MEDIA_NAME);
+
+        // when
+        boolean sent = vlcManager.ensurePlaying(MEDIA_NAME);
+
+        // then
+        assertThat(sent, is(true));
+        verify(vlcManager, times(2)).sendCommand(EXPECTED_PLAY_COMMAND);
+    }
+
     @Test
     public void shouldSetupOptionWithoutValue() throws VlcConnectionException {
         // given
@@ -560,6 +1020,86 @@ public class VlcManagerTest {
         order.verify(vlcManager).waitForAndClear(NORMAL_PROMPT);
     }
 
+    @Test
+    public void shouldSkipCommandWhenStateIsAlreadyKnown() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+        vlcManager.setLoop(MEDIA_NAME, true);
+        vlcManager.ensureStopped(MEDIA_NAME);
+
+        // when
+        boolean loopSent = vlcManager.setLoop(MEDIA_NAME, true);
+        boolean stopSent = vlcManager.ensureStopped(MEDIA_NAME);
+        boolean unloopSent = vlcManager.setLoop(MEDIA_NAME, false);
+
+        // then
+        assertThat(loopSent, is(false));
+        assertThat(stopSent, is(false));
+        assertThat(unloopSent, is(true));
+        verify(vlcManager, times(1)).sendCommand(format("loop %s", MEDIA_NAME));
+        verify(vlcManager, times(1)).sendCommand(format("control %s stop", MEDIA_NAME));
+        verify(vlcManager, times(1)).sendCommand(format("unloop %s", MEDIA_NAME));
+    }
+
+    @Test
+    public void shouldSynchronizeLongPlaylistInChunks() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+        List<VlcInput> desired = new ArrayList<VlcInput>();
+        for (int i = 0; i <= VlcManager.SYNC_PLAYLIST_CHUNK_SIZE; i++) {
+            desired.add(new VlcInput(format("/films/film%s.avi", i)));
+        }
+        doReturn(new ArrayList<VlcInput>()).when(vlcManager).readPlayListItems(MEDIA_NAME);
+
+        // when
+        vlcManager.syncPlaylist(MEDIA_NAME, desired);
+
+        // then
+        verify(vlcManager, times(2)).sendCommand(anyString());
+        verify(vlcManager).sendCommand(format("setup %s input \"%s\"", MEDIA_NAME, desired.get(VlcManager.SYNC_PLAYLIST_CHUNK_SIZE)));
+        verify(vlcManager, times(VlcManager.SYNC_PLAYLIST_CHUNK_SIZE + 1)).waitForAndClear(NORMAL_PROMPT);
+    }
+
+    @Test
+    public void shouldSynchronizePlaylistWithMinimalCommands() throws VlcConnectionException {
+        // given
+        mockedBaseCommunicationMethods();
+        VlcInput a = new VlcInput("/films/a.avi");
+        VlcInput b = new VlcInput("/films/b.avi");
+        VlcInput c = new VlcInput("/films/c.avi");
+        VlcInput d = new VlcInput("/films/d.avi");
+        VlcInput e = new VlcInput("/films/e.avi");
+        doReturn(asList(a, b, c, d)).when(vlcManager).readPlayListItems(MEDIA_NAME);
+
+        // when
+        vlcManager.syncPlaylist(MEDIA_NAME, asList(a, c, e));
+
+        // then
+        InOrder order = inOrder(vlcManager);
+        order.verify(vlcManager).sendCommand(format("setup %1$s inputdeln 4\nsetup %1$s inputdeln 2\nsetup %1$s input \"%2$s\"", MEDIA_NAME, e));
+        order.verify(vlcManager, times(3)).waitForAndClear(NORMAL_PROMPT);
+    }
+
+    @Test
+    public void shouldTraceCommandWhenTraceRecorderIsSet() throws VlcConnectionException, IOException {
+        // given
+        VlcTraceRecorder recorder = new VlcTraceRecorder(16);
+        vlcManager.setTraceRecorder(recorder);
+        doNothing().when(vlcManager).sendCommand(anyString());
+        mockInputStreamRead(PLAYING_MEDIA_RESULT);
+
+        // when
+        vlcManager.readLoopState(MEDIA_NAME);
+
+        // then
+        StringBuilder dump = new StringBuilder();
+        recorder.dumpCsv(dump);
+        String[] lines = dump.toString().split("\n");
+        assertThat(lines.length, is(2));
+        assertThat(lines[1].startsWith(format("0,%s,", EXPECTED_SHOW_COMMAND)), is(true));
+        assertThat(lines[1].split(",").length, is(8));
+    }
+
     @Test(expected = VlcConnectionException.class)
     public void shouldThrowVlcConnectionExceptionWhenCatchingAnIOExceptionWhenSendingCommand() throws VlcConnectionException, IOException {
         // given
@@ -587,7 +1127,7 @@ public class VlcManagerTest {
     @Test(expected = VlcConnectionException.class)
     public void shouldThrowVlcConnectionExceptionWhenCatchingAnIOExceptionWhenWaitingForInputInput() throws VlcConnectionException, IOException {
         // given
-        doThrow(IOException.class).when(inputStream).read(any(byte[].class));
+        doThrow(IOException.class).when(inputStream).read(any(byte[].class), anyInt(), anyInt());
 
         // when
         vlcManager.waitForAndClear(NORMAL_PROMPT);
@@ -635,11 +1175,13 @@ public class VlcManagerTest {
         doAnswer(new Answer<Integer>() {
             @Override
             public Integer answer(InvocationOnMock invocation) throws Throwable {
+                byte[] bytes = message.getBytes(UTF_8);
                 byte[] buffer = invocation.getArgumentAt(0, byte[].class);
-                arraycopy(message.getBytes(), 0, buffer, 0, min(message.length(), buffer.length));
-                return min(message.length(), buffer.length);
+                int length = min(bytes.length, invocation.getArgumentAt(2, Integer.class));
+                arraycopy(bytes, 0, buffer, invocation.getArgumentAt(1, Integer.class), length);
+                return length;
             }
-        }).when(inputStream).read(any(byte[].class));
+        }).when(inputStream).read(any(byte[].class), anyInt(), anyInt());
     }
 
     private void verifyCreateMedia(InOrder order, MediaType type, boolean enabled) throws VlcConnectionException {
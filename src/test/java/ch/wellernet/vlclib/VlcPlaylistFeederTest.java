@@ -0,0 +1,176 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.joda.time.Duration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+
+public class VlcPlaylistFeederTest {
+
+    /**
+     * Endless schedule counting the items drawn from it.
+     */
+    private static class Schedule implements Iterator<VlcInput> {
+        private int drawn;
+
+        @Override
+        public boolean hasNext() {
+            return true;
+        }
+
+        @Override
+        public VlcInput next() {
+            return input(++drawn);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final String MEDIA_NAME = "channel1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VlcManager manager = mock(VlcManager.class);
+    private final Schedule schedule = new Schedule();
+    private final VlcPlaylistFeeder feeder = new VlcPlaylistFeeder(manager, MEDIA_NAME, schedule, 2);
+
+    private static VlcInput input(int number) {
+        return new VlcInput("/media/item" + number + ".mp4");
+    }
+
+    private static void append(File logFile, String line) throws IOException {
+        OutputStream out = new FileOutputStream(logFile, true);
+        try {
+            out.write(line.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static VlcMedia media(int playListIndex) {
+        VlcInstance instance = new VlcInstance("default", InstanceState.PLAYING, 0, Duration.ZERO, Duration.standardMinutes(90), 1, playListIndex);
+        return new VlcMedia(MEDIA_NAME, MediaType.BROADCAST, true, false, Collections.<VlcInput> emptyList(), new VlcOutput(new VlcModule("dummy")),
+                Collections.<VlcOption> emptyList(), asList(instance));
+    }
+
+    @Test
+    public void shouldFillWindowOnStart() throws VlcConnectionException {
+        // when
+        feeder.start();
+
+        // then
+        InOrder inOrder = inOrder(manager);
+        inOrder.verify(manager).clearInput(MEDIA_NAME);
+        inOrder.verify(manager).addInputItem(MEDIA_NAME, input(1));
+        inOrder.verify(manager).addInputItem(MEDIA_NAME, input(2));
+        inOrder.verify(manager).addInputItem(MEDIA_NAME, input(3));
+        assertThat(schedule.drawn, is(3));
+        assertThat(feeder.getQueued(), is(asList(input(1), input(2), input(3))));
+    }
+
+    @Test
+    public void shouldFollowPlayListThroughLogTailer() throws Exception {
+        // given
+        File logFile = folder.newFile("vlc.log");
+        VlcLogTailer tailer = new VlcLogTailer.Builder().logFile(logFile).pollInterval(Duration.millis(5)).build();
+        try {
+            feeder.start();
+            feeder.follow(tailer);
+
+            // when
+            for (int number = 2; number <= 4; number++) {
+                append(logFile, format("main input debug: `file:///media/item%s.mp4' successfully opened\n", number));
+                verify(manager, timeout(1000)).addInputItem(MEDIA_NAME, input(number + 2));
+            }
+
+            // then
+            verify(manager, times(3)).removeInputItem(MEDIA_NAME, 1);
+            verify(manager, never()).removeInputItem(MEDIA_NAME, 2);
+            assertThat(feeder.getQueued(), is(asList(input(4), input(5), input(6))));
+        } finally {
+            tailer.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldIgnoreRepeatedPlayListIndexAfterTrimming() throws VlcConnectionException {
+        // given
+        feeder.start();
+        feeder.mediaChanged(manager, MEDIA_NAME, media(3));
+
+        // when
+        feeder.mediaChanged(manager, MEDIA_NAME, media(3));
+        feeder.mediaChanged(manager, MEDIA_NAME, media(4));
+
+        // then
+        verify(manager).removeInputItem(MEDIA_NAME, 2);
+        verify(manager, times(2)).removeInputItem(MEDIA_NAME, 1);
+        verify(manager, times(6)).addInputItem(any(String.class), any(VlcInput.class));
+        assertThat(feeder.getQueued(), is(asList(input(4), input(5), input(6))));
+    }
+
+    @Test
+    public void shouldNotLoseItemWhenAddingFails() throws VlcConnectionException {
+        // given
+        feeder.start();
+        doThrow(new VlcConnectionException("connection lost")).when(manager).addInputItem(MEDIA_NAME, input(4));
+        feeder.inputChanged(MEDIA_NAME, 2, input(2));
+        doNothing().when(manager).addInputItem(MEDIA_NAME, input(4));
+        doReturn(asList(input(2), input(3))).when(manager).readPlayListItems(MEDIA_NAME);
+
+        // when
+        feeder.inputChanged(MEDIA_NAME, 1, input(2));
+
+        // then
+        verify(manager).readPlayListItems(MEDIA_NAME);
+        verify(manager, times(2)).addInputItem(MEDIA_NAME, input(4));
+        assertThat(schedule.drawn, is(4));
+        assertThat(feeder.getQueued(), is(asList(input(2), input(3), input(4))));
+    }
+
+    @Test
+    public void shouldTrimPlayedItemsAndAppendUpcomingItemsWhenIndexAdvances() throws VlcConnectionException {
+        // given
+        feeder.start();
+
+        // when
+        feeder.advance(3);
+
+        // then
+        InOrder inOrder = inOrder(manager);
+        inOrder.verify(manager).removeInputItem(MEDIA_NAME, 2);
+        inOrder.verify(manager).removeInputItem(MEDIA_NAME, 1);
+        inOrder.verify(manager).addInputItem(MEDIA_NAME, input(4));
+        inOrder.verify(manager).addInputItem(MEDIA_NAME, input(5));
+        verify(manager, never()).readPlayListItems(any(String.class));
+        assertThat(feeder.getQueued(), is(asList(input(3), input(4), input(5))));
+    }
+}
@@ -0,0 +1,118 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.MediaType.BROADCAST;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class VlcPollingSchedulerTest {
+
+    private static final String MEDIA_NAME = "channel42";
+
+    private final VlcPollingScheduler scheduler = new VlcPollingScheduler.Builder().minInterval(Duration.millis(100))
+            .playingInterval(Duration.standardSeconds(2)).idleInterval(Duration.standardSeconds(10)).build();
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void shouldBackOffTowardsIdleIntervalWhileStoppedMediaDoesNotChange() {
+        // given
+        VlcMedia media = media(InstanceState.END, 0, 0);
+
+        // when
+        long interval = scheduler.nextIntervalMillis(media, 6000, false);
+
+        // then
+        assertThat(interval, is(10000l));
+    }
+
+    @Test
+    public void shouldKeepPollingOtherInstancesWhileOneHangs() throws VlcConnectionException {
+        // given
+        VlcManager hungManager = mock(VlcManager.class);
+        when(hungManager.getHostname()).thenReturn("localhost");
+        when(hungManager.getPort()).thenReturn(4212);
+        when(hungManager.readMedia(MEDIA_NAME)).thenAnswer(new Answer<VlcMedia>() {
+            @Override
+            public VlcMedia answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(10000);
+                return null;
+            }
+        });
+        VlcManager manager = mock(VlcManager.class);
+        VlcMedia media = media(InstanceState.PLAYING, 1000, 60000);
+        when(manager.getHostname()).thenReturn("localhost");
+        when(manager.getPort()).thenReturn(4213);
+        when(manager.readMedia(MEDIA_NAME)).thenReturn(media);
+        VlcPollingScheduler.Listener listener = mock(VlcPollingScheduler.Listener.class);
+        scheduler.watch(hungManager, MEDIA_NAME, listener);
+        verify(hungManager, timeout(1000)).readMedia(MEDIA_NAME);
+
+        // when
+        scheduler.watch(manager, MEDIA_NAME, listener);
+
+        // then
+        verify(listener, timeout(1000)).mediaChanged(manager, MEDIA_NAME, media);
+    }
+
+    @Test
+    public void shouldNotifyListenerWithPolledMedia() throws VlcConnectionException {
+        // given
+        VlcManager manager = mock(VlcManager.class);
+        VlcMedia media = media(InstanceState.PLAYING, 1000, 60000);
+        when(manager.getHostname()).thenReturn("localhost");
+        when(manager.readMedia(MEDIA_NAME)).thenReturn(media);
+        VlcPollingScheduler.Listener listener = mock(VlcPollingScheduler.Listener.class);
+
+        // when
+        scheduler.watch(manager, MEDIA_NAME, listener);
+
+        // then
+        verify(listener, timeout(1000)).mediaChanged(manager, MEDIA_NAME, media);
+    }
+
+    @Test
+    public void shouldPollAtHalfRemainingTimeNearEndOfItem() {
+        // given
+        VlcMedia media = media(InstanceState.PLAYING, 59000, 60000);
+
+        // when
+        long interval = scheduler.nextIntervalMillis(media, 2000, false);
+
+        // then
+        assertThat(interval, is(500l));
+    }
+
+    @Test
+    public void shouldPollAtMinimumIntervalAfterChange() {
+        // given
+        VlcMedia media = media(InstanceState.PLAYING, 1000, 60000);
+
+        // when
+        long interval = scheduler.nextIntervalMillis(media, 2000, true);
+
+        // then
+        assertThat(interval, is(100l));
+    }
+
+    private VlcMedia media(InstanceState state, long time, long length) {
+        VlcInstance instance = new VlcInstance("default", state, (float) time / length, new Duration(time), new Duration(length), 1, 1);
+        return new VlcMedia(MEDIA_NAME, BROADCAST, true, false, Collections.<VlcInput> emptyList(), null, Collections.<VlcOption> emptyList(),
+                asList(instance));
+    }
+}
@@ -0,0 +1,148 @@
+package ch.wellernet.vlclib;
+
+import static java.lang.System.nanoTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VlcReplayServerTest {
+
+    private static final String PASSWORD = "secret";
+    private static final long RESPONSE_DELAY_MILLIS = 200;
+
+    // @formatter:off
+    private static final String SHOW_RESULT = ""
+            + "show\n"
+            + "    channel1\n"
+            + "        type : broadcast\n"
+            + "        enabled : yes\n"
+            + "        loop : yes\n"
+            + "> ";
+    // @formatter:on
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File captureFile;
+    private VlcReplayServer replayServer;
+
+    @Before
+    public void setUp() throws Exception {
+        captureFile = new File(folder.getRoot(), "session.cap");
+        record();
+    }
+
+    @After
+    public void tearDown() {
+        if (replayServer != null) {
+            replayServer.stop();
+        }
+    }
+
+    @Test
+    public void shouldNotRecordPassword() throws IOException {
+        // when
+        String capture = new String(Files.readAllBytes(captureFile.toPath()), UTF_8);
+
+        // then
+        assertThat(capture, not(containsString(PASSWORD)));
+        assertThat(capture, containsString("show channel1\n"));
+    }
+
+    @Test
+    public void shouldReplayFasterWithSpeedFactor() throws Exception {
+        // given
+        replayServer = new VlcReplayServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), captureFile, 10);
+        VlcManager vlcManager = connectToReplayServer();
+
+        // when
+        long start = nanoTime();
+        boolean loop = vlcManager.readLoopState("channel1");
+        long elapsed = NANOSECONDS.toMillis(nanoTime() - start);
+
+        // then
+        assertThat(loop, is(true));
+        assertThat(elapsed, lessThan(RESPONSE_DELAY_MILLIS / 2));
+        vlcManager.disconnect();
+    }
+
+    @Test
+    public void shouldReplayRecordedSessionWithOriginalTiming() throws Exception {
+        // given
+        replayServer = new VlcReplayServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), captureFile, 1);
+        VlcManager vlcManager = connectToReplayServer();
+
+        // when
+        long start = nanoTime();
+        boolean loop = vlcManager.readLoopState("channel1");
+        long elapsed = NANOSECONDS.toMillis(nanoTime() - start);
+
+        // then
+        assertThat(loop, is(true));
+        assertThat(elapsed, greaterThanOrEqualTo(RESPONSE_DELAY_MILLIS * 9 / 10));
+        vlcManager.disconnect();
+    }
+
+    private VlcManager connectToReplayServer() throws VlcConnectionException {
+        VlcManager vlcManager = new VlcManager("localhost", replayServer.getAddress().getPort());
+        vlcManager.connect("anything".toCharArray());
+        return vlcManager;
+    }
+
+    private void record() throws Exception {
+        try (final ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            Thread vlc = new Thread() {
+                @Override
+                public void run() {
+                    try (Socket client = server.accept()) {
+                        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), UTF_8));
+                        OutputStream out = client.getOutputStream();
+                        out.write("VLC media player 2.2.0\nPassword: ".getBytes(UTF_8));
+                        out.flush();
+                        if (in.readLine().trim().equals(PASSWORD)) {
+                            out.write("\r\nWelcome, Master\r\n> ".getBytes(UTF_8));
+                            out.flush();
+                        }
+                        if (in.readLine().trim().equals("show channel1")) {
+                            Thread.sleep(RESPONSE_DELAY_MILLIS);
+                            out.write(SHOW_RESULT.getBytes(UTF_8));
+                            out.flush();
+                        }
+                        in.readLine();
+                    } catch (IOException | InterruptedException exception) {
+                        // test fails on client side
+                    }
+                }
+            };
+            vlc.start();
+            VlcManager vlcManager = new VlcManager("localhost", server.getLocalPort(), new VlcRecordingTransport(new VlcTelnetTransport(),
+                    captureFile));
+            vlcManager.connect(PASSWORD.toCharArray());
+            vlcManager.readLoopState("channel1");
+            vlcManager.disconnect();
+            vlc.join(1000);
+        }
+    }
+}
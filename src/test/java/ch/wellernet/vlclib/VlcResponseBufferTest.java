@@ -0,0 +1,82 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.VlcResponseBuffer.NORMAL_PROMPT_SUFFIX;
+import static ch.wellernet.vlclib.VlcResponseBuffer.PASSWORD_PROMPT_SUFFIX;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class VlcResponseBufferTest {
+
+    private static final String FRAME_WITH_MULTI_BYTE_CHARACTERS = "show\n    inputs\n        1 : /home/myself/films/Ünterwäldner Brücke.avi\n> ";
+
+    // under test
+    private final VlcResponseBuffer buffer = new VlcResponseBuffer(16);
+
+    @Test
+    public void shouldDecodeMultiByteCharacterSplitAtEndOfRing() throws IOException {
+        // given
+        // first frame takes 15 of 16 bytes, so that the first byte of Ü is the last byte of the ring
+        InputStream inputStream = new ByteArrayInputStream("twelve chars\n> Ü\n> ".getBytes(UTF_8));
+        buffer.fill(inputStream);
+        buffer.skip(buffer.nextFrameLength(NORMAL_PROMPT_SUFFIX));
+
+        // when
+        int frameLength;
+        while ((frameLength = buffer.nextFrameLength(NORMAL_PROMPT_SUFFIX)) < 0) {
+            buffer.fill(inputStream);
+        }
+
+        // then
+        assertThat(buffer.decode(frameLength).toString(), is("Ü\n> "));
+    }
+
+    @Test
+    public void shouldDecodeMultiByteCharactersSplitAcrossReads() throws IOException {
+        // given
+        InputStream inputStream = new ByteArrayInputStream(FRAME_WITH_MULTI_BYTE_CHARACTERS.getBytes(UTF_8)) {
+            @Override
+            public synchronized int read(byte[] bytes, int offset, int length) {
+                // deliver byte by byte, so that every multi-byte character is split
+                return super.read(bytes, offset, Math.min(length, 1));
+            }
+        };
+
+        // when
+        int frameLength;
+        while ((frameLength = buffer.nextFrameLength(NORMAL_PROMPT_SUFFIX)) < 0) {
+            buffer.fill(inputStream);
+        }
+
+        // then
+        assertThat(buffer.decode(frameLength).toString(), is(FRAME_WITH_MULTI_BYTE_CHARACTERS));
+    }
+
+    @Test
+    public void shouldSplitPipelinedResponsesIntoFrames() throws IOException {
+        // given
+        InputStream inputStream = new ByteArrayInputStream("VLC media player 2.2.1\nPassword: \nWelcome\n> \n> ".getBytes(UTF_8));
+        while (buffer.fill(inputStream) > 0) {
+            // read everything
+        }
+
+        // when
+        String[] frames = new String[3];
+        for (int i = 0; i < frames.length; i++) {
+            int frameLength = buffer.nextFrameLength(NORMAL_PROMPT_SUFFIX, PASSWORD_PROMPT_SUFFIX);
+            frames[i] = buffer.decode(frameLength).toString();
+            buffer.skip(frameLength);
+        }
+
+        // then
+        assertThat(frames, is(new String[] { "VLC media player 2.2.1\nPassword: ", "\nWelcome\n> ", "\n> " }));
+        assertThat(buffer.available(), is(0));
+        assertThat(buffer.nextFrameLength(NORMAL_PROMPT_SUFFIX), is(-1));
+    }
+}
@@ -0,0 +1,135 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.InstanceState.PAUSED;
+import static ch.wellernet.vlclib.InstanceState.PLAYING;
+import static ch.wellernet.vlclib.MediaType.BROADCAST;
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class VlcTelemetryRecorderTest {
+
+    private static final String MEDIA_NAME = "channel42";
+
+    private final VlcTelemetryRecorder recorder = new VlcTelemetryRecorder.Builder().capacity(8).build();
+    private final VlcManager manager = new VlcManager();
+
+    @After
+    public void teardown() {
+        recorder.shutdown();
+    }
+
+    @Test
+    public void shouldComputeDriftOfCurrentItem() {
+        // given
+        record(0, PLAYING, 1, 50000, 1);
+        record(1000, PLAYING, 2, 0, 1);
+        record(2000, PLAYING, 2, 900, 1);
+        record(3000, PLAYING, 2, 1800, 1);
+
+        // when
+        Duration drift = recorder.getDrift(manager, MEDIA_NAME, Duration.standardSeconds(10));
+
+        // then
+        assertThat(drift, is(Duration.millis(-200)));
+    }
+
+    @Test
+    public void shouldDetectRateOtherThanNormalWithinWindow() {
+        // given
+        record(0, PLAYING, 1, 0, 2);
+        record(5000, PLAYING, 1, 10000, 1);
+        record(6000, PLAYING, 1, 11000, 1);
+
+        // when
+        boolean recentlyOff = recorder.hasRateOtherThan(manager, MEDIA_NAME, 1, Duration.standardSeconds(2));
+        boolean earlierOff = recorder.hasRateOtherThan(manager, MEDIA_NAME, 1, Duration.standardSeconds(10));
+
+        // then
+        assertThat(recentlyOff, is(false));
+        assertThat(earlierOff, is(true));
+    }
+
+    @Test
+    public void shouldDetectStallOfPlayingMedia() {
+        // given
+        record(0, PLAYING, 1, 4000, 1);
+        record(1000, PLAYING, 1, 5000, 1);
+        record(2000, PLAYING, 1, 5000, 1);
+        record(8000, PLAYING, 1, 5000, 1);
+
+        // when
+        Duration stalled = recorder.getStalledDuration(manager, MEDIA_NAME);
+
+        // then
+        assertThat(stalled, is(Duration.standardSeconds(7)));
+        assertThat(recorder.isStalled(manager, MEDIA_NAME, Duration.standardSeconds(5)), is(true));
+    }
+
+    @Test
+    public void shouldKeepOnlyLatestSamples() {
+        // given
+        for (int i = 0; i < 20; i++) {
+            record(i * 1000, PAUSED, 1, 5000, 1);
+        }
+
+        // when
+        int count = recorder.getSampleCount(manager, MEDIA_NAME);
+
+        // then
+        assertThat(count, is(8));
+        assertThat(recorder.getStalledDuration(manager, MEDIA_NAME), is(Duration.ZERO));
+    }
+
+    @Test
+    public void shouldKeepSamplingOtherInstancesWhileOneHangs() throws VlcConnectionException {
+        // given
+        VlcTelemetryRecorder sampling = new VlcTelemetryRecorder.Builder().interval(Duration.millis(50)).build();
+        VlcManager hungManager = mock(VlcManager.class);
+        when(hungManager.getHostname()).thenReturn("localhost");
+        when(hungManager.getPort()).thenReturn(4212);
+        when(hungManager.readMedia(MEDIA_NAME)).thenAnswer(new Answer<VlcMedia>() {
+            @Override
+            public VlcMedia answer(InvocationOnMock invocation) throws InterruptedException {
+                Thread.sleep(10000);
+                return null;
+            }
+        });
+        VlcManager healthyManager = mock(VlcManager.class);
+        when(healthyManager.getHostname()).thenReturn("localhost");
+        when(healthyManager.getPort()).thenReturn(4213);
+        sampling.record(hungManager, MEDIA_NAME);
+        verify(hungManager, timeout(1000)).readMedia(MEDIA_NAME);
+
+        try {
+            // when
+            sampling.record(healthyManager, MEDIA_NAME);
+
+            // then
+            verify(healthyManager, timeout(1000).atLeast(3)).readMedia(MEDIA_NAME);
+            verify(hungManager, times(1)).readMedia(MEDIA_NAME);
+        } finally {
+            sampling.shutdown();
+        }
+    }
+
+    private void record(long timestamp, InstanceState state, int playListIndex, long time, float rate) {
+        VlcInstance instance = new VlcInstance("default", state, 0, Duration.millis(time), Duration.standardMinutes(90), rate, playListIndex);
+        VlcMedia media = new VlcMedia(MEDIA_NAME, BROADCAST, true, false, Collections.<VlcInput> emptyList(), new VlcOutput(new VlcModule("dummy")),
+                Collections.<VlcOption> emptyList(), asList(instance));
+        recorder.record(manager, MEDIA_NAME, timestamp, media);
+    }
+}
@@ -0,0 +1,64 @@
+package ch.wellernet.vlclib;
+
+import static ch.wellernet.vlclib.VlcTraceRecorder.Stage.FIRST_BYTE;
+import static ch.wellernet.vlclib.VlcTraceRecorder.Stage.PARSED;
+import static ch.wellernet.vlclib.VlcTraceRecorder.Stage.PROMPT;
+import static ch.wellernet.vlclib.VlcTraceRecorder.Stage.WRITTEN;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class VlcTraceRecorderTest {
+
+    private final VlcTraceRecorder recorder = new VlcTraceRecorder(2);
+
+    @Test
+    public void shouldDumpAllPhasesAsChromeTrace() throws IOException {
+        // given
+        record("setup channel42 input \"film1.avi\"");
+
+        // when
+        StringBuilder dump = new StringBuilder();
+        recorder.dumpChromeTrace(dump);
+
+        // then
+        assertThat(dump.toString(), containsString("\"name\":\"setup channel42 input \\\"film1.avi\\\"\""));
+        for (String phase : new String[] { "queueing", "write", "first byte", "receive", "parse" }) {
+            assertThat(dump.toString(), containsString(String.format("\"cat\":\"%s\"", phase)));
+        }
+    }
+
+    @Test
+    public void shouldKeepOnlyMostRecentCompleteRecords() throws IOException {
+        // given
+        record("show channel1");
+        record("show channel2");
+        record("show channel3");
+        recorder.begin("show channel4", System.nanoTime());
+
+        // when
+        StringBuilder dump = new StringBuilder();
+        recorder.dumpCsv(dump);
+
+        // then
+        assertThat(recorder.getRecordedCount(), is(4l));
+        assertThat(dump.toString(), not(containsString("show channel2")));
+        assertThat(dump.toString(), containsString("2,show channel3,"));
+        assertThat(dump.toString(), not(containsString("show channel4")));
+        assertThat(dump.toString().split("\n").length, is(2));
+    }
+
+    private void record(String command) {
+        long sequence = recorder.begin(command, System.nanoTime());
+        recorder.mark(sequence, WRITTEN);
+        recorder.markFirst(sequence, FIRST_BYTE);
+        recorder.mark(sequence, PROMPT);
+        recorder.mark(sequence, PARSED);
+        recorder.end(sequence);
+    }
+}
@@ -0,0 +1,156 @@
+package ch.wellernet.vlclib;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeNoException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class VlcUnixSocketTransportTest {
+
+    private static final String PASSWORD = "secret";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ServerSocketChannel server;
+    private Thread vlc;
+    private File socket;
+
+    private static String unescape(String quoted) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int i = 1; i < quoted.length() - 1; i++) {
+            char c = quoted.charAt(i);
+            if (c == '\\') {
+                c = quoted.charAt(++i);
+                if (c == 'n') {
+                    bytes.write('\n');
+                } else if (c == 'r') {
+                    bytes.write('\r');
+                } else if (c == 'x') {
+                    bytes.write(Integer.parseInt(quoted.substring(i + 1, i + 3), 16));
+                    i += 2;
+                } else {
+                    bytes.write(c);
+                }
+            } else {
+                bytes.write(c);
+            }
+        }
+        return new String(bytes.toByteArray(), ISO_8859_1);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        socket = new File(folder.getRoot(), "vlc.sock");
+        try {
+            SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class)
+                    .invoke(null, socket.getPath());
+            server = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null,
+                    StandardProtocolFamily.valueOf("UNIX"));
+            server.bind(address);
+        } catch (ReflectiveOperationException | IllegalArgumentException exception) {
+            assumeNoException(exception);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.close();
+        }
+        if (vlc != null) {
+            vlc.join(1000);
+        }
+    }
+
+    @Test
+    public void shouldTalkToVlcThroughUnixDomainSocket() throws IOException, VlcConnectionException {
+        // given
+        replay(load("/telnet-session.txt"));
+        VlcManager vlcManager = new VlcManager(socket.getPath(), 0, new VlcUnixSocketTransport());
+
+        // when
+        vlcManager.connect(PASSWORD.toCharArray());
+        boolean loop = vlcManager.readLoopState("channel1");
+
+        // then
+        assertThat(loop, is(true));
+        vlcManager.disconnect();
+    }
+
+    private List<String> load(String resource) throws IOException {
+        List<String> transcript = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream(resource), UTF_8));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    transcript.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return transcript;
+    }
+
+    private String readLine(SocketChannel client) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        ByteBuffer single = ByteBuffer.allocate(1);
+        while (client.read(single) > 0) {
+            if (single.get(0) == '\n') {
+                break;
+            }
+            line.write(single.get(0));
+            single.clear();
+        }
+        return new String(line.toByteArray(), UTF_8);
+    }
+
+    /**
+     * Plays the VLC side of a transcript on the socket, closing the connection as soon as the client sends another line than expected.
+     */
+    private void replay(final List<String> transcript) {
+        vlc = new Thread() {
+            @Override
+            public void run() {
+                try (SocketChannel client = server.accept()) {
+                    for (String line : transcript) {
+                        String text = unescape(line.substring(line.indexOf(':') + 2));
+                        if (line.startsWith("vlc:")) {
+                            ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(ISO_8859_1));
+                            while (bytes.hasRemaining()) {
+                                client.write(bytes);
+                            }
+                        } else if (!readLine(client).equals(text)) {
+                            return;
+                        }
+                    }
+                } catch (IOException exception) {
+                    // test fails on client side
+                }
+            }
+        };
+        vlc.start();
+    }
+}